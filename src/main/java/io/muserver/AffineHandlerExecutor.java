@@ -0,0 +1,139 @@
+package io.muserver;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor with a small handler pool for each event loop. A task submitted from an event loop thread runs on
+ * that loop's pool, so a request is read, handled and written by the same group of threads rather than
+ * contending on one shared queue.
+ */
+class AffineHandlerExecutor extends AbstractExecutorService {
+
+    private final List<Group> groups;
+    private final Map<Thread, Group> groupByLoopThread = new ConcurrentHashMap<>();
+    private final AtomicInteger nextForOtherThreads = new AtomicInteger();
+
+    AffineHandlerExecutor(EventExecutorGroup eventLoops, int threadsPerLoop, int queueSizePerLoop) {
+        List<Group> groups = new ArrayList<>();
+        for (EventExecutor loop : eventLoops) {
+            String name = "muhandler-group" + groups.size();
+            groups.add(new Group(name, loop, new BoundedHandlerExecutor(threadsPerLoop, threadsPerLoop, queueSizePerLoop, new DefaultThreadFactory(name))));
+        }
+        this.groups = groups;
+    }
+
+    List<HandlerGroupStats> groups() {
+        return Collections.unmodifiableList(groups);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Thread current = Thread.currentThread();
+        Group group = groupByLoopThread.get(current);
+        if (group == null) {
+            group = groupForThread(current);
+        }
+        group.executor.execute(command);
+    }
+
+    private Group groupForThread(Thread thread) {
+        for (Group group : groups) {
+            if (group.loop.inEventLoop(thread)) {
+                groupByLoopThread.put(thread, group);
+                return group;
+            }
+        }
+        // Not called from an event loop, so there is no affinity to keep
+        return groups.get(Math.floorMod(nextForOtherThreads.getAndIncrement(), groups.size()));
+    }
+
+    @Override
+    public void shutdown() {
+        for (Group group : groups) {
+            group.executor.shutdown();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> notRun = new ArrayList<>();
+        for (Group group : groups) {
+            notRun.addAll(group.executor.shutdownNow());
+        }
+        return notRun;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return groups.stream().allMatch(g -> g.executor.isShutdown());
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return groups.stream().allMatch(g -> g.executor.isTerminated());
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Group group : groups) {
+            if (!group.executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Group implements HandlerGroupStats {
+        private final String name;
+        private final EventExecutor loop;
+        private final BoundedHandlerExecutor executor;
+
+        private Group(String name, EventExecutor loop, BoundedHandlerExecutor executor) {
+            this.name = name;
+            this.loop = loop;
+            this.executor = executor;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public int threads() {
+            return executor.getMaximumPoolSize();
+        }
+
+        @Override
+        public int activeThreads() {
+            return executor.getActiveCount();
+        }
+
+        @Override
+        public int queuedRequests() {
+            return executor.getQueue().size();
+        }
+
+        @Override
+        public long completedRequests() {
+            return executor.getCompletedTaskCount();
+        }
+
+        @Override
+        public String toString() {
+            return name + " (active: " + activeThreads() + "/" + threads() + "; queued: " + queuedRequests() + "; completed: " + completedRequests() + ")";
+        }
+    }
+}
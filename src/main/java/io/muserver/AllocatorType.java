@@ -0,0 +1,25 @@
+package io.muserver;
+
+/**
+ * The type of buffer allocator used to read and write data on connections.
+ * @see NetworkConfigBuilder#withAllocator(AllocatorType)
+ */
+public enum AllocatorType {
+
+    /**
+     * Pooled buffers that are allocated outside the Java heap where the platform supports it. This is the
+     * default, and avoids a copy between the heap and the socket on each read and write.
+     */
+    POOLED_DIRECT,
+
+    /**
+     * Pooled buffers that are allocated on the Java heap. This may suit servers where direct memory is constrained.
+     */
+    POOLED_HEAP,
+
+    /**
+     * Heap buffers that are allocated for each use and garbage collected afterwards.
+     */
+    UNPOOLED_HEAP
+
+}
@@ -33,6 +33,11 @@ public class AsyncContext {
         } else {
             Future<Void> complete = ((NettyResponseAdaptor) response)
                 .complete(forceDisconnect);
+            if (requestBody != null) {
+                // release any body data that the handler did not read
+                requestBody.discard();
+            }
+            ((NettyRequestAdapter) request).releaseUploads();
             completedCallback.run();
             return complete;
         }
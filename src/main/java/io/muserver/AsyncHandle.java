@@ -1,6 +1,7 @@
 package io.muserver;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.Future;
 
 /**
@@ -18,6 +19,26 @@ public interface AsyncHandle {
      */
     void setReadListener(RequestBodyListener readListener);
 
+    /**
+     * <p>Sets a listener that is given each part of a <code>multipart/form-data</code> request body as it is received,
+     * rather than waiting for the whole body as {@link MuRequest#form()} and {@link MuRequest#uploadedFiles(String)} do.</p>
+     * <p>This is an alternative to {@link #setReadListener(RequestBodyListener)}, and like that method it cannot be
+     * used with the blocking request reading methods.</p>
+     * @param listener The listener.
+     * @throws IllegalStateException if the request is not a multipart request
+     */
+    void setMultipartListener(MultipartListener listener);
+
+    /**
+     * <p>Subscribes to the request body, so that it is received as buffers when the subscriber asks for them.</p>
+     * <p>Unlike {@link #setReadListener(RequestBodyListener)}, which is given data as soon as it arrives, data is
+     * only read from the client as the subscriber requests it, so the memory used for the upload stays bounded
+     * however slowly the subscriber processes it.</p>
+     * <p>If there is no request body, the subscriber completes immediately.</p>
+     * @param subscriber The subscriber.
+     */
+    void subscribeToRequestBody(RequestBodySubscriber subscriber);
+
     /**
      * Call this to indicate that the response is complete.
      */
@@ -59,6 +80,21 @@ public interface AsyncHandle {
      */
     Future<Void> write(ByteBuffer data);
 
+    /**
+     * <p>Writes part of a file to the response asynchronously.</p>
+     * <p>On HTTP1 connections without TLS where the response is not being compressed, the data is passed to the
+     * operating system to copy straight from the file to the socket (for example with <code>sendfile</code>), so it
+     * is never copied into the JVM. Otherwise, the file is read and sent in large chunks.</p>
+     * <p>If the response has a <code>Content-Length</code> header then it should include this region; otherwise the
+     * response is sent with chunked encoding.</p>
+     * @param file The file to read from. This is not closed by this method, and must stay open until the callback
+     *             is called.
+     * @param position The position in the file of the first byte to send
+     * @param length The number of bytes to send
+     * @param callback The callback when the write succeeds or fails
+     */
+    void writeFile(FileChannel file, long position, long length, DoneCallback callback);
+
     /**
      * Add a listener for when request processing is complete. One use of this is to detect early client disconnects
      * so that expensive operations can be cancelled.
@@ -0,0 +1,64 @@
+package io.muserver;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default executor for request handlers. Unlike a plain {@link ThreadPoolExecutor} with a bounded queue, this
+ * adds threads up to the maximum before queueing, and only queues requests when all threads are busy. When the
+ * queue is also full, requests are rejected so that the server can respond with a 503.
+ */
+class BoundedHandlerExecutor extends ThreadPoolExecutor {
+
+    private final AtomicInteger submitted = new AtomicInteger();
+
+    BoundedHandlerExecutor(int coreThreads, int maxThreads, int queueSize, ThreadFactory threadFactory) {
+        super(coreThreads, maxThreads, 60, TimeUnit.SECONDS, new GrowFirstQueue(queueSize), threadFactory, (task, executor) -> {
+            // The queue refused the task so that a thread could be added, but the pool is now at its maximum
+            GrowFirstQueue queue = (GrowFirstQueue) executor.getQueue();
+            if (executor.isShutdown() || !queue.forceOffer(task)) {
+                throw new RejectedExecutionException("All handler threads are busy and the queue is full");
+            }
+        });
+        ((GrowFirstQueue) getQueue()).executor = this;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitted.incrementAndGet();
+        try {
+            super.execute(command);
+        } catch (RejectedExecutionException e) {
+            submitted.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        submitted.decrementAndGet();
+    }
+
+    private static class GrowFirstQueue extends LinkedBlockingQueue<Runnable> {
+        private volatile BoundedHandlerExecutor executor;
+
+        GrowFirstQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            BoundedHandlerExecutor executor = this.executor;
+            int poolSize = executor.getPoolSize();
+            if (executor.submitted.get() > poolSize && poolSize < executor.getMaximumPoolSize()) {
+                // no idle threads, so returning false makes the executor start a new thread
+                return false;
+            }
+            return super.offer(task);
+        }
+
+        boolean forceOffer(Runnable task) {
+            return super.offer(task);
+        }
+    }
+}
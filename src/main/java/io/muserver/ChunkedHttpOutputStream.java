@@ -1,34 +1,206 @@
 package io.muserver;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelFuture;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The response output stream. Writes are copied into a pooled buffer from the channel's allocator, which is sent
+ * when it is full or when the stream is flushed, so many small writes become one chunk (or HTTP2 data frame).
+ * Sends do not wait for the data to be written to the socket unless the amount of unwritten data for this response
+ * is above the channel's high water mark, in which case the writing thread waits until it has been sent.
+ * <p>If a fixed length threshold is given, nothing is sent until more than that many bytes have been written. If the
+ * stream is closed first, the held bytes are sent as a full response with a content length.</p>
+ */
 class ChunkedHttpOutputStream extends OutputStream {
+    static final int BUFFER_SIZE = 16 * 1024;
+
     private final NettyResponseAdaptor response;
+    private final ByteBufAllocator allocator;
+    private final int highWaterMark;
+    private final AtomicLong unwrittenBytes = new AtomicLong();
+    private ByteBuf buffer;
+    private ChannelFuture lastWrite;
+    private final int fixedLengthThreshold;
+    private boolean holding;
 
     private boolean isClosed = false;
 
-    ChunkedHttpOutputStream(NettyResponseAdaptor response) {
+    /**
+     * @param fixedLengthThreshold The number of bytes to hold back before streaming, or 0 to stream straight away, in
+     *                             which case the response must already be streaming.
+     */
+    ChunkedHttpOutputStream(NettyResponseAdaptor response, ByteBufAllocator allocator, int highWaterMark, int fixedLengthThreshold) {
         this.response = response;
+        this.allocator = allocator;
+        this.highWaterMark = highWaterMark;
+        this.fixedLengthThreshold = fixedLengthThreshold;
+        this.holding = fixedLengthThreshold > 0;
     }
 
     @Override
     public void write(int b) throws IOException {
-        write(new byte[]{(byte) b}, 0, 1);
+        checkWritable();
+        if (holding) {
+            if (heldBuffer().maxWritableBytes() > 0) {
+                buffer.writeByte(b);
+                return;
+            }
+            startStreaming();
+        }
+        if (buffer == null) {
+            buffer = allocator.directBuffer(BUFFER_SIZE);
+        }
+        buffer.writeByte(b);
+        if (!buffer.isWritable()) {
+            send();
+        }
     }
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
+        checkWritable();
+        if (holding) {
+            if (heldBuffer().maxWritableBytes() >= len) {
+                buffer.writeBytes(b, off, len);
+                return;
+            }
+            startStreaming();
+        }
+        while (len > 0) {
+            if (buffer == null) {
+                buffer = allocator.directBuffer(BUFFER_SIZE);
+            }
+            int toCopy = Math.min(len, buffer.writableBytes());
+            buffer.writeBytes(b, off, toCopy);
+            off += toCopy;
+            len -= toCopy;
+            if (!buffer.isWritable()) {
+                send();
+            }
+        }
+    }
+
+    private ByteBuf heldBuffer() {
+        if (buffer == null) {
+            // grows as needed up to the threshold
+            buffer = allocator.directBuffer(Math.min(fixedLengthThreshold, BUFFER_SIZE), fixedLengthThreshold);
+        }
+        return buffer;
+    }
+
+    /**
+     * Sends anything written so far, including held data, so that data written to the response some other way is
+     * sent after it.
+     */
+    void sendBuffered() {
+        if (!isClosed) {
+            startStreaming();
+            send();
+        }
+    }
+
+    /**
+     * Stops holding back data, sending anything held so far as the first chunk of a streamed response.
+     */
+    private void startStreaming() {
+        if (holding) {
+            holding = false;
+            response.stopHoldingOutput();
+            send();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!isClosed) {
+            checkWritable();
+            if (!holding) {
+                send();
+            }
+        }
+    }
+
+    private void checkWritable() throws IOException {
         if (isClosed) {
             throw new IOException("Cannot write to closed output stream");
         }
-        response.write(Unpooled.copiedBuffer(b, off, len), true);
+        ChannelFuture last = lastWrite;
+        if (last != null && last.isDone() && !last.isSuccess()) {
+            throw new IOException("Error while writing to " + response, last.cause());
+        }
+    }
+
+    private void send() {
+        ByteBuf toSend = buffer;
+        if (toSend == null || !toSend.isReadable()) {
+            return;
+        }
+        buffer = null;
+        int size = toSend.readableBytes();
+        boolean waitForWrites = unwrittenBytes.addAndGet(size) > highWaterMark;
+        if (waitForWrites) {
+            // check before writing, so that a write that is not allowed is not sent either
+            try {
+                EventLoopGuard.checkBlockingAllowed("Writing to the response stream");
+            } catch (RuntimeException e) {
+                unwrittenBytes.addAndGet(-size);
+                toSend.release();
+                throw e;
+            }
+        }
+        ChannelFuture future;
+        try {
+            future = response.write(toSend, false);
+        } catch (RuntimeException e) {
+            unwrittenBytes.addAndGet(-size);
+            toSend.release();
+            throw e;
+        }
+        future.addListener(f -> unwrittenBytes.addAndGet(-size));
+        lastWrite = future;
+        if (waitForWrites && unwrittenBytes.get() > highWaterMark) {
+            // writes complete in order, so once the last one is done there is nothing left waiting
+            future.syncUninterruptibly();
+        }
     }
 
-    public void close() {
+    /**
+     * Closes the stream without sending anything that is buffered or held.
+     */
+    void discard() {
         isClosed = true;
+        holding = false;
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!isClosed) {
+            try {
+                if (holding) {
+                    ByteBuf toSend = buffer != null ? buffer : allocator.directBuffer(0);
+                    buffer = null;
+                    holding = false;
+                    response.sendHeldOutput(toSend);
+                } else {
+                    send();
+                }
+            } finally {
+                isClosed = true;
+                if (buffer != null) {
+                    buffer.release();
+                    buffer = null;
+                }
+            }
+        }
     }
 
 }
@@ -138,6 +138,6 @@ public class ContextHandlerBuilder implements MuHandlerBuilder<ContextHandler> {
 
     @Override
     public ContextHandler build() {
-        return new ContextHandler(path, handlers);
+        return new ContextHandler(path, RoutingHandler.compileRoutes(handlers));
     }
 }
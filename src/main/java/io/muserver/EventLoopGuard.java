@@ -0,0 +1,35 @@
+package io.muserver;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * Tracks when a {@link NonBlockingMuHandler} is running on an I/O thread so that blocking operations fail
+ * rather than stalling the event loop.
+ */
+class EventLoopGuard {
+
+    private static final FastThreadLocal<Boolean> runningNonBlockingHandler = new FastThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
+
+    static void enter() {
+        runningNonBlockingHandler.set(Boolean.TRUE);
+    }
+
+    static void exit() {
+        runningNonBlockingHandler.set(Boolean.FALSE);
+    }
+
+    static void checkBlockingAllowed(String operation) {
+        if (runningNonBlockingHandler.get()) {
+            throw new IllegalStateException(operation + " blocks, which is not allowed in a " + NonBlockingMuHandler.class.getSimpleName() +
+                " as it runs on an I/O thread. Use the asynchronous methods on " + AsyncHandle.class.getSimpleName() +
+                " instead, or use a regular " + MuHandler.class.getSimpleName() + ".");
+        }
+    }
+
+    private EventLoopGuard() {}
+}
@@ -0,0 +1,87 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sends a region of a file by reading it into pooled direct buffers, one chunk at a time. The next chunk is read
+ * once the previous one has been written, so only one chunk per response is held in memory. This is used where the
+ * file cannot be transferred straight to the socket, such as with TLS, compression or HTTP2.
+ */
+class FileChunkWriter {
+    static final int CHUNK_SIZE = 128 * 1024;
+
+    private final NettyResponseAdaptor response;
+    private final ByteBufAllocator allocator;
+    private final FileChannel file;
+    private final long end;
+    private final boolean isLast;
+    private final ChannelPromise promise;
+    private long position;
+
+    FileChunkWriter(NettyResponseAdaptor response, ByteBufAllocator allocator, FileChannel file, long position, long length, boolean isLast, ChannelPromise promise) {
+        this.response = response;
+        this.allocator = allocator;
+        this.file = file;
+        this.position = position;
+        this.end = position + length;
+        this.isLast = isLast;
+        this.promise = promise;
+    }
+
+    void writeNext() {
+        ByteBuf chunk;
+        try {
+            chunk = readChunk();
+        } catch (Throwable e) {
+            promise.tryFailure(e);
+            return;
+        }
+        boolean finished = position == end;
+        ChannelFuture future;
+        try {
+            future = response.writeToChannel(finished && isLast, chunk);
+        } catch (Throwable e) {
+            promise.tryFailure(e);
+            return;
+        }
+        future.addListener(f -> {
+            if (!f.isSuccess()) {
+                promise.tryFailure(f.cause());
+            } else if (finished) {
+                promise.trySuccess();
+            } else {
+                writeNext();
+            }
+        });
+    }
+
+    private ByteBuf readChunk() throws IOException {
+        long remaining = end - position;
+        if (remaining == 0) {
+            return Unpooled.EMPTY_BUFFER;
+        }
+        int size = (int) Math.min(remaining, CHUNK_SIZE);
+        ByteBuf chunk = allocator.directBuffer(size);
+        try {
+            while (chunk.isWritable()) {
+                int read = chunk.writeBytes(file, position, chunk.writableBytes());
+                if (read == -1) {
+                    throw new EOFException("The file ended " + (end - position) + " bytes before the end of the region being sent");
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            chunk.release();
+            throw e;
+        }
+        return chunk;
+    }
+}
@@ -1,59 +1,108 @@
 package io.muserver;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The request body, as a queue of the buffers received from the connection. The buffers are retained rather than
+ * copied, and are released once they have been read (or passed to a {@link RequestBodyListener} which has said it is
+ * done with them). When more than a set number of bytes are waiting to be consumed, the connection stops reading
+ * until the handler catches up, so slow handlers apply backpressure to the client rather than using more memory.
+ * The bytes are also counted against the server-wide {@link RequestBodyBudget}, which pauses reading in the same way.
+ */
 class GrowableByteBufferInputStream extends InputStream {
 
-    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
-    private static final ByteBuffer LAST = ByteBuffer.allocate(0);
-    private final BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();
-    private volatile ByteBuffer current = EMPTY;
+    private static final Chunk LAST = new Chunk(Unpooled.EMPTY_BUFFER, DoneCallback.NoOp);
+    private static final Chunk DISCARDED = new Chunk(Unpooled.EMPTY_BUFFER, DoneCallback.NoOp);
+    private final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+    private final Object readLock = new Object();
+    private Chunk current; // guarded by readLock
     private RequestBodyListener listener;
+    private volatile Subscription subscription;
+    private boolean discarded = false; // guarded by listenerLock
     private final Object listenerLock = new Object();
 
     private final long readTimeoutMillis;
     private final long maxSize;
     private final AtomicLong bytesRead = new AtomicLong(0);
 
-    GrowableByteBufferInputStream(long readTimeoutMillis, long maxSize) {
+    private final long maxBufferedBytes;
+    private final RequestBodyBudget budget;
+    private final Runnable resumeReading;
+    private final Object bufferLock = new Object();
+    private long bufferedBytes = 0; // guarded by bufferLock
+    private boolean paused = false; // guarded by bufferLock
+    private boolean waitingForBudget = false; // guarded by bufferLock
+
+    /**
+     * @param readTimeoutMillis How long a blocking read waits for data
+     * @param maxSize The maximum size of the body
+     * @param maxBufferedBytes The number of unconsumed bytes that causes {@link #handOff(ByteBuf, DoneCallback)} to ask
+     *                         for reading to be paused
+     * @param budget The server-wide limit that the unconsumed bytes are also counted against
+     * @param resumeReading Called when reading was paused and the unconsumed bytes have fallen below the limits, or null
+     *                      if the caller uses the consumed callbacks instead
+     */
+    GrowableByteBufferInputStream(long readTimeoutMillis, long maxSize, long maxBufferedBytes, RequestBodyBudget budget, Runnable resumeReading) {
         this.readTimeoutMillis = readTimeoutMillis;
         this.maxSize = maxSize;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.budget = budget;
+        this.resumeReading = resumeReading;
     }
 
-    private ByteBuffer cycleIfNeeded() throws IOException {
-        if (current == LAST) {
-            return current;
-        }
-        synchronized (queue) {
-            ByteBuffer cur = current;
-            if (!cur.hasRemaining()) {
-                try {
-                    current = queue.poll(readTimeoutMillis, TimeUnit.MILLISECONDS);
-                    cur = current;
-                } catch (InterruptedException e) {
-                    // given the InputStream API, is this the way to handle interuptions?
-                    throw new IOException("Thread was interrupted");
-                }
+    private Chunk cycleIfNeeded() throws IOException {
+        synchronized (readLock) {
+            if (current != null) {
+                return current;
             }
-            return cur;
+        }
+        EventLoopGuard.checkBlockingAllowed("Reading the request body");
+        Chunk next;
+        try {
+            next = queue.poll(readTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // given the InputStream API, is this the way to handle interuptions?
+            throw new IOException("Thread was interrupted");
+        }
+        if (next == null) {
+            throw new IOException("Timed out after " + readTimeoutMillis + "ms while waiting for request body data");
+        }
+        synchronized (readLock) {
+            current = next;
+            return next;
         }
     }
 
     public int read() throws IOException {
-        ByteBuffer cur = cycleIfNeeded();
+        Chunk cur = cycleIfNeeded();
         if (cur == LAST) {
             return -1;
         }
-        return cur.get() & 0xff;
+        Chunk finished = null;
+        int value;
+        synchronized (readLock) {
+            checkNotDiscarded(cur);
+            value = cur.buf.readByte() & 0xff;
+            if (!cur.buf.isReadable()) {
+                current = null;
+                finished = cur;
+            }
+        }
+        if (finished != null) {
+            onConsumed(finished, null);
+        }
+        return value;
     }
 
     public int read(byte[] b) throws IOException {
@@ -61,18 +110,41 @@ class GrowableByteBufferInputStream extends InputStream {
     }
 
     public int read(byte[] b, int off, int len) throws IOException {
-        ByteBuffer cur = cycleIfNeeded();
+        if (len == 0) {
+            return 0;
+        }
+        Chunk cur = cycleIfNeeded();
         if (cur == LAST) {
             return -1;
         }
-        int toRead = Math.min(len, cur.remaining());
-        cur.get(b, off, toRead);
+        Chunk finished = null;
+        int toRead;
+        synchronized (readLock) {
+            checkNotDiscarded(cur);
+            toRead = Math.min(len, cur.buf.readableBytes());
+            cur.buf.readBytes(b, off, toRead);
+            if (!cur.buf.isReadable()) {
+                current = null;
+                finished = cur;
+            }
+        }
+        if (finished != null) {
+            onConsumed(finished, null);
+        }
         return toRead;
     }
 
-    public int available() throws IOException {
-        ByteBuffer cur = cycleIfNeeded();
-        return cur.remaining();
+    private void checkNotDiscarded(Chunk cur) throws IOException {
+        if (cur == DISCARDED || current != cur) {
+            throw new IOException("The request body is no longer available as the request has completed or the client disconnected");
+        }
+    }
+
+    public int available() {
+        synchronized (readLock) {
+            Chunk cur = current;
+            return cur == null ? 0 : cur.buf.readableBytes();
+        }
     }
 
     public void close() throws IOException {
@@ -80,56 +152,170 @@ class GrowableByteBufferInputStream extends InputStream {
         synchronized (listenerLock) {
             if (listener == null) {
                 queue.add(LAST);
+                drainToSubscriber();
             } else {
-                sendToListener(listener, LAST, DoneCallback.NoOp);
+                sendToListener(listener, LAST);
             }
         }
     }
 
-    void handOff(ByteBuf data, DoneCallback doneCallback) {
+    /**
+     * Adds data to the body. The buffer is retained until it is consumed.
+     * @param data The data received
+     * @param doneCallback Called when the data has been consumed (or discarded)
+     * @return <code>true</code> if more data can be read; <code>false</code> if reading should pause until
+     * the resume callback is called.
+     */
+    boolean handOff(ByteBuf data, DoneCallback doneCallback) {
         // This is called from the main netty accepter thread so must be non-blocking
         synchronized (listenerLock) {
             long read = bytesRead.addAndGet(data.readableBytes());
             if (read > maxSize) {
                 throw new MuException();
             }
-            if (listener == null) {
-                ByteBuf copy = data.copy();
-                ByteBuffer byteBuffer = ByteBuffer.allocate(data.capacity());
-                copy.readBytes(byteBuffer).release();
-                byteBuffer.flip();
-                queue.add(byteBuffer);
-                try {
-                    // TODO: only call done when data is used so it doesn't need to be copied
-                    doneCallback.onComplete(null);
-                } catch (Exception ignored) {
+            if (discarded) {
+                callQuietly(doneCallback, null);
+                return true;
+            }
+            Chunk chunk = new Chunk(data.retain(), doneCallback);
+            boolean withinBudget = budget.acquire(chunk.size);
+            boolean keepReading;
+            boolean waitForBudget = false;
+            synchronized (bufferLock) {
+                bufferedBytes += chunk.size;
+                keepReading = withinBudget && bufferedBytes < maxBufferedBytes;
+                if (!keepReading) {
+                    paused = true;
+                    if (!withinBudget && !waitingForBudget) {
+                        waitingForBudget = waitForBudget = true;
+                    }
                 }
+            }
+            if (listener == null) {
+                queue.add(chunk);
+                drainToSubscriber();
             } else {
-                sendToListener(listener, data.nioBuffer(), doneCallback);
+                sendToListener(listener, chunk);
+            }
+            if (waitForBudget) {
+                budget.waitForSpace(this::onBudgetAvailable);
             }
+            return keepReading;
         }
     }
 
-    void switchToListener(RequestBodyListener readListener) {
+    /**
+     * Releases any data not yet consumed, and resumes reading if it was paused. Data received afterwards is
+     * dropped. This is called when a request completes, as the handler no longer needs the body.
+     */
+    void discard() {
         synchronized (listenerLock) {
-            while (!queue.isEmpty()) {
-                ArrayList<ByteBuffer> existing = new ArrayList<>(queue.size());
-                queue.drainTo(existing);
-                for (ByteBuffer byteBuffer : existing) {
-                    sendToListener(readListener, byteBuffer, DoneCallback.NoOp);
+            if (discarded) {
+                return;
+            }
+            discarded = true;
+            Chunk unread = null;
+            synchronized (readLock) {
+                if (current != null && current != LAST && current != DISCARDED) {
+                    unread = current;
+                }
+                current = DISCARDED;
+            }
+            if (unread != null) {
+                onConsumed(unread, null);
+            }
+            Chunk queued;
+            while ((queued = queue.poll()) != null) {
+                if (queued != LAST && queued != DISCARDED) {
+                    onConsumed(queued, null);
                 }
             }
+            // wakes up any blocked reader
+            queue.add(DISCARDED);
+        }
+        drainToSubscriber();
+    }
+
+    long bufferedBytes() {
+        synchronized (bufferLock) {
+            return bufferedBytes;
+        }
+    }
+
+    void switchToListener(RequestBodyListener readListener) {
+        synchronized (listenerLock) {
+            Chunk queued;
+            while ((queued = queue.poll()) != null) {
+                sendToListener(readListener, queued);
+            }
             this.listener = readListener;
         }
     }
 
-    private static void sendToListener(RequestBodyListener readListener, ByteBuffer byteBuffer, DoneCallback doneCallback) {
-        if (byteBuffer == LAST) {
+    /**
+     * Switches to passing the body to a subscriber, one buffer per unit of demand. Chunks stay queued (and count
+     * towards the buffer limit, which pauses reading) until the subscriber asks for them.
+     */
+    void subscribe(RequestBodySubscriber subscriber) {
+        Subscription sub = new Subscription(subscriber);
+        subscriber.onSubscribe(sub);
+        this.subscription = sub;
+        sub.drain();
+    }
+
+    private void drainToSubscriber() {
+        Subscription sub = subscription;
+        if (sub != null) {
+            sub.drain();
+        }
+    }
+
+    private void onConsumed(Chunk chunk, Throwable error) {
+        if (chunk.consumed.getAndSet(true)) {
+            return;
+        }
+        chunk.buf.release();
+        synchronized (bufferLock) {
+            bufferedBytes -= chunk.size;
+        }
+        budget.release(chunk.size);
+        callQuietly(chunk.done, error);
+        resumeIfPossible();
+    }
+
+    private void onBudgetAvailable() {
+        synchronized (bufferLock) {
+            waitingForBudget = false;
+        }
+        resumeIfPossible();
+    }
+
+    private void resumeIfPossible() {
+        boolean waitForBudget = false;
+        synchronized (bufferLock) {
+            if (!paused || bufferedBytes >= maxBufferedBytes || waitingForBudget) {
+                return;
+            }
+            if (budget.hasSpace()) {
+                paused = false;
+            } else {
+                waitingForBudget = waitForBudget = true;
+            }
+        }
+        if (waitForBudget) {
+            budget.waitForSpace(this::onBudgetAvailable);
+        } else if (resumeReading != null) {
+            resumeReading.run();
+        }
+    }
+
+    private void sendToListener(RequestBodyListener readListener, Chunk chunk) {
+        if (chunk == LAST) {
             readListener.onComplete();
-        } else {
+        } else if (chunk != DISCARDED) {
             try {
-                readListener.onDataReceived(byteBuffer, error -> {
-                    doneCallback.onComplete(error);
+                readListener.onDataReceived(chunk.buf.nioBuffer(), error -> {
+                    onConsumed(chunk, error);
                     if (error != null) {
                         readListener.onError(error);
                     }
@@ -139,4 +325,105 @@ class GrowableByteBufferInputStream extends InputStream {
             }
         }
     }
+
+    private class Subscription implements RequestBodySubscription {
+        private final RequestBodySubscriber subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger drainers = new AtomicInteger();
+        private volatile boolean finished = false;
+
+        private Subscription(RequestBodySubscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n < 1) {
+                fail(new IllegalArgumentException("The number of buffers requested must be greater than 0 but was " + n));
+                return;
+            }
+            demand.accumulateAndGet(n, (cur, add) -> cur + add < 0 ? Long.MAX_VALUE : cur + add);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            finished = true;
+            discard();
+        }
+
+        private void fail(Throwable t) {
+            if (!finished) {
+                finished = true;
+                discard();
+                subscriber.onError(t);
+            }
+        }
+
+        /**
+         * Passes queued chunks to the subscriber while there is demand. Only one thread drains at a time, so the
+         * subscriber is never called concurrently. Chunks are taken from the queue while holding the listener lock,
+         * as {@link #discard()} releases everything queued while holding it.
+         */
+        void drain() {
+            if (drainers.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (!finished) {
+                    Chunk next;
+                    ByteBuffer copy = null;
+                    synchronized (listenerLock) {
+                        next = discarded ? DISCARDED : queue.peek();
+                        if (next != null && next != LAST && next != DISCARDED) {
+                            if (demand.get() < 1) {
+                                break;
+                            }
+                            queue.poll();
+                            demand.decrementAndGet();
+                            copy = ByteBuffer.allocate(next.size);
+                            next.buf.getBytes(next.buf.readerIndex(), copy);
+                            copy.flip();
+                        }
+                    }
+                    if (next == null) {
+                        break;
+                    } else if (next == LAST) {
+                        finished = true;
+                        subscriber.onComplete();
+                    } else if (next == DISCARDED) {
+                        finished = true;
+                        subscriber.onError(new IOException("The request body is no longer available as the request has completed or the client disconnected"));
+                    } else {
+                        onConsumed(next, null);
+                        try {
+                            subscriber.onNext(copy);
+                        } catch (Throwable t) {
+                            fail(t);
+                        }
+                    }
+                }
+            } while (drainers.decrementAndGet() != 0);
+        }
+    }
+
+    private static void callQuietly(DoneCallback callback, Throwable error) {
+        try {
+            callback.onComplete(error);
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static class Chunk {
+        private final ByteBuf buf;
+        private final int size;
+        private final DoneCallback done;
+        private final AtomicBoolean consumed = new AtomicBoolean(false);
+
+        private Chunk(ByteBuf buf, DoneCallback done) {
+            this.buf = buf;
+            this.size = buf.readableBytes();
+            this.done = done;
+        }
+    }
 }
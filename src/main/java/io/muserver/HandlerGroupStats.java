@@ -0,0 +1,35 @@
+package io.muserver;
+
+/**
+ * Statistics about one group of handler threads when handlers are run on pools tied to each event loop.
+ * @see MuServerBuilder#withEventLoopAffineHandlers(int)
+ * @see MuStats#handlerGroups()
+ */
+public interface HandlerGroupStats {
+
+    /**
+     * @return The name of the group, which is also the prefix of its thread names.
+     */
+    String name();
+
+    /**
+     * @return The number of threads in the group.
+     */
+    int threads();
+
+    /**
+     * @return The number of threads currently running a handler.
+     */
+    int activeThreads();
+
+    /**
+     * @return The number of requests waiting for a thread in this group.
+     */
+    int queuedRequests();
+
+    /**
+     * @return The number of requests that have been run by this group.
+     */
+    long completedRequests();
+
+}
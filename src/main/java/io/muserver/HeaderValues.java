@@ -24,6 +24,10 @@ public final class HeaderValues {
      * {@code "boundary"}
      */
     public static final CharSequence BOUNDARY = HttpHeaderValues.BOUNDARY;
+    /**
+     * {@code "br"}
+     */
+    public static final CharSequence BR = HttpHeaderValues.BR;
     /**
      * {@code "bytes"}
      */
@@ -138,7 +138,7 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> {
                 }
 
                 NettyRequestAdapter muRequest = new NettyRequestAdapter(ctx, ctx.channel(), request, headers, serverRef, method,
-                    proto, relativeUri, HttpUtil.isKeepAlive(request), headers.get(HeaderNames.HOST), request.protocolVersion().text());
+                    proto, relativeUri, HttpUtil.isKeepAlive(request), headers.get(HeaderNames.HOST), request.protocolVersion().text(), settings);
                 stats.onRequestStarted(muRequest);
 
                 Http1Response muResponse = new Http1Response(ctx, muRequest, new Http1Headers());
@@ -159,7 +159,8 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> {
                         }
                     }
                 };
-                nettyHandlerAdapter.onHeaders(addedToExecutorCallback, asyncContext, asyncContext.request.headers());
+                nettyHandlerAdapter.onHeaders(addedToExecutorCallback, asyncContext, asyncContext.request.headers(),
+                    settings.requestBodyBufferSize, () -> ctx.channel().read());
             }
 
         } else if (msg instanceof HttpContent) {
@@ -169,7 +170,7 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> {
                 log.debug("Got a chunk of message for an unknown request. This can happen when a request is rejected based on headers, and then the rejected body arrives.");
             } else {
                 ByteBuf byteBuf = content.content();
-                NettyHandlerAdapter.passDataToHandler(byteBuf, asyncContext);
+                readyToRead = NettyHandlerAdapter.passDataToHandler(byteBuf, asyncContext, DoneCallback.NoOp);
                 if (msg instanceof LastHttpContent) {
                     nettyHandlerAdapter.onRequestComplete(asyncContext);
                 }
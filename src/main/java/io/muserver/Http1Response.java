@@ -3,10 +3,13 @@ package io.muserver;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
 import io.netty.handler.codec.http.*;
+import io.netty.handler.ssl.SslHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.channels.FileChannel;
 import java.util.Map;
 
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
@@ -56,6 +59,44 @@ class Http1Response extends NettyResponseAdaptor {
         return ctx.writeAndFlush(msg);
     }
 
+    @Override
+    ChannelFuture writeFileToChannel(boolean isLast, FileChannel file, long position, long length) {
+        if (length == 0 || ctx.pipeline().get(SslHandler.class) != null || mayBeCompressed()) {
+            return super.writeFileToChannel(isLast, file, position, length);
+        }
+        // the encoder adds chunk framing if needed, and the transport uses sendfile where available
+        ChannelFuture regionWritten = ctx.write(new UnclosedFileRegion(file, position, length));
+        if (isLast) {
+            return ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        ctx.flush();
+        return regionWritten;
+    }
+
+    /**
+     * The compressor passes file regions through untouched, so they cannot be used if it will compress this response.
+     * Responses that already have a content encoding, such as precompressed files, are never compressed.
+     */
+    private boolean mayBeCompressed() {
+        ServerSettings settings = request.settings();
+        return !headers.contains(HeaderNames.CONTENT_ENCODING)
+            && settings.shouldCompress(headers.get(HeaderNames.CONTENT_LENGTH), headers.get(HeaderNames.CONTENT_TYPE))
+            && request.headers().contains(HeaderNames.ACCEPT_ENCODING);
+    }
+
+    /**
+     * A file region that leaves the file open when it is released, as the file belongs to the caller.
+     */
+    private static class UnclosedFileRegion extends DefaultFileRegion {
+        UnclosedFileRegion(FileChannel file, long position, long count) {
+            super(file, position, count);
+        }
+
+        @Override
+        protected void deallocate() {
+        }
+    }
+
     @Override
     protected boolean onBadRequestSent() {
         if (connectionOpen()) {
@@ -72,7 +113,9 @@ class Http1Response extends NettyResponseAdaptor {
             new EmptyHttpResponse(httpStatus())
             : new DefaultFullHttpResponse(HTTP_1_1, httpStatus(), body, false);
         writeHeaders(resp);
-        lastAction = ctx.writeAndFlush(resp).syncUninterruptibly();
+        ChannelFuture future = ctx.writeAndFlush(resp);
+        // Waiting is not possible when a non-blocking handler is running on the event loop itself
+        lastAction = ctx.executor().inEventLoop() ? future : future.syncUninterruptibly();
     }
 
 
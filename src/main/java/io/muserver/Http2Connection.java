@@ -27,6 +27,7 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
     private final ServerSettings settings;
     private final ConcurrentHashMap<Integer, AsyncContext> contexts = new ConcurrentHashMap<>();
     private volatile int lastStreamId = 0;
+    private static final int CONNECTION_WINDOW_STREAMS = 16;
 
     Http2Connection(Http2ConnectionDecoder decoder, Http2ConnectionEncoder encoder,
                     Http2Settings initialSettings, AtomicReference<MuServer> serverRef, NettyHandlerAdapter nettyHandlerAdapter, MuStatsImpl stats, ServerSettings settings) {
@@ -37,6 +38,20 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
         this.settings = settings;
     }
 
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        super.handlerAdded(ctx);
+        // Each stream's window is only re-opened as its handler consumes the body, so the connection window is
+        // made larger than a stream window to stop one slow handler from blocking the other streams.
+        Http2Stream connectionStream = connection().connectionStream();
+        int current = connection().local().flowController().windowSize(connectionStream);
+        int target = (int) Math.min(Integer.MAX_VALUE, CONNECTION_WINDOW_STREAMS * (long) Http2ConnectionBuilder.streamWindowSize(settings));
+        if (target > current) {
+            decoder().flowController().incrementWindowSize(connectionStream, target - current);
+            ctx.flush();
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         closeAllAndDisconnect(ctx, Http2Error.INTERNAL_ERROR);
@@ -72,7 +87,12 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
         if (asyncContext == null) {
             log.debug("Got a chunk of message for an unknown request. This can happen when a request is rejected based on headers, and then the rejected body arrives.");
         } else {
-            NettyHandlerAdapter.passDataToHandler(data, asyncContext);
+            // The HTTP2 flow control window is only opened again once the handler has consumed the data
+            int dataBytes = data.readableBytes();
+            if (!NettyHandlerAdapter.passDataToHandler(data, asyncContext, error -> consumeBytes(ctx, streamId, dataBytes))) {
+                ctx.channel().config().setAutoRead(false);
+            }
+            processed = padding;
             if (endOfStream) {
                 nettyHandlerAdapter.onRequestComplete(asyncContext);
                 contexts.remove(streamId);
@@ -81,6 +101,26 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
         return processed;
     }
 
+    private void consumeBytes(ChannelHandlerContext ctx, int streamId, int bytes) {
+        if (bytes == 0) {
+            return;
+        }
+        if (!ctx.executor().inEventLoop()) {
+            ctx.executor().execute(() -> consumeBytes(ctx, streamId, bytes));
+            return;
+        }
+        Http2Stream stream = connection().stream(streamId);
+        if (stream != null) {
+            try {
+                if (decoder().flowController().consumeBytes(stream, bytes)) {
+                    ctx.flush();
+                }
+            } catch (Http2Exception e) {
+                log.debug("Error while returning " + bytes + " bytes to the flow controller for stream " + streamId, e);
+            }
+        }
+    }
+
     @Override
     public void onHeadersRead(ChannelHandlerContext ctx, int streamId,
                               io.netty.handler.codec.http2.Http2Headers headers, int padding, boolean endOfStream) {
@@ -118,7 +158,7 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
         Http2Headers muHeaders = new Http2Headers(headers, hasRequestBody);
         String host = headers.authority().toString();
         muHeaders.set(HeaderNames.HOST, host);
-        NettyRequestAdapter muReq = new NettyRequestAdapter(ctx, ctx.channel(), nettyReq, muHeaders, serverRef, muMethod, "https", uri, true, host, "HTTP/2");
+        NettyRequestAdapter muReq = new NettyRequestAdapter(ctx, ctx.channel(), nettyReq, muHeaders, serverRef, muMethod, "https", uri, true, host, "HTTP/2", settings);
 
         stats.onRequestStarted(muReq);
         Http2Response resp = new Http2Response(ctx, muReq, new Http2Headers(), encoder(), streamId, settings);
@@ -129,6 +169,9 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
         });
 
         contexts.put(streamId, asyncContext);
+        if (hasRequestBody) {
+            growStreamWindow(streamId);
+        }
         DoneCallback addedToExecutorCallback = error -> {
             ctx.channel().read();
             if (error != null) {
@@ -142,7 +185,23 @@ final class Http2Connection extends Http2ConnectionHandler implements Http2Frame
                 }
             }
         };
-        nettyHandlerAdapter.onHeaders(addedToExecutorCallback, asyncContext, muHeaders);
+        // The stream's flow control window limits what each request can buffer, so reading only pauses when the
+        // server-wide request body budget is used up.
+        nettyHandlerAdapter.onHeaders(addedToExecutorCallback, asyncContext, muHeaders, Long.MAX_VALUE,
+            () -> ctx.executor().execute(() -> ctx.channel().config().setAutoRead(true)));
+    }
+
+    private void growStreamWindow(int streamId) {
+        Http2Stream stream = connection().stream(streamId);
+        Http2LocalFlowController flowController = decoder().flowController();
+        int increment = Http2ConnectionBuilder.streamWindowSize(settings) - flowController.initialWindowSize();
+        if (stream != null && increment > 0) {
+            try {
+                flowController.incrementWindowSize(stream, increment);
+            } catch (Http2Exception e) {
+                log.debug("Error while growing the flow control window of stream " + streamId, e);
+            }
+        }
     }
 
     static CharSequence compressionToUse(Headers requestHeaders) {
@@ -25,6 +25,17 @@ class Http2ConnectionBuilder
         return super.build();
     }
 
+    /**
+     * The flow control window of each stream, which is never smaller than the default window given in the HTTP2 spec.
+     * <p>Streams start with the default window and are grown to this size with a window update, rather than by
+     * changing the initial window setting. A client may use a new setting before the server has seen it acknowledged,
+     * and a client may send the default window on a new stream before it receives the server's settings at all, so
+     * changing the setting in either direction lets a client send more than the server allows.</p>
+     */
+    static int streamWindowSize(ServerSettings settings) {
+        return Math.max(settings.requestBodyBufferSize, Http2CodecUtil.DEFAULT_WINDOW_SIZE);
+    }
+
     @Override
     protected Http2Connection build(Http2ConnectionDecoder decoder, Http2ConnectionEncoder encoder,
                                     Http2Settings initialSettings) {
@@ -34,7 +45,13 @@ class Http2ConnectionBuilder
             encoder = new MuCompressorHttp2ConnectionEncoder(delegate, CompressorHttp2ConnectionEncoder.DEFAULT_COMPRESSION_LEVEL, CompressorHttp2ConnectionEncoder.DEFAULT_WINDOW_BITS, CompressorHttp2ConnectionEncoder.DEFAULT_MEM_LEVEL);
         }
         Http2Connection handler = new Http2Connection(decoder, encoder, initialSettings, serverRef, nettyHandlerAdapter, stats, settings);
-        frameListener(handler);
+        if (settings.requestDecompressionEnabled) {
+            // the decompressor also converts the decompressed bytes consumed by the handler back to compressed
+            // bytes when updating the flow control window
+            frameListener(new DelegatingDecompressorFrameListener(decoder.connection(), handler));
+        } else {
+            frameListener(handler);
+        }
         return handler;
     }
 }
@@ -1,8 +1,11 @@
 package io.muserver;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.util.concurrent.Future;
 
 /**
@@ -15,6 +18,7 @@ import java.util.concurrent.Future;
  *     <li>{@link #sendChunk(String)} to send a chunk of text (unlike <code>write</code> it can be called multiple times)</li>
  *     <li>{@link #outputStream()} to send bytes</li>
  *     <li>{@link #writer()} to send text as an output stream.</li>
+ *     <li>{@link #sendFile(java.nio.file.Path)} to send a file</li>
  * </ul>
  * <p><strong>Note:</strong> only one of the above methods can be used per response, and aside from <code>sendChunk</code>
  * it is not allowed to call the same method more than once..</p>
@@ -93,9 +97,10 @@ public interface MuResponse {
     void addCookie(io.muserver.Cookie cookie);
 
     /**
-     * <p>Gets an output stream that sends an HTTP chunk each time the <code>write</code>
-     * method is called.</p>
-     * <p>You may consider wrapping it in a {@link java.io.BufferedOutputStream} if you want to buffer the chunks before sending to the client.</p>
+     * <p>Gets an output stream that sends the response in chunks. Writes are buffered and sent to the client when
+     * 16KB has been written or when <code>flush</code> is called, so there is no need to wrap it in a
+     * {@link java.io.BufferedOutputStream}.</p>
+     * <p>Writes only block when too much data is waiting to be sent to a slow client.</p>
      * <p>If you are writing text, you may prefer the {@link #writer()} or {@link #sendChunk(String)} methods.</p>
      * @return An output stream to send data to the client.
      */
@@ -109,6 +114,29 @@ public interface MuResponse {
      */
     PrintWriter writer();
 
+    /**
+     * <p>Sends the whole of the given file as the response body, blocking until it has been sent.</p>
+     * <p>This is equivalent to calling {@link #sendFile(FileChannel, long, long)} with the file's full length, so
+     * the <code>Content-Length</code> header is set if it has not been already. The content type is not set.</p>
+     * @param file The file to send
+     * @throws IOException Thrown if the file cannot be read or the client disconnects
+     */
+    void sendFile(Path file) throws IOException;
+
+    /**
+     * <p>Sends part of a file to the client, blocking until it has been sent.</p>
+     * <p>If no response data has been sent yet and there is no <code>Content-Length</code> header, then the header
+     * is set to the given length. On HTTP1 connections without TLS where the response is not being compressed, the
+     * data is copied by the operating system straight from the file to the socket (for example with
+     * <code>sendfile</code>), so it is never copied into the JVM; otherwise it is read and sent in large chunks.</p>
+     * <p>To send a file without blocking, see {@link AsyncHandle#writeFile(FileChannel, long, long, DoneCallback)}</p>
+     * @param file The file to read from. This is not closed by this method.
+     * @param position The position in the file of the first byte to send
+     * @param length The number of bytes to send
+     * @throws IOException Thrown if the file cannot be read or the client disconnects
+     */
+    void sendFile(FileChannel file, long position, long length) throws IOException;
+
     /**
      * Specifies whether or not any response data has already been sent to the client. Note that once any data is sent to
      * the client then {@link #status(int)} and {@link #headers()} can no longer be changed.
@@ -114,6 +114,28 @@ public interface MuServer {
      */
     Set<String> mimeTypesToGzip();
 
+    /**
+     * The network transport in use by this server. This may differ from the transport requested if the
+     * requested one was not available on this platform.
+     * <p>This can only be set at point of server creation with {@link MuServerBuilder#withTransport(Transport)}</p>
+     * @return The transport in use.
+     */
+    Transport transport();
+
+    /**
+     * The number of sockets bound to each port to accept connections.
+     * <p>This can only be set at point of server creation with {@link MuServerBuilder#withAcceptorsPerPort(int)}</p>
+     * @return The number of acceptors for each port, which is 1 unless <code>SO_REUSEPORT</code> is in use.
+     */
+    int acceptorsPerPort();
+
+    /**
+     * The event loop, buffer allocation and socket options used by this server.
+     * <p>This can only be set at point of server creation with {@link MuServerBuilder#withNetworkConfig(NetworkConfigBuilder)}</p>
+     * @return The network config in use.
+     */
+    NetworkConfig networkConfig();
+
     /**
      * Changes the HTTPS certificate. This can be changed without restarting the server.
      * @param newSSLContext The new SSL Context to use.
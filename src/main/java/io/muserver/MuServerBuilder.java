@@ -5,9 +5,10 @@ import io.muserver.handlers.ResourceType;
 import io.muserver.rest.MuRuntimeDelegate;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpContentDecompressor;
 import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseEncoder;
@@ -17,6 +18,7 @@ import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +27,7 @@ import javax.net.ssl.SSLParameters;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
@@ -48,6 +51,7 @@ public class MuServerBuilder {
     private int maxUrlSize = 8192 - LENGTH_OF_METHOD_AND_PROTOCOL;
     private List<MuHandler> handlers = new ArrayList<>();
     private boolean gzipEnabled = true;
+    private boolean requestDecompressionEnabled = false;
     private Set<String> mimeTypesToGzip = ResourceType.gzippableMimeTypes(ResourceType.getResourceTypes());
     private boolean addShutdownHook = false;
     private String host;
@@ -56,6 +60,19 @@ public class MuServerBuilder {
     private long idleTimeoutMills = TimeUnit.MINUTES.toMillis(5);
     private ExecutorService executor;
     private long maxRequestSize = 24 * 1024 * 1024;
+    private Transport transport = Transports.defaultTransport();
+    private int acceptorsPerPort = 1;
+    private NetworkConfig networkConfig = NetworkConfigBuilder.networkConfig().build();
+    private int handlerCoreThreads = 8;
+    private int handlerMaxThreads = 200;
+    private int handlerQueueSize = 1000;
+    private long handlerQueueTimeoutMillis = 0;
+    private boolean virtualThreads = false;
+    private int handlerThreadsPerEventLoop = 0;
+    private int requestBodyBufferSize = 64 * 1024;
+    private long requestBodyMemoryLimit = Long.MAX_VALUE;
+    private long uploadMemoryThreshold = 16 * 1024;
+    private int fixedLengthResponseThreshold = 0;
 
     /**
      * @param port The HTTP port to use. A value of 0 will have a random port assigned; a value of -1 will
@@ -113,6 +130,23 @@ public class MuServerBuilder {
         return this;
     }
 
+    /**
+     * <p>Enables decompression of request bodies sent with a <code>Content-Encoding</code> of <code>gzip</code> or
+     * <code>deflate</code>. The body is decompressed as it is received, and handlers see the plain bytes (with the
+     * <code>Content-Encoding</code> and <code>Content-Length</code> headers removed) whether they read it with
+     * {@link MuRequest#inputStream()}, {@link MuRequest#readBodyAsString()}, {@link MuRequest#form()} or a JAX-RS
+     * entity parameter.</p>
+     * <p>The {@link #withMaxRequestSize(long)} limit applies to the decompressed size, so small bodies that expand to
+     * very large ones are rejected.</p>
+     * <p>The default is <code>false</code>, in which case compressed bodies are passed to handlers as-is.</p>
+     * @param enabled <code>true</code> to decompress request bodies
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withRequestDecompressionEnabled(boolean enabled) {
+        this.requestDecompressionEnabled = enabled;
+        return this;
+    }
+
     /**
      * Enables gzip for files of at least the specified size that match the given mime-types.
      * By default, gzip is enabled for text-based mime types over 1400 bytes. It is recommended
@@ -213,8 +247,9 @@ public class MuServerBuilder {
     }
 
     /**
-     * Sets the thread executor service to run requests on. By default {@link Executors#newCachedThreadPool()}
-     * is used.
+     * Sets the thread executor service to run requests on. By default a bounded pool is used, as described
+     * in {@link #withHandlerThreadPool(int, int, int)}. If the executor rejects a request, a <code>503 Service Unavailable</code>
+     * is sent to the client.
      *
      * @param executor The executor service to use to handle requests
      * @return The current Mu Server builder
@@ -224,6 +259,163 @@ public class MuServerBuilder {
         return this;
     }
 
+    /**
+     * <p>Sets the size of the default thread pool that request handlers run on. This has no effect if
+     * {@link #withHandlerExecutor(ExecutorService)} is used, or if {@link #withVirtualThreads(boolean)} is enabled on a JVM that supports them.</p>
+     * <p>The pool starts with <code>coreThreads</code> threads. When all threads are busy, new threads are added
+     * up to <code>maxThreads</code>, after which requests are queued. Once <code>queueSize</code> requests are queued,
+     * further requests are rejected with a <code>503 Service Unavailable</code> so that an overloaded server sheds
+     * load rather than using ever more memory. Threads above the core size are removed after being idle for a minute.</p>
+     * <p>The defaults are 8 core threads, 200 max threads and a queue size of 1000.</p>
+     *
+     * @param coreThreads The number of threads to keep in the pool, which must be 0 or greater
+     * @param maxThreads The maximum number of threads, which must be at least 1 and not less than <code>coreThreads</code>
+     * @param queueSize The maximum number of requests waiting for a thread, which must be at least 1
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withHandlerThreadPool(int coreThreads, int maxThreads, int queueSize) {
+        if (coreThreads < 0) {
+            throw new IllegalArgumentException("The number of core threads must be 0 or greater");
+        }
+        if (maxThreads < 1 || maxThreads < coreThreads) {
+            throw new IllegalArgumentException("The max threads must be at least 1 and not less than the core threads");
+        }
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("The queue size must be at least 1");
+        }
+        this.handlerCoreThreads = coreThreads;
+        this.handlerMaxThreads = maxThreads;
+        this.handlerQueueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * <p>Runs each request on its own virtual thread, rather than on a thread from a pool. This allows many thousands
+     * of slow or blocking requests (such as large uploads or long responses) to be handled concurrently without
+     * sizing a large pool, as a virtual thread that is blocked on I/O does not hold an operating system thread.</p>
+     * <p>Virtual threads require Java 21 or later. On earlier versions this setting is ignored and the default
+     * thread pool is used, and the reason is logged at startup. This setting also has no effect if
+     * {@link #withHandlerExecutor(ExecutorService)} is used.</p>
+     * <p>Note that handlers that block while holding a lock (e.g. in a <code>synchronized</code> block) pin the
+     * virtual thread to its carrier thread, which reduces the benefit.</p>
+     *
+     * @param enabled <code>true</code> to use virtual threads when available; <code>false</code> to use a thread pool (the default)
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withVirtualThreads(boolean enabled) {
+        this.virtualThreads = enabled;
+        return this;
+    }
+
+    /**
+     * <p>Gives each event loop its own small pool of handler threads, instead of sharing one pool between all
+     * connections. A request is then read, handled and written by the same group of threads, which keeps its
+     * buffers and state in the same CPU caches and avoids contention on a single shared queue. This can reduce
+     * tail latencies on machines with many cores.</p>
+     * <p>Each pool has a fixed number of threads and a queue whose size is set by the <code>queueSize</code> given
+     * to {@link #withHandlerThreadPool(int, int, int)}. The total number of handler threads is the number of event
+     * loops (see {@link NetworkConfigBuilder#withWorkerThreads(int)}) multiplied by <code>threadsPerEventLoop</code>.
+     * Because a connection always uses the pool of its event loop, a few busy connections can saturate one pool while
+     * others are idle; {@link MuStats#handlerGroups()} shows the load on each pool.</p>
+     * <p>This has no effect if {@link #withHandlerExecutor(ExecutorService)} is used or if virtual threads are in use.</p>
+     *
+     * @param threadsPerEventLoop The number of handler threads per event loop, or 0 to use one shared pool (the default)
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withEventLoopAffineHandlers(int threadsPerEventLoop) {
+        if (threadsPerEventLoop < 0) {
+            throw new IllegalArgumentException("The number of threads per event loop must be 0 or greater");
+        }
+        this.handlerThreadsPerEventLoop = threadsPerEventLoop;
+        return this;
+    }
+
+    /**
+     * <p>Sets the maximum time a request can wait for a handler thread. Requests that wait longer are rejected
+     * with a <code>503 Service Unavailable</code> instead of being handled, as the client has probably given up on them.
+     * This applies to the default executor and to one set with {@link #withHandlerExecutor(ExecutorService)}.</p>
+     * <p>By default there is no limit. The number of waiting requests and the time spent waiting are available
+     * from {@link MuStats#queuedRequests()} and {@link MuStats#queueWaitMillis()}.</p>
+     *
+     * @param duration The maximum wait, or 0 to not limit it
+     * @param unit The unit of the duration
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withMaxHandlerQueueTime(long duration, TimeUnit unit) {
+        Mutils.notNull("unit", unit);
+        if (duration < 0) {
+            throw new IllegalArgumentException("The duration must be 0 or greater");
+        }
+        this.handlerQueueTimeoutMillis = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * <p>Sets the network transport used to accept connections and to read and write data. The default
+     * is {@link Transport#NIO}, unless the <code>io.muserver.transport</code> system property is set to the name
+     * of another transport (e.g. <code>-Dio.muserver.transport=EPOLL</code>).</p>
+     * <p>If a native transport is requested but is not available on the current platform (for example
+     * {@link Transport#EPOLL} on a non-Linux OS, or when <code>netty-transport-native-epoll</code> is not on the
+     * classpath) then a fallback is used, as described on each {@link Transport} value. The transport used and
+     * the reason for any fallback is logged at startup, and {@link MuServer#transport()} returns the transport
+     * in use.</p>
+     *
+     * @param transport The transport to use
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withTransport(Transport transport) {
+        Mutils.notNull("transport", transport);
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * <p>Sets the number of sockets that are bound to each port to accept new connections. The default is 1, where
+     * a single thread accepts every connection for each port.</p>
+     * <p>When more than 1 acceptor is specified, each port is bound multiple times using <code>SO_REUSEPORT</code> so
+     * that the operating system spreads incoming connections across the sockets. Each socket is accepted on its own
+     * thread, and the accepted connections are then served by the worker event loops, the number of which is set with
+     * {@link NetworkConfigBuilder#withWorkerThreads(int)}. A value equal to the number of CPU cores is a good starting
+     * point for servers that need to handle many new connections at once.</p>
+     * <p>This requires the {@link Transport#EPOLL} or {@link Transport#IO_URING} transport. If NIO is in use
+     * then a single acceptor is used. Use {@link MuServer#acceptorsPerPort()} to find the number in use.</p>
+     *
+     * @param count The number of acceptors for each port, which must be 1 or greater.
+     * @return The current Mu Server builder
+     * @see #withTransport(Transport)
+     */
+    public MuServerBuilder withAcceptorsPerPort(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("The acceptor count must be 1 or greater");
+        }
+        this.acceptorsPerPort = count;
+        return this;
+    }
+
+    /**
+     * Sets the event loop, buffer allocation and socket options used by the server.
+     *
+     * @param networkConfig A config
+     * @return The current Mu Server builder
+     * @see NetworkConfigBuilder
+     */
+    public MuServerBuilder withNetworkConfig(NetworkConfig networkConfig) {
+        Mutils.notNull("networkConfig", networkConfig);
+        this.networkConfig = networkConfig;
+        return this;
+    }
+
+    /**
+     * Sets the event loop, buffer allocation and socket options used by the server.
+     *
+     * @param networkConfig A config
+     * @return The current Mu Server builder
+     * @see NetworkConfigBuilder
+     */
+    public MuServerBuilder withNetworkConfig(NetworkConfigBuilder networkConfig) {
+        return withNetworkConfig(networkConfig.build());
+    }
+
     /**
      * <p>Specifies the maximum size in bytes of the HTTP request headers. Defaults to 8192.</p>
      * <p>If a request has headers exceeding this value, it will be rejected and a <code>431</code>
@@ -262,6 +454,80 @@ public class MuServerBuilder {
         return this;
     }
 
+    /**
+     * <p>The maximum number of request body bytes held in memory per request while waiting for the handler to read them.
+     * Once this much data is waiting, the server stops reading from the connection until the handler catches up. For
+     * HTTP2 this is the flow control window of each stream, which is only re-opened as the handler reads. As
+     * clients may send the default HTTP2 window of 65535 bytes before they receive the server's settings, HTTP2 streams
+     * use a window of at least that size. This bounds the memory used by large uploads to slow handlers.</p>
+     * <p>Larger values may increase upload throughput at the expense of memory. The default is 64KB.</p>
+     * @param bytes The number of bytes, which must be greater than 0.
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withRequestBodyBufferSize(int bytes) {
+        if (bytes < 1) {
+            throw new IllegalArgumentException("The request body buffer size must be greater than 0");
+        }
+        this.requestBodyBufferSize = bytes;
+        return this;
+    }
+
+    /**
+     * <p>The maximum number of request body bytes held in memory across all requests while waiting for handlers to
+     * read them. {@link #withRequestBodyBufferSize(int)} limits each request, but many concurrent uploads to slow
+     * handlers can still add up to a lot of memory.</p>
+     * <p>When the limit is reached, connections that receive more request body data stop reading until enough of the
+     * buffered data has been consumed by handlers. The bytes currently held and the number of times connections were
+     * paused are available from {@link MuStats#requestBodyBytesBuffered()} and {@link MuStats#requestBodyPauses()}.</p>
+     * <p>The default is no limit.</p>
+     * @param bytes The number of bytes, which must be greater than 0.
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withRequestBodyMemoryLimit(long bytes) {
+        if (bytes < 1) {
+            throw new IllegalArgumentException("The request body memory limit must be greater than 0");
+        }
+        this.requestBodyMemoryLimit = bytes;
+        return this;
+    }
+
+    /**
+     * <p>The size above which uploaded files and other parts of multipart form bodies are written to a temporary file
+     * as they are received, rather than being held in memory.</p>
+     * <p>The default is 16KB.</p>
+     * @param bytes The number of bytes, which must be 0 or greater. 0 means all uploads go to disk.
+     * @return The current Mu Server builder
+     * @see MultipartListener
+     */
+    public MuServerBuilder withUploadMemoryThreshold(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The upload memory threshold cannot be negative");
+        }
+        this.uploadMemoryThreshold = bytes;
+        return this;
+    }
+
+    /**
+     * <p>Holds back data written to {@link MuResponse#outputStream()} or {@link MuResponse#writer()} until more than
+     * the given number of bytes have been written or the response completes. If the response completes first, it is
+     * sent as a single response with a <code>Content-Length</code> header rather than with chunked encoding (or
+     * multiple HTTP2 data frames), which also allows the gzip size threshold set with {@link #withGzip(long, Set)} to
+     * apply. Responses larger than the threshold are streamed as normal.</p>
+     * <p>Calling <code>flush()</code> on the stream or writer does not send held data; however
+     * {@link MuResponse#sendChunk(String)} and {@link AsyncHandle#write(java.nio.ByteBuffer, DoneCallback)} send anything held
+     * before sending their own data. Responses that already have a <code>Content-Length</code> header are never held.</p>
+     * <p>The default is 0, meaning output is never held.</p>
+     * @param bytes The number of bytes, which must be 0 or greater.
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withFixedLengthResponseThreshold(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The fixed length response threshold cannot be negative");
+        }
+        this.fixedLengthResponseThreshold = bytes;
+        return this;
+    }
+
     /**
      * Sets the idle timeout for requests and responses. If no bytes are sent or received within this time then
      * the connection is closed.
@@ -341,7 +607,10 @@ public class MuServerBuilder {
     }
 
     /**
-     * Registers a new handler that will only be called if it matches the given route info
+     * <p>Registers a new handler that will only be called if it matches the given route info.</p>
+     * <p>Routes added one after another are compiled together into a single {@link RoutingHandler}, so a request
+     * is matched against all of them in one pass. Use a {@link RoutingHandlerBuilder} directly to send
+     * <code>405 Method Not Allowed</code> responses.</p>
      *
      * @param method      The method to match, or <code>null</code> to accept any method.
      * @param uriTemplate A URL template. Supports plain URLs like <code>/abc</code> or paths
@@ -359,6 +628,24 @@ public class MuServerBuilder {
         return addHandler(Routes.route(method, uriTemplate, handler));
     }
 
+    /**
+     * <p>Registers a new handler that will only be called if it matches the given route info, and which is run
+     * directly on the I/O thread rather than on the handler executor. The handler must not block; see
+     * {@link NonBlockingMuHandler} for what is allowed.</p>
+     * <p>Non-blocking handlers are only run on the I/O thread if they are added before any other handlers.</p>
+     *
+     * @param method      The method to match, or <code>null</code> to accept any method.
+     * @param uriTemplate A URL template, as described in {@link #addHandler(Method, String, RouteHandler)}
+     * @param handler     The handler to invoke if the method and URI matches. If null, then no handler is added.
+     * @return Returns the server builder
+     */
+    public MuServerBuilder addNonBlockingHandler(Method method, String uriTemplate, RouteHandler handler) {
+        if (handler == null) {
+            return this;
+        }
+        return addHandler(Routes.nonBlockingRoute(method, uriTemplate, handler));
+    }
+
     /**
      * Creates a new server builder. Call {@link #withHttpsPort(int)} or {@link #withHttpPort(int)} to specify
      * the port to use, and call {@link #start()} to start the server.
@@ -398,27 +685,45 @@ public class MuServerBuilder {
             throw new IllegalArgumentException("No ports were configured. Please call MuServerBuilder.withHttpPort(int) or MuServerBuilder.withHttpsPort(int)");
         }
 
-        ServerSettings settings = new ServerSettings(minimumGzipSize, maxHeadersSize, idleTimeoutMills, maxRequestSize, maxUrlSize, gzipEnabled, mimeTypesToGzip);
+        Transport transport = Transports.resolve(this.transport);
+        int acceptorsPerPort = Transports.acceptorsPerPort(transport, this.acceptorsPerPort);
+        ServerSettings settings = new ServerSettings(minimumGzipSize, maxHeadersSize, idleTimeoutMills, maxRequestSize, maxUrlSize, gzipEnabled, mimeTypesToGzip, transport, acceptorsPerPort, networkConfig, handlerQueueTimeoutMillis, requestBodyBufferSize, uploadMemoryThreshold, requestDecompressionEnabled, fixedLengthResponseThreshold);
+
+        // When using SO_REUSEPORT each acceptor socket of a port is registered on a different boss loop
+        EventLoopGroup bossGroup = Transports.newEventLoopGroup(transport, acceptorsPerPort);
+        EventLoopGroup workerGroup = Transports.newEventLoopGroup(transport, networkConfig.workerThreads);
+        List<Channel> channels = new ArrayList<>();
+        ChannelGroup connections = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
         ExecutorService handlerExecutor = this.executor;
+        if (handlerExecutor == null && virtualThreads) {
+            handlerExecutor = VirtualThreads.handlerExecutorIfSupported();
+        }
+        List<HandlerGroupStats> handlerGroups = Collections.emptyList();
+        if (handlerExecutor == null && handlerThreadsPerEventLoop > 0) {
+            AffineHandlerExecutor affineExecutor = new AffineHandlerExecutor(workerGroup, handlerThreadsPerEventLoop, handlerQueueSize);
+            handlerGroups = affineExecutor.groups();
+            handlerExecutor = affineExecutor;
+        }
         if (handlerExecutor == null) {
             DefaultThreadFactory threadFactory = new DefaultThreadFactory("muhandler");
-            handlerExecutor = new ThreadPoolExecutor(8, 200, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+            handlerExecutor = new BoundedHandlerExecutor(handlerCoreThreads, handlerMaxThreads, handlerQueueSize, threadFactory);
         }
-        NettyHandlerAdapter nettyHandlerAdapter = new NettyHandlerAdapter(handlerExecutor, handlers, settings);
-
-        NioEventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        NioEventLoopGroup workerGroup = new NioEventLoopGroup();
-        List<Channel> channels = new ArrayList<>();
+        // Executors passed in by the user are theirs to shut down
+        ExecutorService ownedExecutor = this.executor == null ? handlerExecutor : null;
 
         Runnable shutdown = () -> {
             try {
                 for (Channel channel : channels) {
                     channel.close().sync();
                 }
+                // Close connections before stopping the event loops, as the io_uring loop otherwise waits on their pending reads
+                connections.close().sync();
                 bossGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).sync();
                 workerGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).sync();
-
+                if (ownedExecutor != null) {
+                    ownedExecutor.shutdown();
+                }
             } catch (Exception e) {
                 log.info("Error while shutting down. Will ignore. Error was: " + e.getMessage());
             }
@@ -426,31 +731,33 @@ public class MuServerBuilder {
 
         try {
             GlobalTrafficShapingHandler trafficShapingHandler = new GlobalTrafficShapingHandler(workerGroup, 0, 0, 1000);
-            MuStatsImpl stats = new MuStatsImpl(trafficShapingHandler.trafficCounter());
+            RequestBodyBudget requestBodyBudget = new RequestBodyBudget(requestBodyMemoryLimit);
+            MuStatsImpl stats = new MuStatsImpl(trafficShapingHandler.trafficCounter(), handlerGroups, requestBodyBudget);
+            NettyHandlerAdapter nettyHandlerAdapter = new NettyHandlerAdapter(handlerExecutor, RoutingHandler.compileRoutes(handlers), settings, stats, requestBodyBudget);
             AtomicReference<MuServer> serverRef = new AtomicReference<>();
             SslContextProvider sslContextProvider = null;
 
-            Channel httpChannel = httpPort < 0 ? null : createChannel(bossGroup, workerGroup, nettyHandlerAdapter, host, httpPort, null, trafficShapingHandler, stats, serverRef, settings, false, idleTimeoutMills);
-            Channel httpsChannel;
+            List<Channel> httpChannels = httpPort < 0 ? null : createChannels(bossGroup, workerGroup, connections, nettyHandlerAdapter, host, httpPort, null, trafficShapingHandler, stats, serverRef, settings, false, idleTimeoutMills);
+            List<Channel> httpsChannels;
             boolean http2Enabled = http2Config != null && http2Config.enabled;
             if (httpsPort < 0) {
-                httpsChannel = null;
+                httpsChannels = null;
             } else {
                 SSLContextBuilder toUse = this.sslContextBuilder != null ? this.sslContextBuilder : SSLContextBuilder.unsignedLocalhostCertBuilder();
                 SslContext nettySslContext = toUse.toNettySslContext(http2Enabled);
                 log.debug("SSL Context is " + nettySslContext);
                 sslContextProvider = new SslContextProvider(nettySslContext);
-                httpsChannel = createChannel(bossGroup, workerGroup, nettyHandlerAdapter, host, httpsPort, sslContextProvider, trafficShapingHandler, stats, serverRef, settings, http2Enabled, idleTimeoutMills);
+                httpsChannels = createChannels(bossGroup, workerGroup, connections, nettyHandlerAdapter, host, httpsPort, sslContextProvider, trafficShapingHandler, stats, serverRef, settings, http2Enabled, idleTimeoutMills);
             }
             URI uri = null;
-            if (httpChannel != null) {
-                channels.add(httpChannel);
-                uri = getUriFromChannel(httpChannel, "http", host);
+            if (httpChannels != null) {
+                channels.addAll(httpChannels);
+                uri = getUriFromChannel(httpChannels.get(0), "http", host);
             }
             URI httpsUri = null;
-            if (httpsChannel != null) {
-                channels.add(httpsChannel);
-                httpsUri = getUriFromChannel(httpsChannel, "https", host);
+            if (httpsChannels != null) {
+                channels.addAll(httpsChannels);
+                httpsUri = getUriFromChannel(httpsChannels.get(0), "https", host);
                 ((SSLInfoImpl) sslContextProvider.sslInfo()).setHttpsUri(httpsUri);
             }
 
@@ -475,15 +782,16 @@ public class MuServerBuilder {
         return URI.create(protocol + "://" + host.toLowerCase() + ":" + a.getPort());
     }
 
-    private static Channel createChannel(NioEventLoopGroup bossGroup, NioEventLoopGroup workerGroup, NettyHandlerAdapter nettyHandlerAdapter, String host, int port, SslContextProvider sslContextProvider, GlobalTrafficShapingHandler trafficShapingHandler, MuStatsImpl stats, AtomicReference<MuServer> serverRef, ServerSettings settings, final boolean http2, long idleTimeoutMills) throws InterruptedException {
+    private static List<Channel> createChannels(EventLoopGroup bossGroup, EventLoopGroup workerGroup, ChannelGroup connections, NettyHandlerAdapter nettyHandlerAdapter, String host, int port, SslContextProvider sslContextProvider, GlobalTrafficShapingHandler trafficShapingHandler, MuStatsImpl stats, AtomicReference<MuServer> serverRef, ServerSettings settings, final boolean http2, long idleTimeoutMills) throws InterruptedException {
         boolean usesSsl = sslContextProvider != null;
         String proto = usesSsl ? "https" : "http";
         ServerBootstrap b = new ServerBootstrap();
-        b.group(bossGroup, workerGroup)
-            .channel(NioServerSocketChannel.class)
+        settings.networkConfig.applyTo(b);
+        b.channel(Transports.serverChannelClass(settings.transport))
             .childHandler(new ChannelInitializer<SocketChannel>() {
 
                 protected void initChannel(SocketChannel socketChannel) {
+                    connections.add(socketChannel);
                     ChannelPipeline p = socketChannel.pipeline();
                     p.addLast("idle", new IdleStateHandler(0, 0, idleTimeoutMills, TimeUnit.MILLISECONDS));
                     p.addLast(trafficShapingHandler);
@@ -511,6 +819,31 @@ public class MuServerBuilder {
 
 
             });
+        List<Channel> channels = new ArrayList<>();
+        if (settings.acceptorsPerPort == 1) {
+            b.group(bossGroup, workerGroup);
+            channels.add(bind(b, host, port));
+        } else {
+            Transports.enableReusePort(settings.transport, b);
+            try {
+                for (int i = 0; i < settings.acceptorsPerPort; i++) {
+                    // The boss group has one loop per acceptor, so each socket accepts on its own thread while
+                    // the accepted connections are spread across all the worker loops
+                    Channel channel = bind(b.clone().group(bossGroup.next(), workerGroup), host, port);
+                    channels.add(channel);
+                    port = ((InetSocketAddress) channel.localAddress()).getPort();
+                }
+            } catch (Exception e) {
+                for (Channel channel : channels) {
+                    channel.close();
+                }
+                throw e;
+            }
+        }
+        return channels;
+    }
+
+    private static Channel bind(ServerBootstrap b, String host, int port) throws InterruptedException {
         ChannelFuture bound = host == null ? b.bind(port) : b.bind(host, port);
         return bound.sync().channel();
     }
@@ -523,6 +856,9 @@ public class MuServerBuilder {
                 return super.isContentAlwaysEmpty(msg) || msg instanceof NettyResponseAdaptor.EmptyHttpResponse;
             }
         });
+        if (settings.requestDecompressionEnabled) {
+            p.addLast("decompressor", new HttpContentDecompressor());
+        }
         if (settings.gzipEnabled) {
             p.addLast("compressor", new SelectiveHttpContentCompressor(settings));
         }
@@ -95,6 +95,21 @@ class MuServerImpl implements MuServer {
         return settings.mimeTypesToGzip;
     }
 
+    @Override
+    public Transport transport() {
+        return settings.transport;
+    }
+
+    @Override
+    public int acceptorsPerPort() {
+        return settings.acceptorsPerPort;
+    }
+
+    @Override
+    public NetworkConfig networkConfig() {
+        return settings.networkConfig;
+    }
+
     @Override
     public void changeSSLContext(SSLContext newSSLContext) {
         changeSSLContext(SSLContextBuilder.sslContext().withSSLContext(newSSLContext));
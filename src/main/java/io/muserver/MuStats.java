@@ -1,7 +1,8 @@
 package io.muserver;
 
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Various statistics about the current instance of a Mu Server. Accessible via the {@link MuServer#stats()} method.
@@ -34,8 +35,9 @@ public interface MuStats {
     long bytesRead();
 
     /**
-     * @return The number of requests rejected because the executor passed to {@link MuServerBuilder#withHandlerExecutor(ExecutorService)}
-     * rejected a new response.
+     * @return The number of requests rejected with a <code>503</code> because the handler executor rejected them
+     * (for example because the queue of the default executor was full), or because they waited longer than
+     * the time set with {@link MuServerBuilder#withMaxHandlerQueueTime(long, TimeUnit)}.
      */
     long rejectedDueToOverload();
 
@@ -48,4 +50,34 @@ public interface MuStats {
      * @return The requests that are currently in-flight
      */
     Set<MuRequest> activeRequests();
+
+    /**
+     * @return The number of requests currently waiting for a handler thread.
+     */
+    long queuedRequests();
+
+    /**
+     * @return The sum, over all requests since the server started, of the time in milliseconds from when a request was
+     * submitted to the handler executor to when a handler thread started running it. This includes requests that were
+     * then rejected for waiting longer than {@link MuServerBuilder#withMaxHandlerQueueTime(long, TimeUnit)}, and
+     * excludes requests that were handled by non-blocking handlers on the I/O thread without being submitted.
+     */
+    long queueWaitMillis();
+
+    /**
+     * @return Statistics for each group of handler threads when {@link MuServerBuilder#withEventLoopAffineHandlers(int)}
+     * is used, which shows whether requests are spread evenly over the groups; otherwise an empty list.
+     */
+    List<HandlerGroupStats> handlerGroups();
+
+    /**
+     * @return The number of request body bytes currently held in memory waiting for handlers to read them.
+     */
+    long requestBodyBytesBuffered();
+
+    /**
+     * @return The number of times reading from a connection was paused because the limit set with
+     * {@link MuServerBuilder#withRequestBodyMemoryLimit(long)} was reached.
+     */
+    long requestBodyPauses();
 }
@@ -2,8 +2,10 @@ package io.muserver;
 
 import io.netty.handler.traffic.TrafficCounter;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 class MuStatsImpl implements MuStats {
@@ -12,9 +14,15 @@ class MuStatsImpl implements MuStats {
     private final AtomicLong invalidHttpRequests = new AtomicLong(0);
     private final AtomicLong rejectedDueToOverload = new AtomicLong(0);
     private final AtomicLong failedToConnect = new AtomicLong(0);
+    private final AtomicLong queuedRequests = new AtomicLong(0);
+    private final AtomicLong queueWaitNanos = new AtomicLong(0);
     private final Set<MuRequest> activeRequests = ConcurrentHashMap.newKeySet();
+    private final List<HandlerGroupStats> handlerGroups;
+    private final RequestBodyBudget requestBodyBudget;
 
-    MuStatsImpl(TrafficCounter trafficCounter) {
+    MuStatsImpl(TrafficCounter trafficCounter, List<HandlerGroupStats> handlerGroups, RequestBodyBudget requestBodyBudget) {
+        this.handlerGroups = handlerGroups;
+        this.requestBodyBudget = requestBodyBudget;
         this.trafficCounter = trafficCounter;
     }
 
@@ -58,6 +66,31 @@ class MuStatsImpl implements MuStats {
         return activeRequests;
     }
 
+    @Override
+    public long queuedRequests() {
+        return queuedRequests.get();
+    }
+
+    @Override
+    public long queueWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(queueWaitNanos.get());
+    }
+
+
+    @Override
+    public List<HandlerGroupStats> handlerGroups() {
+        return handlerGroups;
+    }
+
+    @Override
+    public long requestBodyBytesBuffered() {
+        return requestBodyBudget.inUse();
+    }
+
+    @Override
+    public long requestBodyPauses() {
+        return requestBodyBudget.pauses();
+    }
 
     void onRequestStarted(MuRequest request) {
         activeRequests.add(request);
@@ -68,6 +101,15 @@ class MuStatsImpl implements MuStats {
         completedRequests.incrementAndGet();
     }
 
+    void onRequestQueued() {
+        queuedRequests.incrementAndGet();
+    }
+
+    void onRequestDequeued(long waitNanos) {
+        queuedRequests.decrementAndGet();
+        queueWaitNanos.addAndGet(waitNanos);
+    }
+
     void onRejectedDueToOverload() {
         rejectedDueToOverload.incrementAndGet();
     }
@@ -85,6 +127,8 @@ class MuStatsImpl implements MuStats {
         return "Completed requests: " + completedRequests() + "; active: " + activeConnections() +
             "; invalid requests: " + invalidHttpRequests() + "; bytes received: " + bytesRead() +
             "; bytes sent: " + bytesSent() + "; rejected: " + rejectedDueToOverload() +
-            "; connectionFailured: " + failedToConnect();
+            "; connectionFailured: " + failedToConnect() + "; queued: " + queuedRequests() +
+            "; queue wait millis: " + queueWaitMillis() + "; request body bytes buffered: " + requestBodyBytesBuffered() +
+            "; request body pauses: " + requestBodyPauses();
     }
 }
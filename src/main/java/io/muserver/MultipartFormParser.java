@@ -0,0 +1,194 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.multipart.Attribute;
+import io.netty.handler.codec.http.multipart.DefaultHttpDataFactory;
+import io.netty.handler.codec.http.multipart.FileUpload;
+import io.netty.handler.codec.http.multipart.HttpPostMultipartRequestDecoder;
+import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
+import io.netty.handler.codec.http.multipart.InterfaceHttpData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Parses a multipart body as it is received, passing each part to a {@link MultipartListener} as soon as it is
+ * complete. Parts over the memory threshold are written to disk by the decoder while they are being received.
+ * <p>When used as a {@link RequestBodyListener} the data arrives on an I/O thread, so the parsing (and any writing
+ * to disk) is done on the given executor instead, one buffer at a time and in the order received. The buffer is only
+ * released once it has been parsed, so reading from the client pauses if the parsing falls behind.</p>
+ */
+class MultipartFormParser implements RequestBodyListener {
+    private static final Logger log = LoggerFactory.getLogger(MultipartFormParser.class);
+
+    private final HttpPostMultipartRequestDecoder decoder;
+    private final MultipartListener listener;
+    private final String requestDescription;
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private boolean running = false;
+    private boolean failed = false;
+    private boolean destroyed = false;
+
+    /**
+     * @param executor The executor to parse data received by {@link #onDataReceived(ByteBuffer, DoneCallback)} on
+     */
+    MultipartFormParser(HttpRequest request, long memoryThreshold, MultipartListener listener, String requestDescription, Executor executor) {
+        this.decoder = new HttpPostMultipartRequestDecoder(new DefaultHttpDataFactory(memoryThreshold), request, UTF_8);
+        this.listener = listener;
+        this.requestDescription = requestDescription;
+        this.executor = executor;
+    }
+
+    @Override
+    public void onDataReceived(ByteBuffer buffer, DoneCallback doneCallback) {
+        runInOrder(() -> {
+            try {
+                offer(Unpooled.wrappedBuffer(buffer));
+            } catch (Exception e) {
+                callQuietly(doneCallback, e);
+                return;
+            }
+            callQuietly(doneCallback, null);
+        });
+    }
+
+    private static void callQuietly(DoneCallback doneCallback, Throwable error) {
+        try {
+            doneCallback.onComplete(error);
+        } catch (Exception e) {
+            log.debug("Error from request body callback", e);
+        }
+    }
+
+    private void runInOrder(Runnable task) {
+        synchronized (tasks) {
+            tasks.add(task);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        try {
+            executor.execute(this::runTasks);
+        } catch (RejectedExecutionException e) {
+            // the request must still be completed, so parse here rather than leave the listener waiting
+            runTasks();
+        }
+    }
+
+    private void runTasks() {
+        while (true) {
+            Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    running = false;
+                    return;
+                }
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * Parses the given data, which the decoder copies from so it can be reused once this returns.
+     */
+    synchronized void offer(ByteBuf data) throws Exception {
+        if (failed || destroyed) {
+            return;
+        }
+        try {
+            decoder.offer(new DefaultHttpContent(data));
+            sendCompletedParts();
+        } catch (Exception e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        runInOrder(this::finish);
+    }
+
+    /**
+     * Parses the end of the body, passing any remaining parts to the listener before calling its complete method.
+     */
+    void finish() {
+        synchronized (this) {
+            if (failed || destroyed) {
+                return;
+            }
+            try {
+                decoder.offer(LastHttpContent.EMPTY_LAST_CONTENT);
+                sendCompletedParts();
+            } catch (Exception e) {
+                failed = true;
+                listener.onError(e);
+                return;
+            }
+        }
+        listener.onComplete();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        runInOrder(() -> {
+            synchronized (this) {
+                failed = true;
+            }
+            listener.onError(t);
+        });
+    }
+
+    private void sendCompletedParts() throws Exception {
+        while (hasNext()) {
+            InterfaceHttpData data = decoder.next();
+            if (data instanceof FileUpload) {
+                FileUpload fileUpload = (FileUpload) data;
+                if (fileUpload.length() == 0 && Mutils.nullOrEmpty(fileUpload.getFilename())) {
+                    // nothing uploaded
+                } else {
+                    listener.onFile(fileUpload.getName(), new MuUploadedFile(fileUpload));
+                }
+            } else if (data instanceof Attribute) {
+                Attribute attribute = (Attribute) data;
+                listener.onFormField(attribute.getName(), attribute.getValue());
+            } else if (data != null) {
+                log.warn("Unrecognised body part: " + data.getClass() + " from " + requestDescription + " - this may mean some of the request data is lost.");
+            }
+        }
+    }
+
+    private boolean hasNext() {
+        try {
+            return decoder.hasNext();
+        } catch (HttpPostRequestDecoder.EndOfDataDecoderException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Deletes any temporary files and releases the decoder's buffers. Called when the request completes.
+     */
+    synchronized void destroy() {
+        if (!destroyed) {
+            destroyed = true;
+            // need to clear the datas before destroying. See https://github.com/netty/netty/issues/7814#issuecomment-397855311
+            decoder.getBodyHttpDatas().clear();
+            decoder.destroy();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.muserver;
+
+/**
+ * <p>Callbacks for reading a <code>multipart/form-data</code> request body asynchronously, one part at a time.</p>
+ * <p>Each part is passed to the listener as soon as it has been fully received, so form fields sent before a large
+ * file are available straight away. File parts larger than the threshold set with
+ * {@link MuServerBuilder#withUploadMemoryThreshold(long)} are written to a temporary file as they arrive rather than
+ * being held in memory. Uploaded files are deleted when the request completes, so use
+ * {@link UploadedFile#saveTo(java.io.File)} to keep them.</p>
+ * <p>Example usage:</p>
+ * <pre><code>
+ *  server = httpsServer()
+ *      .addHandler(Method.POST, "/upload", (request, response, pathParams) -&gt; {
+ *          AsyncHandle handle = request.handleAsync();
+ *          handle.setMultipartListener(new MultipartListener() {
+ *              public void onFormField(String name, String value) {
+ *                  fields.put(name, value);
+ *              }
+ *
+ *              public void onFile(String name, UploadedFile file) throws IOException {
+ *                  file.saveTo(new File(uploadDir, file.filename()));
+ *              }
+ *
+ *              public void onComplete() {
+ *                  handle.complete();
+ *              }
+ *
+ *              public void onError(Throwable t) {
+ *                  handle.complete(t);
+ *              }
+ *          });
+ *      })
+ *      .start();
+ * </code></pre>
+ * <p>The body is parsed, and these methods are called, on a thread of the server's handler executor rather than
+ * on a socket acceptor thread, as parts may be written to disk. The methods are called one at a time in the order
+ * the parts were received, and while they run no more of the body is parsed, so they should not block for long.</p>
+ * @see AsyncHandle#setMultipartListener(MultipartListener)
+ */
+public interface MultipartListener {
+
+    /**
+     * Called when a form field that is not a file has been received.
+     *
+     * @param name  The name of the form field
+     * @param value The value of the form field
+     * @throws Exception Any thrown exceptions will stop the parsing and cause the {@link #onError(Throwable)} method
+     *                   to be called with the thrown exception as a parameter.
+     */
+    void onFormField(String name, String value) throws Exception;
+
+    /**
+     * Called when a file has been fully received. Parts with no file name and no content (such as a file input
+     * where no file was chosen) are skipped.
+     *
+     * @param name The name of the form field
+     * @param file The uploaded file, which is available until the request completes
+     * @throws Exception Any thrown exceptions will stop the parsing and cause the {@link #onError(Throwable)} method
+     *                   to be called with the thrown exception as a parameter.
+     */
+    void onFile(String name, UploadedFile file) throws Exception;
+
+    /**
+     * Called when the whole request body has been received and all parts have been passed to the listener.
+     */
+    void onComplete();
+
+    /**
+     * Called if there is an error reading or parsing the body.
+     *
+     * @param t The error.
+     */
+    void onError(Throwable t);
+
+}
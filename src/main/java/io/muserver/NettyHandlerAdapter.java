@@ -14,6 +14,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 class NettyHandlerAdapter {
 
@@ -27,25 +29,44 @@ class NettyHandlerAdapter {
     private final List<MuHandler> muHandlers;
     private final ServerSettings settings;
     private final ExecutorService executor;
+    private final MuStatsImpl stats;
+    private final RequestBodyBudget requestBodyBudget;
+    private final int nonBlockingHandlerCount;
 
-    NettyHandlerAdapter(ExecutorService executor, List<MuHandler> muHandlers, ServerSettings settings) {
+    NettyHandlerAdapter(ExecutorService executor, List<MuHandler> muHandlers, ServerSettings settings, MuStatsImpl stats, RequestBodyBudget requestBodyBudget) {
         this.executor = executor;
         this.muHandlers = muHandlers;
         this.settings = settings;
+        this.stats = stats;
+        this.requestBodyBudget = requestBodyBudget;
+        int nonBlocking = 0;
+        while (nonBlocking < muHandlers.size() && muHandlers.get(nonBlocking) instanceof NonBlockingMuHandler) {
+            nonBlocking++;
+        }
+        this.nonBlockingHandlerCount = nonBlocking;
     }
 
-    static void passDataToHandler(ByteBuf data, AsyncContext asyncContext) {
+    /**
+     * Passes request body data to the request's input stream, which holds on to it until the handler consumes it.
+     * @param data The data, which is retained by the stream if needed
+     * @param asyncContext The request context
+     * @param onConsumed Called once the handler has consumed the data, or if it could not be passed to the handler
+     * @return <code>true</code> if more data can be read from the connection; <code>false</code> if too much
+     * data is waiting to be consumed, in which case the stream resumes reading later.
+     */
+    static boolean passDataToHandler(ByteBuf data, AsyncContext asyncContext, DoneCallback onConsumed) {
         if (data.readableBytes() > 0) {
-            data.retain();
             try {
-                asyncContext.requestBody.handOff(data, error -> {
-                    data.release();
+                return asyncContext.requestBody.handOff(data, error -> {
+                    onConsumed.onComplete(null);
                     if (error != null) {
                         asyncContext.onCancelled(false);
                     }
                 });
             } catch (Exception e) {
-                data.release();
+                try {
+                    onConsumed.onComplete(null);
+                } catch (Exception ignored) { }
                 if (e instanceof MuException) {
                     MuResponse resp = asyncContext.response;
                     if (!resp.hasStartedSendingData()) {
@@ -59,56 +80,80 @@ class NettyHandlerAdapter {
                 }
             }
         }
+        return true;
     }
 
-    void onHeaders(DoneCallback addedToExecutorCallback, AsyncContext muCtx, Headers headers) {
+    /**
+     * Called when the headers of a request have been read.
+     * @param addedToExecutorCallback Called when the request is starting to be handled, or with an error if it was rejected
+     * @param muCtx The request context
+     * @param headers The request headers
+     * @param maxBufferedBytes The number of unconsumed body bytes of this request at which reading is paused
+     * @param resumeReading If not null, called when reading from the connection was paused because
+     *                      {@link #passDataToHandler(ByteBuf, AsyncContext, DoneCallback)} returned false, and the
+     *                      handler has since consumed enough data.
+     */
+    void onHeaders(DoneCallback addedToExecutorCallback, AsyncContext muCtx, Headers headers, long maxBufferedBytes, Runnable resumeReading) {
 
         NettyRequestAdapter request = (NettyRequestAdapter) muCtx.request;
         if (headers.hasBody()) {
             // There will be a request body, so set the streams
-            GrowableByteBufferInputStream requestBodyStream = new GrowableByteBufferInputStream(settings.requestReadTimeoutMillis, settings.maxRequestSize);
+            GrowableByteBufferInputStream requestBodyStream = new GrowableByteBufferInputStream(settings.requestReadTimeoutMillis,
+                settings.maxRequestSize, maxBufferedBytes, requestBodyBudget, resumeReading);
             request.inputStream(requestBodyStream);
             muCtx.requestBody = requestBodyStream;
         }
         request.nettyAsyncContext = muCtx;
-        try {
-            executor.execute(() -> {
+        request.handlerExecutor = executor;
 
-
-                boolean error = false;
-                MuResponse response = muCtx.response;
+        if (nonBlockingHandlerCount > 0) {
+            // Run the leading non-blocking handlers on this I/O thread, and only hand off if none of them handle it.
+            // The callback is only called once the request is either handled here or dispatched to the executor, as
+            // a rejection by the executor must be the only call it gets.
+            boolean handled;
+            EventLoopGuard.enter();
+            try {
+                handled = runHandlers(muCtx, 0, nonBlockingHandlerCount);
+            } finally {
+                EventLoopGuard.exit();
+            }
+            if (handled) {
                 try {
                     addedToExecutorCallback.onComplete(null);
+                } catch (Exception e) {
+                    log.info("Error while starting request", e);
+                }
+                return;
+            }
+        }
 
-                    boolean handled = false;
-                    for (MuHandler muHandler : muHandlers) {
-                        handled = muHandler.handle(muCtx.request, response);
-                        if (handled) {
-                            break;
-                        }
-                        if (request.isAsync()) {
-                            throw new IllegalStateException(muHandler.getClass() + " returned false however this is not allowed after starting to handle a request asynchronously.");
-                        }
-                    }
-                    if (!handled) {
-                        throw new NotFoundException();
-                    }
-
+        long queuedAt = System.nanoTime();
+        stats.onRequestQueued();
+        try {
+            executor.execute(() -> {
 
-                } catch (Throwable ex) {
-                    error = dealWithUnhandledException(request, response, ex);
-                } finally {
-                    request.clean();
-                    if (error || !request.isAsync()) {
+                long waitNanos = System.nanoTime() - queuedAt;
+                stats.onRequestDequeued(waitNanos);
+                if (settings.handlerQueueTimeoutMillis > 0 && waitNanos > TimeUnit.MILLISECONDS.toNanos(settings.handlerQueueTimeoutMillis)) {
+                    // The client has waited too long already, so shed the request rather than adding to the backlog
+                    RejectedExecutionException timeout = new RejectedExecutionException("Request waited " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + "ms for a handler thread");
+                    request.eventLoop().execute(() -> {
                         try {
-                            muCtx.complete(error);
-                        } catch (Throwable e) {
-                            log.info("Error while completing request", e);
-                        }
-                    }
+                            addedToExecutorCallback.onComplete(timeout);
+                        } catch (Exception ignored) { }
+                    });
+                    return;
                 }
+
+                try {
+                    addedToExecutorCallback.onComplete(null);
+                } catch (Exception e) {
+                    log.info("Error while starting request", e);
+                }
+                runHandlers(muCtx, nonBlockingHandlerCount, muHandlers.size());
             });
         } catch (Exception e) {
+            stats.onRequestDequeued(0);
             try {
                 addedToExecutorCallback.onComplete(e);
             } catch (Exception ignored) { }
@@ -116,8 +161,52 @@ class NettyHandlerAdapter {
     }
 
 
+    /**
+     * Runs the handlers in the given range until one handles the request.
+     * @return true if the request was handled (or failed); false if the range did not include the last handler and
+     * no handler in it handled the request.
+     */
+    private boolean runHandlers(AsyncContext muCtx, int from, int to) {
+        NettyRequestAdapter request = (NettyRequestAdapter) muCtx.request;
+        MuResponse response = muCtx.response;
+        boolean error = false;
+        boolean handled = false;
+        try {
+            for (int i = from; i < to; i++) {
+                MuHandler muHandler = muHandlers.get(i);
+                handled = muHandler.handle(request, response);
+                if (handled) {
+                    break;
+                }
+                if (request.isAsync()) {
+                    throw new IllegalStateException(muHandler.getClass() + " returned false however this is not allowed after starting to handle a request asynchronously.");
+                }
+            }
+            if (!handled && to == muHandlers.size()) {
+                throw new NotFoundException();
+            }
+        } catch (Throwable ex) {
+            handled = true;
+            error = dealWithUnhandledException(request, response, ex);
+        } finally {
+            if (handled) {
+                request.clean();
+                if (error || !request.isAsync()) {
+                    try {
+                        muCtx.complete(error);
+                    } catch (Throwable e) {
+                        log.info("Error while completing request", e);
+                    }
+                }
+            }
+        }
+        return handled;
+    }
+
     static boolean dealWithUnhandledException(MuRequest request, MuResponse response, Throwable ex) {
         boolean forceDisconnect = response instanceof Http1Response;
+        // anything held back to send with a content length is only part of the response, so an error is sent instead
+        ((NettyResponseAdaptor) response).discardHeldOutput();
 
         if (response.hasStartedSendingData()) {
             if (((NettyResponseAdaptor)response).clientDisconnected()) {
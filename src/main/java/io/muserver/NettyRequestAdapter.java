@@ -7,12 +7,9 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoop;
 import io.netty.handler.codec.http.*;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
-import io.netty.handler.codec.http.multipart.Attribute;
-import io.netty.handler.codec.http.multipart.FileUpload;
-import io.netty.handler.codec.http.multipart.HttpPostMultipartRequestDecoder;
-import io.netty.handler.codec.http.multipart.InterfaceHttpData;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
 import io.netty.handler.timeout.IdleStateHandler;
@@ -26,8 +23,10 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -48,6 +47,7 @@ class NettyRequestAdapter implements MuRequest {
     private final Method method;
     private final Headers headers;
     AsyncContext nettyAsyncContext;
+    Executor handlerExecutor;
     private GrowableByteBufferInputStream inputStream;
     private final RequestParameters query;
     private RequestParameters form;
@@ -55,20 +55,22 @@ class NettyRequestAdapter implements MuRequest {
     private Set<Cookie> cookies;
     private String contextPath = "";
     private String relativePath;
-    private HttpPostMultipartRequestDecoder multipartRequestDecoder;
+    private volatile MultipartFormParser multipartParser;
     private HashMap<String, List<UploadedFile>> uploads;
     private Map<String, Object> attributes;
     private volatile AsyncHandleImpl asyncHandle;
     private final boolean keepalive;
     private final String protocol;
+    private final ServerSettings settings;
 
-    NettyRequestAdapter(ChannelHandlerContext ctx, Channel channel, HttpRequest request, Headers headers, AtomicReference<MuServer> serverRef, Method method, String proto, String uri, boolean keepalive, String host, String protocol) {
+    NettyRequestAdapter(ChannelHandlerContext ctx, Channel channel, HttpRequest request, Headers headers, AtomicReference<MuServer> serverRef, Method method, String proto, String uri, boolean keepalive, String host, String protocol, ServerSettings settings) {
         this.ctx = ctx;
         this.channel = channel;
         this.request = request;
         this.serverRef = serverRef;
         this.keepalive = keepalive;
         this.protocol = protocol;
+        this.settings = settings;
         this.serverUri = URI.create(proto + "://" + host + uri).normalize();
         this.headers = headers;
         this.uri = getUri(headers, proto, host, uri, serverUri);
@@ -77,6 +79,18 @@ class NettyRequestAdapter implements MuRequest {
         this.method = method;
     }
 
+    EventLoop eventLoop() {
+        return channel.eventLoop();
+    }
+
+    Channel channel() {
+        return channel;
+    }
+
+    ServerSettings settings() {
+        return settings;
+    }
+
     public boolean isAsync() {
         return asyncHandle != null;
     }
@@ -314,7 +328,23 @@ class NettyRequestAdapter implements MuRequest {
     private void ensureFormDataLoaded() throws IOException {
         if (form == null) {
             if (contentType().startsWith("multipart/")) {
-                multipartRequestDecoder = new HttpPostMultipartRequestDecoder(request);
+                uploads = new HashMap<>();
+                QueryStringEncoder qse = new QueryStringEncoder("/");
+                List<Throwable> errors = new ArrayList<>(1);
+                // this thread is allowed to block, so the parsing is done here rather than on the handler executor
+                MultipartFormParser parser = newMultipartParser(Runnable::run, new MultipartListener() {
+                    public void onFormField(String name, String value) {
+                        qse.addParam(name, value);
+                    }
+                    public void onFile(String name, UploadedFile file) {
+                        addFile(name, file);
+                    }
+                    public void onComplete() {
+                    }
+                    public void onError(Throwable t) {
+                        errors.add(t);
+                    }
+                });
                 if (inputStream != null) {
                     claimingBodyRead();
 
@@ -322,32 +352,17 @@ class NettyRequestAdapter implements MuRequest {
                     int read;
                     while ((read = inputStream.read(buffer)) > -1) {
                         if (read > 0) {
-                            ByteBuf content = Unpooled.copiedBuffer(buffer, 0, read);
-                            multipartRequestDecoder.offer(new DefaultHttpContent(content));
+                            try {
+                                parser.offer(Unpooled.wrappedBuffer(buffer, 0, read));
+                            } catch (Exception e) {
+                                throw new IOException("Error while parsing multipart body of " + this, e);
+                            }
                         }
                     }
                 }
-                multipartRequestDecoder.offer(new DefaultLastHttpContent());
-                uploads = new HashMap<>();
-
-                List<InterfaceHttpData> bodyHttpDatas = multipartRequestDecoder.getBodyHttpDatas();
-                QueryStringEncoder qse = new QueryStringEncoder("/");
-
-                for (InterfaceHttpData bodyHttpData : bodyHttpDatas) {
-                    if (bodyHttpData instanceof FileUpload) {
-                        FileUpload fileUpload = (FileUpload) bodyHttpData;
-                        if (fileUpload.length() == 0 && Mutils.nullOrEmpty(fileUpload.getFilename())) {
-                            // nothing uploaded
-                        } else {
-                            UploadedFile uploadedFile = new MuUploadedFile(fileUpload);
-                            addFile(fileUpload.getName(), uploadedFile);
-                        }
-                    } else if (bodyHttpData instanceof Attribute) {
-                        Attribute a = (Attribute) bodyHttpData;
-                        qse.addParam(a.getName(), a.getValue());
-                    } else {
-                        log.warn("Unrecognised body part: " + bodyHttpData.getClass() + " from " + this + " - this may mean some of the request data is lost.");
-                    }
+                parser.finish();
+                if (!errors.isEmpty()) {
+                    throw new IOException("Error while parsing multipart body of " + this, errors.get(0));
                 }
                 form = new NettyRequestParameters(new QueryStringDecoder(qse.toString(), UTF_8, true, 1000000));
             } else {
@@ -357,6 +372,12 @@ class NettyRequestAdapter implements MuRequest {
         }
     }
 
+    private MultipartFormParser newMultipartParser(Executor executor, MultipartListener listener) {
+        MultipartFormParser parser = new MultipartFormParser(request, settings.uploadMemoryThreshold, listener, toString(), executor);
+        multipartParser = parser;
+        return parser;
+    }
+
     void inputStream(GrowableByteBufferInputStream stream) {
         this.inputStream = stream;
     }
@@ -388,11 +409,17 @@ class NettyRequestAdapter implements MuRequest {
 
     void clean() {
         state(null);
-        if (multipartRequestDecoder != null) {
-            // need to clear the datas before destorying. See https://github.com/netty/netty/issues/7814#issuecomment-397855311
-            multipartRequestDecoder.getBodyHttpDatas().clear();
-            multipartRequestDecoder.destroy();
-            multipartRequestDecoder = null;
+    }
+
+    /**
+     * Deletes any uploaded files that were not saved elsewhere. Called once the request is complete, as async
+     * handlers may still be using the uploads after the handler method has returned.
+     */
+    void releaseUploads() {
+        MultipartFormParser parser = multipartParser;
+        if (parser != null) {
+            multipartParser = null;
+            parser.destroy();
         }
     }
 
@@ -460,6 +487,34 @@ class NettyRequestAdapter implements MuRequest {
             }
         }
 
+        @Override
+        public void setMultipartListener(MultipartListener listener) {
+            Mutils.notNull("listener", listener);
+            String contentType = request.contentType();
+            if (contentType == null || !contentType.startsWith("multipart/")) {
+                throw new IllegalStateException("The request body of " + request + " is not multipart: " + contentType);
+            }
+            // the data arrives on an I/O thread, and large parts are written to disk, so parse on the handler executor
+            setReadListener(request.newMultipartParser(request.handlerExecutor, listener));
+        }
+
+        @Override
+        public void subscribeToRequestBody(RequestBodySubscriber subscriber) {
+            Mutils.notNull("subscriber", subscriber);
+            request.claimingBodyRead();
+            if (request.inputStream == null) {
+                subscriber.onSubscribe(new RequestBodySubscription() {
+                    public void request(long n) {
+                    }
+                    public void cancel() {
+                    }
+                });
+                subscriber.onComplete();
+            } else {
+                request.inputStream.subscribe(subscriber);
+            }
+        }
+
         @Override
         public void complete() {
             request.nettyAsyncContext.complete(false);
@@ -477,7 +532,22 @@ class NettyRequestAdapter implements MuRequest {
 
         @Override
         public void write(ByteBuffer data, DoneCallback callback) {
-            ChannelFuture writeFuture = (ChannelFuture) write(data);
+            callWhenDone((ChannelFuture) write(data), callback);
+        }
+
+        @Override
+        public void writeFile(FileChannel file, long position, long length, DoneCallback callback) {
+            NettyResponseAdaptor response = (NettyResponseAdaptor) request.nettyAsyncContext.response;
+            ChannelFuture writeFuture;
+            try {
+                writeFuture = response.writeFile(file, position, length);
+            } catch (Throwable e) {
+                writeFuture = request.channel.newFailedFuture(e);
+            }
+            callWhenDone(writeFuture, callback);
+        }
+
+        private void callWhenDone(ChannelFuture writeFuture, DoneCallback callback) {
             writeFuture.addListener(future -> {
                 try {
                     if (future.isSuccess()) {
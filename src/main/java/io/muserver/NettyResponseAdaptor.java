@@ -2,22 +2,27 @@ package io.muserver;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.cookie.ServerCookieEncoder;
 
 import javax.ws.rs.core.MediaType;
-import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
 import java.util.concurrent.Future;
 
@@ -36,7 +41,7 @@ abstract class NettyResponseAdaptor implements MuResponse {
     protected long declaredLength = -1;
 
     protected enum OutputState {
-        NOTHING, FULL_SENT, STREAMING, STREAMING_COMPLETE, FINISHED, DISCONNECTED, WEBSOCKET
+        NOTHING, HOLDING, FULL_SENT, STREAMING, STREAMING_COMPLETE, FINISHED, DISCONNECTED, WEBSOCKET
     }
 
     void setWebsocket() {
@@ -94,10 +99,12 @@ abstract class NettyResponseAdaptor implements MuResponse {
     }
 
     public Future<Void> writeAsync(String text) {
+        sendBufferedOutput();
         return write(textToBuffer(text), false);
     }
 
     ChannelFuture write(ByteBuffer data) {
+        sendBufferedOutput();
         if (outputState == OutputState.NOTHING) {
             startStreaming();
         }
@@ -105,11 +112,29 @@ abstract class NettyResponseAdaptor implements MuResponse {
     }
 
     protected final ChannelFuture write(ByteBuf data, boolean sync) {
+        if (sync) {
+            EventLoopGuard.checkBlockingAllowed("Writing to the response stream");
+        }
         throwIfFinished();
-        int size = data.writerIndex();
+        boolean isLast = addBytesStreamed(data.writerIndex());
+        ChannelFuture lastAction;
+
+        ByteBuf content = Unpooled.wrappedBuffer(data);
+        lastAction = writeToChannel(isLast, content);
+        if (sync) {
+            // force exception if writes fail
+            lastAction = lastAction.syncUninterruptibly();
+        }
+        this.lastAction = lastAction;
+        return lastAction;
+    }
 
+    /**
+     * Records that bytes are about to be sent.
+     * @return <code>true</code> if this is the last of the declared content length
+     */
+    private boolean addBytesStreamed(long size) {
         bytesStreamed += size;
-        ChannelFuture lastAction;
         boolean isLast = bytesStreamed == declaredLength;
 
         if (declaredLength > -1 && bytesStreamed > declaredLength) {
@@ -120,23 +145,47 @@ abstract class NettyResponseAdaptor implements MuResponse {
         if (isLast) {
             outputState = OutputState.FULL_SENT;
         }
+        return isLast;
+    }
 
-        ByteBuf content = Unpooled.wrappedBuffer(data);
-        lastAction = writeToChannel(isLast, content);
-        if (sync) {
-            // force exception if writes fail
-            lastAction = lastAction.syncUninterruptibly();
+    /**
+     * Writes part of a file to the response without waiting for it to be sent.
+     * @param file The file, which must stay open until the returned future completes
+     * @param position The position in the file to start from
+     * @param length The number of bytes to send
+     * @return A future that completes when the data has been written, or failed
+     */
+    ChannelFuture writeFile(FileChannel file, long position, long length) {
+        sendBufferedOutput();
+        if (outputState == OutputState.NOTHING) {
+            startStreaming();
         }
+        throwIfFinished();
+        boolean isLast = addBytesStreamed(length);
+        ChannelFuture lastAction = writeFileToChannel(isLast, file, position, length);
         this.lastAction = lastAction;
         return lastAction;
     }
 
+    /**
+     * Sends the file by reading it into pooled buffers that are sent with {@link #writeToChannel(boolean, ByteBuf)}.
+     * Implementations may override this when the file can be sent more efficiently.
+     */
+    ChannelFuture writeFileToChannel(boolean isLast, FileChannel file, long position, long length) {
+        Channel channel = request.channel();
+        ChannelPromise promise = channel.newPromise();
+        new FileChunkWriter(this, channel.alloc(), file, position, length, isLast, promise).writeNext();
+        return promise;
+    }
+
     protected abstract void onContentLengthMismatch();
 
     abstract ChannelFuture writeToChannel(boolean isLast, ByteBuf content);
 
     public void sendChunk(String text) {
+        EventLoopGuard.checkBlockingAllowed("MuResponse.sendChunk");
         throwIfFinished();
+        sendBufferedOutput();
         if (outputState == OutputState.NOTHING) {
             startStreaming();
         }
@@ -175,14 +224,92 @@ abstract class NettyResponseAdaptor implements MuResponse {
 
     public OutputStream outputStream() {
         if (this.outputStream == null) {
-            startStreaming();
-            this.outputStream = new BufferedOutputStream(new ChunkedHttpOutputStream(this), 4096);
+            EventLoopGuard.checkBlockingAllowed("MuResponse.outputStream");
+            int threshold = isHead || headers.contains(HeaderNames.CONTENT_LENGTH) ? 0 : request.settings().fixedLengthResponseThreshold;
+            if (threshold > 0) {
+                if (outputState != OutputState.NOTHING) {
+                    throw new IllegalStateException("Cannot start streaming when state is " + outputState);
+                }
+                outputState = OutputState.HOLDING;
+            } else {
+                startStreaming();
+            }
+            Channel channel = request.channel();
+            this.outputStream = new ChunkedHttpOutputStream(this, channel.alloc(), channel.config().getWriteBufferHighWaterMark(), threshold);
         }
         return this.outputStream;
     }
 
+    /**
+     * Called by the output stream when more data has been written than can be held.
+     */
+    void stopHoldingOutput() {
+        if (outputState == OutputState.HOLDING) {
+            outputState = OutputState.NOTHING;
+            startStreaming();
+        }
+    }
+
+    /**
+     * Called by the output stream when it is closed before the threshold was reached, so the whole body is known.
+     */
+    void sendHeldOutput(ByteBuf body) {
+        if (outputState != OutputState.HOLDING) {
+            body.release();
+            throw new IllegalStateException("Cannot send held output when state is " + outputState);
+        }
+        outputState = OutputState.FULL_SENT;
+        headers.set(HeaderNames.CONTENT_LENGTH, body.readableBytes());
+        writeFullResponse(body);
+    }
+
+    /**
+     * Throws away anything held by the output stream, so that a different response can be sent instead. This is used
+     * when the handler fails, as the held data is then only part of a response.
+     */
+    void discardHeldOutput() {
+        if (outputState == OutputState.HOLDING) {
+            ((ChunkedHttpOutputStream) outputStream).discard();
+            outputStream = null;
+            writer = null;
+            outputState = OutputState.NOTHING;
+        }
+    }
+
+    /**
+     * Sends any data buffered or held by the output stream so that data written some other way is sent after it.
+     */
+    private void sendBufferedOutput() {
+        if (outputStream != null && (outputState == OutputState.HOLDING || outputState == OutputState.STREAMING)) {
+            ((ChunkedHttpOutputStream) outputStream).sendBuffered();
+        }
+    }
+
+    @Override
+    public void sendFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            sendFile(channel, 0, channel.size());
+        }
+    }
+
+    @Override
+    public void sendFile(FileChannel file, long position, long length) throws IOException {
+        EventLoopGuard.checkBlockingAllowed("MuResponse.sendFile");
+        if (outputState == OutputState.NOTHING && !headers.contains(HeaderNames.CONTENT_LENGTH)) {
+            headers.set(HeaderNames.CONTENT_LENGTH, length);
+        }
+        if (isHead) {
+            return;
+        }
+        ChannelFuture future = writeFile(file, position, length).awaitUninterruptibly();
+        if (!future.isSuccess()) {
+            throw new IOException("Error while sending file to " + request, future.cause());
+        }
+    }
+
     public PrintWriter writer() {
         if (this.writer == null) {
+            EventLoopGuard.checkBlockingAllowed("MuResponse.writer");
             OutputStreamWriter os = new OutputStreamWriter(outputStream(), StandardCharsets.UTF_8);
             this.writer = new PrintWriter(os);
         }
@@ -191,7 +318,7 @@ abstract class NettyResponseAdaptor implements MuResponse {
 
     @Override
     public boolean hasStartedSendingData() {
-        return outputState != OutputState.NOTHING;
+        return outputState != OutputState.NOTHING && outputState != OutputState.HOLDING;
     }
 
     boolean clientDisconnected() {
@@ -204,10 +331,23 @@ abstract class NettyResponseAdaptor implements MuResponse {
         }
         boolean shouldDisconnect = forceDisconnect || !request.isKeepAliveRequested();
         boolean isFixedLength = headers.contains(HeaderNames.CONTENT_LENGTH);
-        if (outputState == OutputState.NOTHING) {
+        if (outputState == OutputState.DISCONNECTED || (forceDisconnect && outputState == OutputState.HOLDING)) {
+            // the held data is not a whole response, so nothing is sent and the connection is closed
+            if (outputStream instanceof ChunkedHttpOutputStream) {
+                ((ChunkedHttpOutputStream) outputStream).discard();
+            }
+        } else if (outputState == OutputState.NOTHING) {
             boolean addContentLengthHeader = ((!isHead || !isFixedLength) && status != 204 && status != 205 && status != 304);
             sendEmptyResponse(addContentLengthHeader);
-        } else if (outputState == OutputState.STREAMING) {
+        } else if (outputState == OutputState.HOLDING) {
+            // closing the stream sends everything as one response, unless it fails
+            Mutils.closeSilently(writer);
+            Mutils.closeSilently(outputStream);
+            if (outputState == OutputState.HOLDING) {
+                shouldDisconnect = true;
+            }
+        }
+        if (outputState == OutputState.STREAMING) {
 
             if (!isHead) {
                 Mutils.closeSilently(writer);
@@ -0,0 +1,143 @@
+package io.muserver;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+
+/**
+ * Tuning settings for the event loops, buffers and socket options used by a server. The settings in use
+ * can be found with {@link MuServer#networkConfig()}.
+ * @see NetworkConfigBuilder
+ */
+public class NetworkConfig {
+    final int workerThreads;
+    final int acceptBacklog;
+    final boolean tcpNoDelay;
+    final int receiveBufferSize;
+    final int sendBufferSize;
+    final int writeBufferLowWaterMark;
+    final int writeBufferHighWaterMark;
+    final AllocatorType allocator;
+
+    NetworkConfig(int workerThreads, int acceptBacklog, boolean tcpNoDelay, int receiveBufferSize, int sendBufferSize, int writeBufferLowWaterMark, int writeBufferHighWaterMark, AllocatorType allocator) {
+        this.workerThreads = workerThreads;
+        this.acceptBacklog = acceptBacklog;
+        this.tcpNoDelay = tcpNoDelay;
+        this.receiveBufferSize = receiveBufferSize;
+        this.sendBufferSize = sendBufferSize;
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+        this.allocator = allocator;
+    }
+
+    /**
+     * @return The number of event loop threads, or 0 if the default is used.
+     */
+    public int workerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * @return The size of the accept queue, or 0 if the operating system default is used.
+     */
+    public int acceptBacklog() {
+        return acceptBacklog;
+    }
+
+    /**
+     * @return The value of <code>TCP_NODELAY</code> on connections.
+     */
+    public boolean tcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * @return The <code>SO_RCVBUF</code> size in bytes, or 0 if the operating system default is used.
+     */
+    public int receiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * @return The <code>SO_SNDBUF</code> size in bytes, or 0 if the operating system default is used.
+     */
+    public int sendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * @return The number of waiting bytes a connection must fall below to become writable again.
+     */
+    public int writeBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    /**
+     * @return The number of waiting bytes that makes a connection unwritable.
+     */
+    public int writeBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    /**
+     * @return The type of buffer allocator used.
+     */
+    public AllocatorType allocator() {
+        return allocator;
+    }
+
+    ByteBufAllocator nettyAllocator() {
+        switch (allocator) {
+            case POOLED_HEAP:
+                return Allocators.POOLED_HEAP;
+            case UNPOOLED_HEAP:
+                return Allocators.UNPOOLED_HEAP;
+            default:
+                return PooledByteBufAllocator.DEFAULT;
+        }
+    }
+
+    void applyTo(ServerBootstrap bootstrap) {
+        ByteBufAllocator alloc = nettyAllocator();
+        bootstrap.option(ChannelOption.ALLOCATOR, alloc)
+            .childOption(ChannelOption.ALLOCATOR, alloc)
+            .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay)
+            .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark));
+        if (acceptBacklog > 0) {
+            bootstrap.option(ChannelOption.SO_BACKLOG, acceptBacklog);
+        }
+        if (receiveBufferSize > 0) {
+            // Set on the listening socket too so that the TCP window scale is negotiated for the larger size
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize)
+                .childOption(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (sendBufferSize > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkConfig{" +
+            "workerThreads=" + workerThreads +
+            ", acceptBacklog=" + acceptBacklog +
+            ", tcpNoDelay=" + tcpNoDelay +
+            ", receiveBufferSize=" + receiveBufferSize +
+            ", sendBufferSize=" + sendBufferSize +
+            ", writeBufferLowWaterMark=" + writeBufferLowWaterMark +
+            ", writeBufferHighWaterMark=" + writeBufferHighWaterMark +
+            ", allocator=" + allocator +
+            '}';
+    }
+
+    /**
+     * Allocators are shared between servers, as each pooled allocator holds its own memory arenas.
+     */
+    private static class Allocators {
+        static final ByteBufAllocator POOLED_HEAP = new PooledByteBufAllocator(false);
+        static final ByteBufAllocator UNPOOLED_HEAP = new UnpooledByteBufAllocator(false);
+    }
+}
@@ -0,0 +1,134 @@
+package io.muserver;
+
+/**
+ * <p>Configuration builder for tuning the event loops, buffers and socket options used by a server. Pass the
+ * config to {@link MuServerBuilder#withNetworkConfig(NetworkConfigBuilder)}.</p>
+ * <p>All values have sensible defaults, so it is recommended to only change values based on measurements
+ * of your own workload.</p>
+ */
+public class NetworkConfigBuilder {
+
+    private int workerThreads = 0;
+    private int acceptBacklog = 0;
+    private boolean tcpNoDelay = true;
+    private int receiveBufferSize = 0;
+    private int sendBufferSize = 0;
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+    private AllocatorType allocator = AllocatorType.POOLED_DIRECT;
+
+    /**
+     * The number of event loop threads that read and write data on connections.
+     * @param threads The number of threads, or 0 to use the default which is twice the number of CPU cores.
+     * @return This builder
+     */
+    public NetworkConfigBuilder withWorkerThreads(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("The number of worker threads must be 0 or greater");
+        }
+        this.workerThreads = threads;
+        return this;
+    }
+
+    /**
+     * The maximum number of connections that the operating system queues while waiting for them to be accepted.
+     * @param backlog The size of the accept queue, or 0 to use the operating system default.
+     * @return This builder
+     */
+    public NetworkConfigBuilder withAcceptBacklog(int backlog) {
+        if (backlog < 0) {
+            throw new IllegalArgumentException("The backlog must be 0 or greater");
+        }
+        this.acceptBacklog = backlog;
+        return this;
+    }
+
+    /**
+     * Sets the <code>TCP_NODELAY</code> option on connections. The default is <code>true</code>, which disables
+     * Nagle's algorithm so that small responses are sent without delay.
+     * @param tcpNoDelay <code>true</code> to send data immediately; <code>false</code> to allow the operating
+     *                   system to combine small writes.
+     * @return This builder
+     */
+    public NetworkConfigBuilder withTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * Sets the <code>SO_RCVBUF</code> size of connections. Larger values can increase upload throughput on
+     * high-latency networks at the expense of memory per connection.
+     * @param bytes The size in bytes, or 0 to use the operating system default.
+     * @return This builder
+     */
+    public NetworkConfigBuilder withReceiveBufferSize(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The receive buffer size must be 0 or greater");
+        }
+        this.receiveBufferSize = bytes;
+        return this;
+    }
+
+    /**
+     * Sets the <code>SO_SNDBUF</code> size of connections. Larger values can increase download throughput on
+     * high-latency networks at the expense of memory per connection.
+     * @param bytes The size in bytes, or 0 to use the operating system default.
+     * @return This builder
+     */
+    public NetworkConfigBuilder withSendBufferSize(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The send buffer size must be 0 or greater");
+        }
+        this.sendBufferSize = bytes;
+        return this;
+    }
+
+    /**
+     * <p>Sets the thresholds of data waiting to be written to a connection. When more than the high water mark
+     * is waiting, the connection becomes unwritable until the amount falls below the low water mark.</p>
+     * <p>The defaults are 32KB and 64KB.</p>
+     * @param low The low water mark in bytes.
+     * @param high The high water mark in bytes, which must not be less than the low water mark.
+     * @return This builder
+     */
+    public NetworkConfigBuilder withWriteBufferWaterMark(int low, int high) {
+        if (low < 0) {
+            throw new IllegalArgumentException("The low water mark must be 0 or greater");
+        }
+        if (high < low) {
+            throw new IllegalArgumentException("The high water mark must not be less than the low water mark");
+        }
+        this.writeBufferLowWaterMark = low;
+        this.writeBufferHighWaterMark = high;
+        return this;
+    }
+
+    /**
+     * Sets the type of buffer allocator used for reading and writing. The default is {@link AllocatorType#POOLED_DIRECT}.
+     * @param allocator The allocator type to use.
+     * @return This builder
+     */
+    public NetworkConfigBuilder withAllocator(AllocatorType allocator) {
+        Mutils.notNull("allocator", allocator);
+        this.allocator = allocator;
+        return this;
+    }
+
+    /**
+     * Creates the network settings object
+     * @return A new NetworkConfig object
+     */
+    public NetworkConfig build() {
+        return new NetworkConfig(workerThreads, acceptBacklog, tcpNoDelay, receiveBufferSize, sendBufferSize,
+            writeBufferLowWaterMark, writeBufferHighWaterMark, allocator);
+    }
+
+    /**
+     * Creates a new config builder with default values
+     * @return A new builder
+     */
+    public static NetworkConfigBuilder networkConfig() {
+        return new NetworkConfigBuilder();
+    }
+
+}
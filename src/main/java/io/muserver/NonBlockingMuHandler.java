@@ -0,0 +1,17 @@
+package io.muserver;
+
+/**
+ * <p>A {@link MuHandler} that never blocks, and so can be run directly on the I/O thread that read the request
+ * rather than being handed to the handler executor. This removes a thread hand-off from each request, which
+ * can be most of the latency for small responses such as health checks.</p>
+ * <p>Non-blocking handlers are only run on the I/O thread when they are added before any other handlers (either
+ * with {@link MuServerBuilder#addHandler(MuHandler)} or {@link MuServerBuilder#addNonBlockingHandler(Method, String, RouteHandler)}).
+ * If none of them handle the request, the rest of the handlers are run on the handler executor as usual.</p>
+ * <p>Implementations may write a full response with {@link MuResponse#write(String)} or {@link MuResponse#redirect(String)},
+ * or may call {@link MuRequest#handleAsync()} and use the asynchronous read and write methods on {@link AsyncHandle}.
+ * Reading the request body with blocking methods (such as {@link MuRequest#readBodyAsString()} or form parameters), or
+ * writing with {@link MuResponse#sendChunk(String)}, {@link MuResponse#outputStream()} or {@link MuResponse#writer()}
+ * throws an {@link IllegalStateException}, as blocking the I/O thread would stall every connection that it serves.</p>
+ */
+public interface NonBlockingMuHandler extends MuHandler {
+}
@@ -0,0 +1,74 @@
+package io.muserver;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A server-wide limit on the number of request body bytes held in memory waiting for handlers to read them. When the
+ * limit is reached, connections that receive more data stop reading and register to be resumed once enough of the
+ * buffered data, on any connection, has been consumed.
+ */
+class RequestBodyBudget {
+
+    private final long maxBytes;
+    private final AtomicLong inUse = new AtomicLong(0);
+    private final AtomicLong pauses = new AtomicLong(0);
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param maxBytes The number of buffered bytes at which reading pauses, or {@link Long#MAX_VALUE} for no limit
+     */
+    RequestBodyBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Records that bytes are being held.
+     * @param bytes The number of bytes
+     * @return <code>true</code> if there is still room for more; <code>false</code> if the caller should pause reading
+     * and call {@link #waitForSpace(Runnable)}.
+     */
+    boolean acquire(long bytes) {
+        return inUse.addAndGet(bytes) < maxBytes;
+    }
+
+    /**
+     * Records that bytes are no longer held, and resumes any paused readers if there is now room.
+     * @param bytes The number of bytes
+     */
+    void release(long bytes) {
+        if (inUse.addAndGet(-bytes) < maxBytes) {
+            Runnable toResume;
+            while (hasSpace() && (toResume = waiting.poll()) != null) {
+                toResume.run();
+            }
+        }
+    }
+
+    boolean hasSpace() {
+        return inUse.get() < maxBytes;
+    }
+
+    /**
+     * Registers a reader that has paused because the budget was used up. It will be run when there is space, which
+     * may be immediately if other data was consumed in the meantime.
+     * @param resume Called (once) when there is space again
+     */
+    void waitForSpace(Runnable resume) {
+        pauses.incrementAndGet();
+        waiting.add(resume);
+        if (hasSpace() && waiting.remove(resume)) {
+            // space was freed before the reader was queued, so nobody else would wake it up
+            resume.run();
+        }
+    }
+
+    long inUse() {
+        return inUse.get();
+    }
+
+    long pauses() {
+        return pauses.get();
+    }
+}
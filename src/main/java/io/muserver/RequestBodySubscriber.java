@@ -0,0 +1,46 @@
+package io.muserver;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Receives the request body as a stream of buffers, with the subscriber controlling how much data it is given.</p>
+ * <p>This follows the same rules as a reactive streams (or <code>java.util.concurrent.Flow</code>) subscriber: no data
+ * is passed to {@link #onNext(ByteBuffer)} until it is asked for with {@link RequestBodySubscription#request(long)},
+ * and the methods are never called concurrently. Because data is only read from the connection as it is requested,
+ * a slow subscriber slows down the client rather than causing the server to buffer the upload in memory.</p>
+ * <p>The methods may be called on any thread: on the I/O thread when data arrives from the client, on a thread that
+ * calls {@link RequestBodySubscription#request(long)} or {@link RequestBodySubscription#cancel()} (which may be the
+ * handler thread or a callback thread), or on the thread that completes the request. As one of these is usually an
+ * I/O thread, the methods should not block, and a subscriber that needs a particular thread should hand off to it.</p>
+ * <p>On Java 9 or later, a <code>Flow.Subscriber&lt;ByteBuffer&gt;</code> can be adapted by forwarding each of these
+ * methods to it, wrapping the subscription in a <code>Flow.Subscription</code>.</p>
+ * @see AsyncHandle#subscribeToRequestBody(RequestBodySubscriber)
+ */
+public interface RequestBodySubscriber {
+
+    /**
+     * Called once before any other method.
+     * @param subscription Used to ask for data, or to cancel the subscription.
+     */
+    void onSubscribe(RequestBodySubscription subscription);
+
+    /**
+     * <p>Called with the next part of the request body, once for each buffer requested.</p>
+     * <p>The buffer belongs to the subscriber. This should not block, as it may be called on an I/O thread.</p>
+     * @param buffer A buffer holding some of the request body
+     */
+    void onNext(ByteBuffer buffer);
+
+    /**
+     * Called if there is an error reading the body, for example if the client disconnects. No more methods are called
+     * after this.
+     * @param t The error.
+     */
+    void onError(Throwable t);
+
+    /**
+     * Called when the whole request body has been passed to {@link #onNext(ByteBuffer)}. No more methods are called
+     * after this.
+     */
+    void onComplete();
+}
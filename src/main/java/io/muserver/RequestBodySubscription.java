@@ -0,0 +1,20 @@
+package io.muserver;
+
+/**
+ * A subscription to the request body, given to {@link RequestBodySubscriber#onSubscribe(RequestBodySubscription)}.
+ */
+public interface RequestBodySubscription {
+
+    /**
+     * Asks for up to <code>n</code> more buffers to be passed to {@link RequestBodySubscriber#onNext(java.nio.ByteBuffer)}.
+     * The total outstanding demand is capped at {@link Long#MAX_VALUE}, which can be used to ask for everything.
+     * @param n The number of buffers, which must be greater than 0.
+     */
+    void request(long n);
+
+    /**
+     * Stops receiving the request body. Any data not yet passed to the subscriber, and any more data the client
+     * sends, is dropped.
+     */
+    void cancel();
+}
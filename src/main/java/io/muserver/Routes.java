@@ -22,20 +22,53 @@ public class Routes {
      * @see MuServerBuilder#addHandler(Method, String, RouteHandler)
      */
 	public static MuHandler route(Method method, String uriTemplate, RouteHandler muHandler) {
-        UriPattern uriPattern = UriPattern.uriTemplateToRegex(uriTemplate);
+        return new Route(method, uriTemplate, muHandler);
+	}
+
+    /**
+     * Creates a new handler that will only be called if it matches the given route info, and which is run on
+     * the I/O thread. See {@link NonBlockingMuHandler} for the restrictions on what the route handler can do.
+     * @param method The method to match, or <code>null</code> to accept any method.
+     * @param uriTemplate A URL template, as described in {@link #route(Method, String, RouteHandler)}
+     * @param muHandler The non-blocking handler to invoke if the method and URI matches.
+     * @return Returns a {@link NonBlockingMuHandler} that is only called if the request URI and method matches.
+     * @see MuServerBuilder#addNonBlockingHandler(Method, String, RouteHandler)
+     */
+    public static NonBlockingMuHandler nonBlockingRoute(Method method, String uriTemplate, RouteHandler muHandler) {
+        MuHandler route = route(method, uriTemplate, muHandler);
+        return route::handle;
+    }
+
+	private Routes() {}
 
-        return (request, response) -> {
-			boolean methodMatches = method == null || method.equals(request.method());
-			if (methodMatches) {
+    /**
+     * A single route. Consecutive routes added to a server or context are compiled together into a
+     * {@link RoutingHandler} so that requests do not need to be matched against each route in turn.
+     */
+    static class Route implements MuHandler {
+        final Method method;
+        final String uriTemplate;
+        final RouteHandler handler;
+        final UriPattern uriPattern;
+
+        Route(Method method, String uriTemplate, RouteHandler handler) {
+            this.uriPattern = UriPattern.uriTemplateToRegex(uriTemplate);
+            this.method = method;
+            this.uriTemplate = uriTemplate;
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean handle(MuRequest request, MuResponse response) throws Exception {
+            boolean methodMatches = method == null || method.equals(request.method());
+            if (methodMatches) {
                 PathMatch matcher = uriPattern.matcher(request.relativePath());
                 if (matcher.fullyMatches()) {
-                    muHandler.handle(request, response, matcher.params());
+                    handler.handle(request, response, matcher.params());
                     return true;
                 }
-			}
-			return false;
-		};
-	}
-
-	private Routes() {}
+            }
+            return false;
+        }
+    }
 }
@@ -0,0 +1,292 @@
+package io.muserver;
+
+import io.muserver.rest.PathMatch;
+
+import javax.ws.rs.NotAllowedException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * <p>A handler that passes each request to the first of its routes that matches the request method and path. Create
+ * one with {@link RoutingHandlerBuilder#routingHandler()}.</p>
+ * <p>The URI templates of the routes are compiled into a tree where each literal path segment is an edge and each
+ * <code>{name}</code> segment is a capture, so finding the route for a request takes time proportional to the length
+ * of the path rather than to the number of routes. A template segment with a custom regular expression, such as
+ * <code>{id : [0-9]+}</code>, is only evaluated for requests that reach the point in the tree where that segment
+ * starts. The request is matched exactly as if each route had been added with {@link Routes#route(Method, String, RouteHandler)},
+ * in the order the routes were added.</p>
+ */
+public class RoutingHandler implements MuHandler {
+
+    private static final String[] NO_SEGMENTS = new String[0];
+
+    private final Node root = new Node();
+    private final boolean methodNotAllowedResponses;
+
+    RoutingHandler(List<Routes.Route> routes, boolean methodNotAllowedResponses) {
+        this.methodNotAllowedResponses = methodNotAllowedResponses;
+        for (int i = 0; i < routes.size(); i++) {
+            add(i, routes.get(i));
+        }
+    }
+
+    private void add(int index, Routes.Route route) {
+        Node node = root;
+        node.minIndex = Math.min(node.minIndex, index);
+        List<String> paramNames = new ArrayList<>();
+        List<Integer> paramSegments = new ArrayList<>();
+        List<String> segments = templateSegments(route.uriTemplate);
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            String variable = simpleVariableName(segment);
+            if (variable != null) {
+                if (node.variable == null) {
+                    node.variable = new Node();
+                }
+                node = node.variable;
+                paramNames.add(variable);
+                paramSegments.add(i);
+            } else if (isPlainLiteral(segment)) {
+                node = node.literals.computeIfAbsent(Mutils.urlEncode(segment), s -> new Node());
+            } else {
+                // the rest of the template is matched by the route's own regex, starting from this node
+                node.regexRoutes.add(new CompiledRoute(index, route, null, null));
+                return;
+            }
+            node.minIndex = Math.min(node.minIndex, index);
+        }
+        int[] segmentIndexes = new int[paramSegments.size()];
+        for (int i = 0; i < segmentIndexes.length; i++) {
+            segmentIndexes[i] = paramSegments.get(i);
+        }
+        node.routes.add(new CompiledRoute(index, route, paramNames.toArray(new String[0]), segmentIndexes));
+    }
+
+    @Override
+    public boolean handle(MuRequest request, MuResponse response) throws Exception {
+        String path = request.relativePath();
+        Search search = new Search(path, pathSegments(path), request.method());
+        search.visit(root, 0);
+
+        CompiledRoute match = search.best;
+        if (match != null) {
+            Map<String, String> params = search.bestMatch != null ? search.bestMatch.params() : match.params(search.segments);
+            match.route.handler.handle(request, response, params);
+            return true;
+        }
+        if (search.allowed != null && !search.allowed.isEmpty()) {
+            String allow = search.allowed.stream().map(Enum::name).collect(Collectors.joining(", "));
+            response.headers().set(HeaderNames.ALLOW, allow);
+            throw new NotAllowedException(allow);
+        }
+        return false;
+    }
+
+    /**
+     * Replaces each run of consecutive routes in a list of handlers with a single routing handler.
+     * @param handlers The handlers, in the order they were added
+     * @return A new list of handlers
+     */
+    static List<MuHandler> compileRoutes(List<MuHandler> handlers) {
+        List<MuHandler> compiled = new ArrayList<>(handlers.size());
+        List<Routes.Route> run = new ArrayList<>();
+        for (MuHandler handler : handlers) {
+            if (handler instanceof Routes.Route) {
+                run.add((Routes.Route) handler);
+            } else {
+                addRun(compiled, run);
+                compiled.add(handler);
+            }
+        }
+        addRun(compiled, run);
+        return compiled;
+    }
+
+    private static void addRun(List<MuHandler> compiled, List<Routes.Route> run) {
+        if (run.size() == 1) {
+            compiled.add(run.get(0));
+        } else if (run.size() > 1) {
+            compiled.add(new RoutingHandler(new ArrayList<>(run), false));
+        }
+        run.clear();
+    }
+
+    /**
+     * Splits a raw request path into segments, ignoring a single leading and a single trailing slash in the same
+     * way that {@link io.muserver.rest.UriPattern} does.
+     */
+    static String[] pathSegments(String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.length();
+        if (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return start == end ? NO_SEGMENTS : path.substring(start, end).split("/", -1);
+    }
+
+    /**
+     * Splits a URI template into segments, ignoring a single leading and a single trailing slash. Slashes inside
+     * braces, which may appear in custom regular expressions, do not split segments.
+     */
+    static List<String> templateSegments(String template) {
+        if (template.startsWith("/")) {
+            template = template.substring(1);
+        }
+        if (template.endsWith("/")) {
+            template = template.substring(0, template.length() - 1);
+        }
+        List<String> segments = new ArrayList<>();
+        if (template.isEmpty()) {
+            return segments;
+        }
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+            } else if (c == '/' && depth == 0) {
+                segments.add(template.substring(start, i));
+                start = i + 1;
+            }
+        }
+        segments.add(template.substring(start));
+        return segments;
+    }
+
+    private static boolean isPlainLiteral(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '{' || c == '}' || c == '%') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String simpleVariableName(String segment) {
+        if (segment.length() < 3 || segment.charAt(0) != '{' || segment.indexOf('}') != segment.length() - 1) {
+            return null;
+        }
+        String name = segment.substring(1, segment.length() - 1);
+        if (name.indexOf('{') != -1 || name.indexOf(':') != -1) {
+            return null;
+        }
+        name = name.trim();
+        return name.isEmpty() ? null : name;
+    }
+
+    private static class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private Node variable;
+        private final List<CompiledRoute> routes = new ArrayList<>();
+        private final List<CompiledRoute> regexRoutes = new ArrayList<>();
+        private int minIndex = Integer.MAX_VALUE;
+    }
+
+    private static class CompiledRoute {
+        private final int index;
+        private final Routes.Route route;
+        private final String[] paramNames;
+        private final int[] paramSegments;
+
+        /**
+         * @param paramNames The names of the template variables, or null if the route is matched with its regex
+         * @param paramSegments The index of the path segment holding each template variable
+         */
+        CompiledRoute(int index, Routes.Route route, String[] paramNames, int[] paramSegments) {
+            this.index = index;
+            this.route = route;
+            this.paramNames = paramNames;
+            this.paramSegments = paramSegments;
+        }
+
+        boolean usesRegex() {
+            return paramNames == null;
+        }
+
+        boolean acceptsMethod(Method method) {
+            return route.method == null || route.method == method;
+        }
+
+        Map<String, String> params(String[] segments) {
+            HashMap<String, String> params = new HashMap<>();
+            for (int i = 0; i < paramNames.length; i++) {
+                params.put(paramNames[i], Mutils.urlDecode(segments[paramSegments[i]]));
+            }
+            return params;
+        }
+    }
+
+    /**
+     * The state of a single lookup. Every branch of the tree that could hold a route added earlier than the best
+     * match found so far is visited, which also finds the allowed methods when no route accepts the request method.
+     */
+    private class Search {
+        private final String path;
+        private final String[] segments;
+        private final Method method;
+        private CompiledRoute best;
+        private PathMatch bestMatch;
+        private EnumSet<Method> allowed;
+
+        Search(String path, String[] segments, Method method) {
+            this.path = path;
+            this.segments = segments;
+            this.method = method;
+        }
+
+        void visit(Node node, int depth) {
+            if (best != null && node.minIndex > best.index) {
+                return;
+            }
+            for (CompiledRoute route : node.regexRoutes) {
+                check(route);
+            }
+            if (depth == segments.length) {
+                for (CompiledRoute route : node.routes) {
+                    check(route);
+                }
+            } else {
+                String segment = segments[depth];
+                Node literal = node.literals.get(segment);
+                if (literal != null) {
+                    visit(literal, depth + 1);
+                }
+                if (node.variable != null && !segment.isEmpty()) {
+                    visit(node.variable, depth + 1);
+                }
+            }
+        }
+
+        private void check(CompiledRoute route) {
+            if (route.acceptsMethod(method)) {
+                if (best != null && route.index > best.index) {
+                    return;
+                }
+                if (route.usesRegex()) {
+                    PathMatch match = route.route.uriPattern.matcher(path);
+                    if (match.fullyMatches()) {
+                        best = route;
+                        bestMatch = match;
+                    }
+                } else {
+                    best = route;
+                    bestMatch = null;
+                }
+            } else if (methodNotAllowedResponses && best == null) {
+                if (!route.usesRegex() || route.route.uriPattern.matcher(path).fullyMatches()) {
+                    if (allowed == null) {
+                        allowed = EnumSet.noneOf(Method.class);
+                    }
+                    allowed.add(route.route.method);
+                }
+            }
+        }
+    }
+}
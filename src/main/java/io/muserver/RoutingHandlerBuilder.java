@@ -0,0 +1,61 @@
+package io.muserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Used to create a {@link RoutingHandler}, which serves a number of routes from a single handler.</p>
+ * <p>Note that routes added directly to a server or context with {@link MuServerBuilder#addHandler(Method, String, RouteHandler)}
+ * or {@link ContextHandlerBuilder#addHandler(Method, String, RouteHandler)} are already combined into routing handlers.
+ * Use this builder when routes need to be passed around as a single handler, or to send <code>405 Method Not Allowed</code>
+ * responses.</p>
+ */
+public class RoutingHandlerBuilder implements MuHandlerBuilder<RoutingHandler> {
+
+    private final List<Routes.Route> routes = new ArrayList<>();
+    private boolean methodNotAllowedResponses = false;
+
+    /**
+     * Adds a route. If more than one route matches a request, the one added first is used.
+     *
+     * @param method      The method to match, or <code>null</code> to accept any method.
+     * @param uriTemplate A URL template, as described in {@link MuServerBuilder#addHandler(Method, String, RouteHandler)}
+     * @param handler     The handler to invoke if the method and URI matches.
+     * @return This builder
+     * @throws IllegalArgumentException If the template or handler is null, or the template is not valid
+     */
+    public RoutingHandlerBuilder addRoute(Method method, String uriTemplate, RouteHandler handler) {
+        Mutils.notNull("uriTemplate", uriTemplate);
+        Mutils.notNull("handler", handler);
+        routes.add(new Routes.Route(method, uriTemplate, handler));
+        return this;
+    }
+
+    /**
+     * <p>Specifies what happens when the path of a request matches a route, but its method does not.</p>
+     * <p>When <code>true</code>, a <code>405 Method Not Allowed</code> response is sent with an <code>Allow</code>
+     * header listing the methods of the matching routes. Only enable this if no later handler should be given a
+     * chance to handle such a request.</p>
+     * <p>The default is <code>false</code>, in which case the request is passed to the next handler, as
+     * if no route matched.</p>
+     *
+     * @param methodNotAllowedResponses Whether to send 405 responses
+     * @return This builder
+     */
+    public RoutingHandlerBuilder withMethodNotAllowedResponses(boolean methodNotAllowedResponses) {
+        this.methodNotAllowedResponses = methodNotAllowedResponses;
+        return this;
+    }
+
+    /**
+     * @return A new builder with no routes
+     */
+    public static RoutingHandlerBuilder routingHandler() {
+        return new RoutingHandlerBuilder();
+    }
+
+    @Override
+    public RoutingHandler build() {
+        return new RoutingHandler(new ArrayList<>(routes), methodNotAllowedResponses);
+    }
+}
@@ -10,8 +10,16 @@ class ServerSettings {
     final int maxUrlSize;
     final boolean gzipEnabled;
     final Set<String> mimeTypesToGzip;
+    final Transport transport;
+    final int acceptorsPerPort;
+    final NetworkConfig networkConfig;
+    final long handlerQueueTimeoutMillis;
+    final int requestBodyBufferSize;
+    final long uploadMemoryThreshold;
+    final boolean requestDecompressionEnabled;
+    final int fixedLengthResponseThreshold;
 
-    ServerSettings(long minimumGzipSize, int maxHeadersSize, long requestReadTimeoutMillis, long maxRequestSize, int maxUrlSize, boolean gzipEnabled, Set<String> mimeTypesToGzip) {
+    ServerSettings(long minimumGzipSize, int maxHeadersSize, long requestReadTimeoutMillis, long maxRequestSize, int maxUrlSize, boolean gzipEnabled, Set<String> mimeTypesToGzip, Transport transport, int acceptorsPerPort, NetworkConfig networkConfig, long handlerQueueTimeoutMillis, int requestBodyBufferSize, long uploadMemoryThreshold, boolean requestDecompressionEnabled, int fixedLengthResponseThreshold) {
         this.minimumGzipSize = minimumGzipSize;
         this.maxHeadersSize = maxHeadersSize;
         this.requestReadTimeoutMillis = requestReadTimeoutMillis;
@@ -19,6 +27,14 @@ class ServerSettings {
         this.maxUrlSize = maxUrlSize;
         this.gzipEnabled = gzipEnabled;
         this.mimeTypesToGzip = mimeTypesToGzip;
+        this.transport = transport;
+        this.acceptorsPerPort = acceptorsPerPort;
+        this.networkConfig = networkConfig;
+        this.handlerQueueTimeoutMillis = handlerQueueTimeoutMillis;
+        this.requestBodyBufferSize = requestBodyBufferSize;
+        this.uploadMemoryThreshold = uploadMemoryThreshold;
+        this.requestDecompressionEnabled = requestDecompressionEnabled;
+        this.fixedLengthResponseThreshold = fixedLengthResponseThreshold;
     }
 
     boolean shouldCompress(String declaredLength, String contentType) {
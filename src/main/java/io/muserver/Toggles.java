@@ -7,7 +7,8 @@ public class Toggles {
 
     /**
      * An obsolete toggle that does nothing.
-     * @deprecated This is now unused and fixed length is always enabled
+     * @deprecated This is now unused. To send small streamed responses with a fixed length, use
+     * {@link MuServerBuilder#withFixedLengthResponseThreshold(int)}
      */
     public static boolean fixedLengthResponsesEnabled = false;
 
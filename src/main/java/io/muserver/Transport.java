@@ -0,0 +1,34 @@
+package io.muserver;
+
+/**
+ * The network transport used by a server to accept connections and to read and write data.
+ * <p>Set this with {@link MuServerBuilder#withTransport(Transport)} and find the transport actually
+ * in use with {@link MuServer#transport()}.</p>
+ */
+public enum Transport {
+
+    /**
+     * The cross-platform Java NIO transport. This is the default and is always available.
+     */
+    NIO,
+
+    /**
+     * <p>The Linux-only native epoll transport, which uses edge-triggered I/O and has lower system call
+     * overhead than NIO.</p>
+     * <p>This requires Linux and the <code>io.netty:netty-transport-native-epoll</code> artifact with the
+     * classifier for your platform (e.g. <code>linux-x86_64</code>) to be on the classpath. If it is not
+     * available, then {@link #NIO} is used instead.</p>
+     */
+    EPOLL,
+
+    /**
+     * <p><strong>Experimental:</strong> the Linux-only native io_uring transport, which submits I/O to the kernel
+     * through shared ring buffers rather than making a system call per operation.</p>
+     * <p>This requires a recent Linux kernel (5.9 or later is recommended) and the
+     * <code>io.netty.incubator:netty-incubator-transport-native-io_uring</code> artifact with the classifier for
+     * your platform to be on the classpath. If it is not available, then {@link #EPOLL} is tried, followed
+     * by {@link #NIO}.</p>
+     */
+    IO_URING
+
+}
@@ -0,0 +1,158 @@
+package io.muserver;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringChannelOption;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class Transports {
+    private static final Logger log = LoggerFactory.getLogger(Transports.class);
+
+    /**
+     * The system property that sets the default transport, which allows a whole application (or test suite)
+     * to be run on a different transport without code changes.
+     */
+    static final String TRANSPORT_PROPERTY = "io.muserver.transport";
+
+    static Transport defaultTransport() {
+        String value = System.getProperty(TRANSPORT_PROPERTY);
+        if (Mutils.nullOrEmpty(value)) {
+            return Transport.NIO;
+        }
+        try {
+            return Transport.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown transport '" + value + "' specified by the " + TRANSPORT_PROPERTY + " system property so NIO will be used.");
+            return Transport.NIO;
+        }
+    }
+
+    /**
+     * Works out which transport to use given the requested one, falling back from io_uring to epoll to NIO
+     * if a native transport is not available on this platform.
+     */
+    static Transport resolve(Transport requested) {
+        if (requested == Transport.IO_URING) {
+            Throwable unavailabilityCause = IOUringSupport.unavailabilityCause();
+            if (unavailabilityCause == null) {
+                log.info("Using the experimental io_uring transport");
+                return Transport.IO_URING;
+            }
+            log.info("The io_uring transport was requested but is not available so epoll will be tried. Reason: " + unavailabilityCause.getMessage());
+            requested = Transport.EPOLL;
+        }
+        if (requested == Transport.EPOLL) {
+            Throwable unavailabilityCause = EpollSupport.unavailabilityCause();
+            if (unavailabilityCause == null) {
+                log.info("Using the epoll transport");
+                return Transport.EPOLL;
+            }
+            log.info("The epoll transport was requested but is not available so NIO will be used. Reason: " + unavailabilityCause.getMessage());
+        }
+        return Transport.NIO;
+    }
+
+    /**
+     * Works out how many sockets to bind to each port. Multiple acceptors need SO_REUSEPORT, which
+     * is only available to the native transports.
+     */
+    static int acceptorsPerPort(Transport transport, int requested) {
+        if (requested > 1 && transport == Transport.NIO) {
+            log.info(requested + " acceptors per port were requested, however this requires a native transport so a single acceptor will be used.");
+            return 1;
+        }
+        return requested;
+    }
+
+    static void enableReusePort(Transport transport, ServerBootstrap bootstrap) {
+        if (transport == Transport.IO_URING) {
+            IOUringSupport.enableReusePort(bootstrap);
+        } else {
+            EpollSupport.enableReusePort(bootstrap);
+        }
+    }
+
+    static EventLoopGroup newEventLoopGroup(Transport transport, int threads) {
+        switch (transport) {
+            case IO_URING:
+                return IOUringSupport.newEventLoopGroup(threads);
+            case EPOLL:
+                return EpollSupport.newEventLoopGroup(threads);
+            default:
+                return new NioEventLoopGroup(threads);
+        }
+    }
+
+    static Class<? extends ServerChannel> serverChannelClass(Transport transport) {
+        switch (transport) {
+            case IO_URING:
+                return IOUringSupport.serverChannelClass();
+            case EPOLL:
+                return EpollSupport.serverChannelClass();
+            default:
+                return NioServerSocketChannel.class;
+        }
+    }
+
+    /**
+     * Kept in its own class so that the epoll classes are only loaded if epoll is requested, as the epoll
+     * jar is an optional dependency.
+     */
+    private static class EpollSupport {
+        static Throwable unavailabilityCause() {
+            try {
+                return Epoll.unavailabilityCause();
+            } catch (LinkageError e) {
+                return e;
+            }
+        }
+
+        static EventLoopGroup newEventLoopGroup(int threads) {
+            return new EpollEventLoopGroup(threads);
+        }
+
+        static Class<? extends ServerChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        static void enableReusePort(ServerBootstrap bootstrap) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+    }
+
+    /**
+     * Kept in its own class for the same reason as {@link EpollSupport}.
+     */
+    private static class IOUringSupport {
+        static Throwable unavailabilityCause() {
+            try {
+                return IOUring.unavailabilityCause();
+            } catch (LinkageError e) {
+                return e;
+            }
+        }
+
+        static EventLoopGroup newEventLoopGroup(int threads) {
+            return new IOUringEventLoopGroup(threads);
+        }
+
+        static Class<? extends ServerChannel> serverChannelClass() {
+            return IOUringServerSocketChannel.class;
+        }
+
+        static void enableReusePort(ServerBootstrap bootstrap) {
+            bootstrap.option(IOUringChannelOption.SO_REUSEPORT, true);
+        }
+    }
+}
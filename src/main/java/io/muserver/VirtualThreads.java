@@ -0,0 +1,82 @@
+package io.muserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors that run each task on a new virtual thread. The virtual thread API is looked up at runtime
+ * so that this library can still be compiled for and run on Java 8.
+ */
+class VirtualThreads {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Throwable unavailabilityCause = findUnavailabilityCause();
+
+    /**
+     * @return null if virtual threads can be used on this JVM, otherwise the reason they cannot
+     */
+    static Throwable unavailabilityCause() {
+        return unavailabilityCause;
+    }
+
+    static boolean isSupported() {
+        return unavailabilityCause == null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     * @param namePrefix The prefix of the thread names, which are numbered from 0
+     * @return A new executor
+     * @throws UnsupportedOperationException if virtual threads are not available
+     */
+    static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (unavailabilityCause != null) {
+            throw new UnsupportedOperationException("Virtual threads are not available", unavailabilityCause);
+        }
+        try {
+            return create(namePrefix);
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Could not create a virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Creates the virtual thread executor for request handlers if requested and supported, otherwise returns null.
+     */
+    static ExecutorService handlerExecutorIfSupported() {
+        if (unavailabilityCause != null) {
+            log.info("Virtual threads were requested for handlers but are not available so a thread pool will be used. Reason: " + unavailabilityCause.getMessage());
+            return null;
+        }
+        log.info("Using virtual threads for request handlers");
+        return newThreadPerTaskExecutor("muhandler-virtual-");
+    }
+
+    private static ExecutorService create(String namePrefix) throws ReflectiveOperationException {
+        // Equivalent to Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory())
+        Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+        ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        return (ExecutorService) newExecutor.invoke(null, factory);
+    }
+
+    private static Throwable findUnavailabilityCause() {
+        try {
+            // On Java 19 and 20 the API exists but throws unless preview features are enabled
+            create("muhandler-virtual-check-").shutdown();
+            return null;
+        } catch (InvocationTargetException e) {
+            return e.getCause();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new UnsupportedOperationException("Virtual threads require Java 21 or later (current version is " + System.getProperty("java.version") + ")", e);
+        }
+    }
+}
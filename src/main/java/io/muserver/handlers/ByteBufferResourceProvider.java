@@ -0,0 +1,112 @@
+package io.muserver.handlers;
+
+import io.muserver.AsyncHandle;
+import io.muserver.MuRequest;
+import io.muserver.MuResponse;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * Serves a resource that is held in a buffer, such as one in the memory cache, by writing slices of the buffer
+ * without copying them.
+ */
+class ByteBufferResourceProvider implements ResourceProvider {
+    private final ByteBuffer content;
+    private final Date lastModified;
+    private final String etag;
+    private long curPos = 0;
+
+    /**
+     * @param content The whole resource, starting at position 0, which is not changed by this class
+     */
+    ByteBufferResourceProvider(ByteBuffer content, Date lastModified, String etag) {
+        this.content = content;
+        this.lastModified = lastModified;
+        this.etag = etag;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return false;
+    }
+
+    @Override
+    public Long fileSize() {
+        return (long) content.remaining();
+    }
+
+    @Override
+    public Date lastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String etag() {
+        return etag;
+    }
+
+    @Override
+    public boolean skipIfPossible(long bytes) {
+        if (bytes > content.remaining()) {
+            return false;
+        }
+        this.curPos = bytes;
+        return true;
+    }
+
+    @Override
+    public InputStream newInputStream() {
+        ByteBuffer toRead = content.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return toRead.hasRemaining() ? toRead.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!toRead.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(len, toRead.remaining());
+                toRead.get(b, off, count);
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public void sendTo(MuRequest request, MuResponse response, boolean sendBody, long maxLen) {
+        if (sendBody) {
+            ByteBuffer toSend = content.duplicate();
+            toSend.position((int) curPos);
+            if (maxLen < toSend.remaining()) {
+                toSend.limit((int) (curPos + maxLen));
+            }
+            AsyncHandle handle = request.handleAsync();
+            // if there was an error, the client probably disconnected... no big deal
+            handle.write(toSend, error -> handle.complete());
+        }
+    }
+
+    @Override
+    public void sendRangesTo(MuRequest request, MuResponse response, MultipartByteRanges body) {
+        AsyncHandle handle = request.handleAsync();
+        body.sendAsync(handle, (range, callback) -> {
+            ByteBuffer toSend = content.duplicate();
+            toSend.position((int) range.from);
+            toSend.limit((int) (range.from + range.length()));
+            handle.write(toSend, callback);
+        }, error -> handle.complete());
+    }
+}
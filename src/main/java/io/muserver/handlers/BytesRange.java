@@ -1,6 +1,7 @@
 package io.muserver.handlers;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 import static java.util.Collections.emptyList;
@@ -49,6 +50,32 @@ class BytesRange {
         return ranges;
     }
 
+    /**
+     * Merges ranges that overlap or are next to each other, so that no byte is sent more than once.
+     * @param ranges The ranges requested by a client, in any order
+     * @return The merged ranges, in order of position
+     */
+    static List<BytesRange> coalesce(List<BytesRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        List<BytesRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(r -> r.from));
+        List<BytesRange> merged = new ArrayList<>();
+        BytesRange cur = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            BytesRange next = sorted.get(i);
+            if (next.from <= cur.to + 1) {
+                cur = new BytesRange(cur.from, Math.max(cur.to, next.to), cur.total);
+            } else {
+                merged.add(cur);
+                cur = next;
+            }
+        }
+        merged.add(cur);
+        return merged;
+    }
+
     private static long getRangeValue(String bit) {
         bit = bit.trim();
         if (bit.isEmpty()) {
@@ -0,0 +1,141 @@
+package io.muserver.handlers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps small files from another factory in memory, so that requests for them need no file system access. The
+ * contents are held in read-only direct buffers that are sent without copying. When the total size goes over the
+ * limit, the least recently used files are removed.
+ */
+class CachingResourceProviderFactory implements ResourceProviderFactory, ResourceCacheStats {
+
+    private final ResourceProviderFactory underlying;
+    private final long maxTotalBytes;
+    private final int maxFileSize;
+    private final LinkedHashMap<String, CachedResource> cache = new LinkedHashMap<>(16, 0.75f, true); // guarded by this
+    private long bytesCached = 0; // guarded by this
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    CachingResourceProviderFactory(ResourceProviderFactory underlying, long maxTotalBytes, int maxFileSize) {
+        this.underlying = underlying;
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxFileSize = maxFileSize;
+    }
+
+    @Override
+    public ResourceProvider get(String relativePath) {
+        CachedResource cached;
+        synchronized (this) {
+            cached = cache.get(relativePath);
+        }
+        if (cached != null) {
+            hits.increment();
+            return new ByteBufferResourceProvider(cached.content, cached.lastModified, cached.etag);
+        }
+        misses.increment();
+
+        ResourceProvider provider = underlying.get(relativePath);
+        if (!provider.exists() || provider.isDirectory()) {
+            return provider;
+        }
+        Long size = provider.fileSize();
+        if (size == null || size > maxFileSize || size > maxTotalBytes) {
+            return provider;
+        }
+        ByteBuffer content;
+        try (InputStream in = provider.newInputStream()) {
+            content = readFully(in, size.intValue());
+        } catch (IOException e) {
+            // let the uncached provider deal with it
+            return underlying.get(relativePath);
+        }
+        cached = new CachedResource(content, provider.lastModified(), ContentHashCache.etag(content));
+        add(relativePath, cached);
+        return new ByteBufferResourceProvider(cached.content, cached.lastModified, cached.etag);
+    }
+
+    private static ByteBuffer readFully(InputStream in, int size) throws IOException {
+        ByteBuffer content = ByteBuffer.allocateDirect(size);
+        ReadableByteChannel channel = Channels.newChannel(in);
+        while (content.hasRemaining()) {
+            if (channel.read(content) == -1) {
+                break;
+            }
+        }
+        content.flip();
+        return content.asReadOnlyBuffer();
+    }
+
+    private synchronized void add(String relativePath, CachedResource resource) {
+        CachedResource existing = cache.put(relativePath, resource);
+        if (existing != null) {
+            // another request loaded it at the same time
+            bytesCached -= existing.size();
+        }
+        bytesCached += resource.size();
+        Iterator<CachedResource> leastRecentlyUsed = cache.values().iterator();
+        while (bytesCached > maxTotalBytes && leastRecentlyUsed.hasNext()) {
+            CachedResource toRemove = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            bytesCached -= toRemove.size();
+            evictions.increment();
+        }
+    }
+
+    @Override
+    public long hits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long misses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public synchronized int entries() {
+        return cache.size();
+    }
+
+    @Override
+    public synchronized long bytesCached() {
+        return bytesCached;
+    }
+
+    @Override
+    public String toString() {
+        return "Resource cache hits: " + hits() + "; misses: " + misses() + "; evictions: " + evictions()
+            + "; entries: " + entries() + "; bytes cached: " + bytesCached();
+    }
+
+    private static class CachedResource {
+        private final ByteBuffer content;
+        private final Date lastModified;
+        private final String etag;
+
+        CachedResource(ByteBuffer content, Date lastModified, String etag) {
+            this.content = content;
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+
+        int size() {
+            return content.remaining();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package io.muserver.handlers;
+
+import io.muserver.MuRequest;
+import io.muserver.MuResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * All the resources under a classpath root packed into one file, which is memory-mapped so that each resource, or
+ * any range of it, is served as a slice of the mapping without copying and without opening a stream per request.
+ * <p>The resources are packed once when the handler is built, after which the jar file system used to read them is
+ * released, and closed if nothing else uses it. Resources are found with a binary search of the sorted paths.</p>
+ */
+class ClasspathBundle implements ResourceProviderFactory {
+    private static final Logger log = LoggerFactory.getLogger(ClasspathBundle.class);
+
+    private final String[] paths;
+    private final BundledResource[] resources;
+
+    private ClasspathBundle(String[] paths, BundledResource[] resources) {
+        this.paths = paths;
+        this.resources = resources;
+    }
+
+    /**
+     * Copies the resources found by a classpath cache into a memory-mapped bundle, and then releases the cache's file system.
+     * @param cache The cache to pack, which can not be used afterwards
+     * @return The bundle
+     * @throws IOException The resources could not be read or the bundle could not be written
+     */
+    static ClasspathBundle pack(ClasspathCache cache) throws IOException {
+        TreeMap<String, ClasspathResourceProvider> items = new TreeMap<>(cache.items());
+        String[] paths = items.keySet().toArray(new String[0]);
+        long[] offsets = new long[paths.length];
+        long[] lengths = new long[paths.length];
+
+        Path bundleFile = Files.createTempFile("mu-classpath-", ".bundle");
+        try {
+            MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(bundleFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(8192);
+                for (int i = 0; i < paths.length; i++) {
+                    ClasspathResourceProvider item = items.get(paths[i]);
+                    if (item.isDirectory()) {
+                        continue;
+                    }
+                    offsets[i] = channel.position();
+                    try (InputStream in = Files.newInputStream(item.path(), StandardOpenOption.READ)) {
+                        int read;
+                        while ((read = in.read(buffer.array())) > -1) {
+                            buffer.position(0).limit(read);
+                            while (buffer.hasRemaining()) {
+                                channel.write(buffer);
+                            }
+                            buffer.clear();
+                        }
+                    }
+                    lengths[i] = channel.position() - offsets[i];
+                }
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("The classpath resources are " + channel.size() + " bytes, which is too large to memory-map");
+                }
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+
+            BundledResource[] resources = new BundledResource[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                ClasspathResourceProvider item = items.get(paths[i]);
+                ByteBuffer content = null;
+                String etag = null;
+                if (!item.isDirectory()) {
+                    ByteBuffer slice = mapped.duplicate();
+                    slice.position((int) offsets[i]).limit((int) (offsets[i] + lengths[i]));
+                    content = slice.slice().asReadOnlyBuffer();
+                    etag = ContentHashCache.etag(content);
+                }
+                resources[i] = new BundledResource(item.isDirectory(), content, item.lastModified(), etag);
+            }
+            cache.closeFileSystem();
+            return new ClasspathBundle(paths, resources);
+        } finally {
+            try {
+                // the mapping stays valid after the file is deleted, except on Windows where deleting it fails
+                Files.delete(bundleFile);
+            } catch (IOException e) {
+                log.debug("Could not delete " + bundleFile + " so it will be deleted on exit", e);
+                bundleFile.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    @Override
+    public ResourceProvider get(String relativePath) {
+        int index = Arrays.binarySearch(paths, ClasspathCache.normalisePath(relativePath));
+        if (index < 0) {
+            return ClasspathCache.nullProvider;
+        }
+        BundledResource resource = resources[index];
+        if (resource.isDirectory) {
+            return new DirectoryProvider(resource.lastModified);
+        }
+        return new ByteBufferResourceProvider(resource.content, resource.lastModified, resource.etag);
+    }
+
+    private static class BundledResource {
+        private final boolean isDirectory;
+        private final ByteBuffer content;
+        private final Date lastModified;
+        private final String etag;
+
+        BundledResource(boolean isDirectory, ByteBuffer content, Date lastModified, String etag) {
+            this.isDirectory = isDirectory;
+            this.content = content;
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+    }
+
+    private static class DirectoryProvider implements ResourceProvider {
+        private final Date lastModified;
+
+        DirectoryProvider(Date lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public boolean exists() {
+            return true;
+        }
+
+        public boolean isDirectory() {
+            return true;
+        }
+
+        public Long fileSize() {
+            return null;
+        }
+
+        public Date lastModified() {
+            return lastModified;
+        }
+
+        public String etag() {
+            return null;
+        }
+
+        public boolean skipIfPossible(long bytes) {
+            return false;
+        }
+
+        public InputStream newInputStream() throws IOException {
+            throw new FileNotFoundException("A directory has no content");
+        }
+
+        public void sendTo(MuRequest request, MuResponse response, boolean sendBody, long maxLen) {
+        }
+
+        public void sendRangesTo(MuRequest request, MuResponse response, MultipartByteRanges body) {
+        }
+    }
+}
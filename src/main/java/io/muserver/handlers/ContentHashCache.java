@@ -0,0 +1,112 @@
+package io.muserver.handlers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates strong ETags from a hash of the contents of resources. The hash of each path is kept along with the size and
+ * modification date of the content it was made from, so a resource is only read again after it changes. This means
+ * resources that are touched without being changed, for example by a redeployment, keep the same ETag.
+ */
+class ContentHashCache {
+    private static final Logger log = LoggerFactory.getLogger(ContentHashCache.class);
+
+    /**
+     * A limit on the number of paths held, so that a large number of different files cannot use up memory.
+     */
+    static final int MAX_ENTRIES = 50000;
+
+    /**
+     * Files larger than this get an ETag based on their size and modification date instead, as reading them all
+     * before sending the first byte would delay the response too much.
+     */
+    static final long MAX_HASHED_SIZE = 64L * 1024 * 1024;
+
+    private final Map<Path, HashedContent> entries = new ConcurrentHashMap<>();
+
+    interface ContentOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Gets the ETag of a resource, reading it only if it has changed since it was last hashed.
+     * @param path The location of the resource
+     * @param size The current size of the resource
+     * @param lastModified The current modification date of the resource, or null if unknown
+     * @param opener Opens the resource if it needs to be read
+     * @return A strong ETag, or a weak one if the resource could not be read
+     */
+    String etag(Path path, long size, Date lastModified, ContentOpener opener) {
+        if (size > MAX_HASHED_SIZE) {
+            return FileMetadata.derivedEtag(size, lastModified);
+        }
+        Path key = path.toAbsolutePath().normalize();
+        long lastModifiedMillis = lastModified == null ? -1 : lastModified.getTime();
+        HashedContent existing = entries.get(key);
+        if (existing != null && existing.size == size && existing.lastModifiedMillis == lastModifiedMillis) {
+            return existing.etag;
+        }
+        MessageDigest digest = newDigest();
+        try (InputStream in = opener.open()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            log.debug("Could not read " + key + " to create its ETag", e);
+            return FileMetadata.derivedEtag(size, lastModified);
+        }
+        String etag = toEtag(digest);
+        if (entries.size() < MAX_ENTRIES || entries.containsKey(key)) {
+            entries.put(key, new HashedContent(size, lastModifiedMillis, etag));
+        }
+        return etag;
+    }
+
+    /**
+     * Creates a strong ETag for content that is already in memory.
+     * @param content The content, which is not changed by this method
+     * @return A strong ETag
+     */
+    static String etag(ByteBuffer content) {
+        MessageDigest digest = newDigest();
+        digest.update(content.duplicate());
+        return toEtag(digest);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by all JVMs", e);
+        }
+    }
+
+    private static String toEtag(MessageDigest digest) {
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()) + "\"";
+    }
+
+    private static class HashedContent {
+        private final long size;
+        private final long lastModifiedMillis;
+        private final String etag;
+
+        HashedContent(long size, long lastModifiedMillis, String etag) {
+            this.size = size;
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.etag = etag;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.muserver.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares ETags against the lists of entity tags in <code>If-Match</code> and <code>If-None-Match</code> request
+ * headers, as described in RFC 7232.
+ */
+class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * @param headerValue The value of an <code>If-Match</code> header
+     * @param etag The ETag of the resource, or null if it has none
+     * @return True if the header is <code>*</code> or lists a tag that is strongly equal to the ETag
+     */
+    static boolean matchesStrongly(String headerValue, String etag) {
+        if (headerValue.trim().equals("*")) {
+            return true;
+        }
+        if (etag == null || isWeak(etag)) {
+            return false;
+        }
+        for (String tag : parse(headerValue)) {
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param headerValue The value of an <code>If-None-Match</code> header
+     * @param etag The ETag of the resource, or null if it has none
+     * @return True if the header is <code>*</code> or lists a tag that is weakly equal to the ETag
+     */
+    static boolean matchesWeakly(String headerValue, String etag) {
+        if (headerValue.trim().equals("*")) {
+            return true;
+        }
+        if (etag == null) {
+            return false;
+        }
+        String opaqueTag = opaqueTag(etag);
+        for (String tag : parse(headerValue)) {
+            if (opaqueTag(tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits a comma-separated list of entity tags. Tags without quotes, which some clients send, are allowed.
+     */
+    static List<String> parse(String headerValue) {
+        List<String> tags = new ArrayList<>();
+        int i = 0;
+        int length = headerValue.length();
+        while (i < length) {
+            char c = headerValue.charAt(i);
+            if (c == ',' || c == ' ' || c == '\t') {
+                i++;
+                continue;
+            }
+            int start = i;
+            if (headerValue.startsWith("W/", i)) {
+                i += 2;
+            }
+            if (i < length && headerValue.charAt(i) == '"') {
+                int endQuote = headerValue.indexOf('"', i + 1);
+                i = endQuote == -1 ? length : endQuote + 1;
+            } else {
+                while (i < length && headerValue.charAt(i) != ',') {
+                    i++;
+                }
+            }
+            tags.add(headerValue.substring(start, i).trim());
+        }
+        return tags;
+    }
+
+    private static boolean isWeak(String tag) {
+        return tag.startsWith("W/");
+    }
+
+    private static String opaqueTag(String tag) {
+        return isWeak(tag) ? tag.substring(2) : tag;
+    }
+}
@@ -0,0 +1,47 @@
+package io.muserver.handlers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+
+/**
+ * The attributes of a file that are needed to serve it, read with a single file system call.
+ */
+class FileMetadata {
+    final boolean exists;
+    final boolean isDirectory;
+    final long size;
+    final Date lastModified;
+    final long loadedAtNanos;
+
+    private FileMetadata(boolean exists, boolean isDirectory, long size, Date lastModified) {
+        this.exists = exists;
+        this.isDirectory = isDirectory;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.loadedAtNanos = System.nanoTime();
+    }
+
+    static FileMetadata read(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileMetadata(true, attributes.isDirectory(), attributes.size(), new Date(attributes.lastModifiedTime().toMillis()));
+        } catch (IOException e) {
+            // as with Files.exists, a file that cannot be read is treated as missing
+            return new FileMetadata(false, false, 0, null);
+        }
+    }
+
+    /**
+     * Creates a weak ETag from the size and modification date of a resource, for when its content cannot be hashed.
+     * @return The ETag, or null if the modification date is not known
+     */
+    static String derivedEtag(long size, Date lastModified) {
+        if (lastModified == null) {
+            return null;
+        }
+        return "W/\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified.getTime()) + "\"";
+    }
+}
@@ -0,0 +1,91 @@
+package io.muserver.handlers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the metadata of files under a directory. A {@link FileWatcher} removes entries as soon as files change.
+ * Entries are also reloaded once they reach a maximum age, which covers file systems where the watch service
+ * does not see changes, such as network mounts.
+ */
+class FileMetadataCache implements FileWatcher.Listener, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(FileMetadataCache.class);
+
+    /**
+     * A limit on the number of paths held, so that requests for many different missing files cannot use up memory.
+     */
+    static final int MAX_ENTRIES = 50000;
+
+    private final Map<Path, FileMetadata> entries = new ConcurrentHashMap<>();
+    private final AtomicLong changes = new AtomicLong();
+    private final long maxAgeNanos;
+    private final FileWatcher.Registration registration;
+
+    /**
+     * @param baseDirectory The directory to watch, including its sub-directories
+     * @param maxAgeMillis The time after which an entry is reloaded even if no change was seen, or 0 to rely only on
+     *                     the watch service
+     */
+    FileMetadataCache(Path baseDirectory, long maxAgeMillis) {
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        this.registration = startWatching(baseDirectory.toAbsolutePath().normalize());
+    }
+
+    private FileWatcher.Registration startWatching(Path baseDirectory) {
+        try {
+            return FileWatcher.watch(baseDirectory, this);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Could not watch " + baseDirectory + " for changes, so cached file metadata will only be refreshed "
+                + (maxAgeNanos > 0 ? "every " + TimeUnit.NANOSECONDS.toMillis(maxAgeNanos) + "ms" : "on restart"), e);
+            return null;
+        }
+    }
+
+    @Override
+    public void onChange(Path changed, boolean withContents) {
+        changes.incrementAndGet();
+        if (changed == null) {
+            entries.clear();
+        } else if (withContents) {
+            entries.keySet().removeIf(path -> path.startsWith(changed));
+        } else {
+            entries.remove(changed);
+        }
+    }
+
+    FileMetadata get(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        FileMetadata metadata = entries.get(key);
+        if (metadata == null || (maxAgeNanos > 0 && System.nanoTime() - metadata.loadedAtNanos > maxAgeNanos)) {
+            long changesBeforeRead = changes.get();
+            metadata = FileMetadata.read(key);
+            // if something changed while reading, what was read may already be out of date so is not kept
+            boolean unchanged = changes.get() == changesBeforeRead;
+            if (unchanged && (entries.size() < MAX_ENTRIES || entries.containsKey(key))) {
+                entries.put(key, metadata);
+            }
+        }
+        return metadata;
+    }
+
+    boolean isWatching() {
+        return registration != null;
+    }
+
+    /**
+     * Stops watching for changes. This also happens if the cache is garbage collected without being closed.
+     */
+    @Override
+    public void close() {
+        if (registration != null) {
+            registration.close();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package io.muserver.handlers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * <p>Watches directory trees for changes using one {@link WatchService} and one thread per file system, shared by
+ * everything in the JVM that watches that file system.</p>
+ * <p>Each directory is registered once no matter how many listeners watch it, and is unregistered when the last of
+ * them is closed. Once nothing is being watched the watch service is closed and its thread ends, so building and
+ * discarding handlers does not leak threads or operating system watches. As handlers have no stop hook, listeners are
+ * only weakly referenced, and a listener that is garbage collected without being closed is closed by the watcher.</p>
+ */
+class FileWatcher {
+    private static final Logger log = LoggerFactory.getLogger(FileWatcher.class);
+    private static final Map<FileSystem, FileWatcher> watchers = new HashMap<>();
+
+    /**
+     * Called on the watcher thread when something changes.
+     */
+    interface Listener {
+        /**
+         * @param changed The file or directory that was created, modified or deleted, or <code>null</code> if events
+         *                were lost and anything may have changed
+         * @param withContents <code>true</code> if everything under the path may have changed too, as happens when a
+         *                     directory is created, deleted or renamed
+         */
+        void onChange(Path changed, boolean withContents);
+    }
+
+    /**
+     * A listener's registration, which must be closed when the listener no longer needs to watch.
+     */
+    static class Registration extends WeakReference<Listener> implements AutoCloseable {
+        private final FileWatcher watcher;
+        private final Set<WatchKey> keys = new HashSet<>();
+
+        private Registration(Listener listener, FileWatcher watcher) {
+            super(listener, watcher.collected);
+            this.watcher = watcher;
+        }
+
+        @Override
+        public void close() {
+            watcher.release(this);
+        }
+    }
+
+    private final FileSystem fileSystem;
+    private final WatchService watchService;
+    private final Map<WatchKey, List<Registration>> keys = new HashMap<>();
+    private final ReferenceQueue<Listener> collected = new ReferenceQueue<>();
+    private boolean closed = false;
+
+    private FileWatcher(FileSystem fileSystem) throws IOException {
+        this.fileSystem = fileSystem;
+        this.watchService = fileSystem.newWatchService();
+        Thread thread = new Thread(this::run, "mu-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Watches a directory and all its sub-directories, including ones created later.
+     * @param directory An absolute, normalized directory
+     * @param listener The listener to call when anything under the directory changes
+     * @return The registration, which should be closed when watching is no longer needed
+     * @throws IOException If the directory cannot be watched
+     * @throws UnsupportedOperationException If the file system cannot be watched
+     */
+    static Registration watch(Path directory, Listener listener) throws IOException {
+        synchronized (watchers) {
+            FileWatcher watcher = watchers.get(directory.getFileSystem());
+            if (watcher == null) {
+                watcher = new FileWatcher(directory.getFileSystem());
+                watchers.put(directory.getFileSystem(), watcher);
+            }
+            Registration registration = new Registration(listener, watcher);
+            try {
+                watcher.registerAll(registration, directory);
+            } catch (IOException | RuntimeException e) {
+                watcher.release(registration);
+                throw e;
+            }
+            return registration;
+        }
+    }
+
+    /**
+     * @return The number of directories being watched across the whole JVM
+     */
+    static int watchedDirectories() {
+        synchronized (watchers) {
+            int count = 0;
+            for (FileWatcher watcher : watchers.values()) {
+                count += watcher.keys.size();
+            }
+            return count;
+        }
+    }
+
+    private void registerAll(Registration registration, Path directory) throws IOException {
+        try (Stream<Path> dirs = Files.walk(directory)) {
+            for (Path dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                // registering a directory again returns the same key, so each key lists everything watching it
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                if (registration.keys.add(key)) {
+                    keys.computeIfAbsent(key, k -> new ArrayList<>(1)).add(registration);
+                }
+            }
+        }
+    }
+
+    private void release(Registration registration) {
+        synchronized (watchers) {
+            for (WatchKey key : registration.keys) {
+                List<Registration> registrations = keys.get(key);
+                if (registrations != null) {
+                    registrations.remove(registration);
+                    if (registrations.isEmpty()) {
+                        keys.remove(key);
+                        key.cancel();
+                    }
+                }
+            }
+            registration.keys.clear();
+            if (keys.isEmpty() && !closed) {
+                closed = true;
+                watchers.remove(fileSystem);
+                try {
+                    // this ends the watcher thread
+                    watchService.close();
+                } catch (IOException e) {
+                    log.info("Error while closing file watch service", e);
+                }
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                // wakes up regularly to close the registrations of listeners that were garbage collected
+                key = watchService.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Reference<? extends Listener> ref;
+            while ((ref = collected.poll()) != null) {
+                release((Registration) ref);
+            }
+            if (key != null) {
+                onEvents(key);
+            }
+        }
+    }
+
+    private void onEvents(WatchKey key) {
+        List<Registration> registrations;
+        synchronized (watchers) {
+            List<Registration> current = keys.get(key);
+            registrations = current == null ? Collections.emptyList() : new ArrayList<>(current);
+        }
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Path changed = event.kind() == OVERFLOW ? null : dir.resolve((Path) event.context());
+            // a modified directory only has its own metadata changed, as changes to its contents have their own events
+            boolean withContents = event.kind() != ENTRY_MODIFY;
+            for (Registration registration : registrations) {
+                Listener listener = registration.get();
+                if (listener != null) {
+                    listener.onChange(changed, withContents);
+                }
+            }
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+                synchronized (watchers) {
+                    for (Registration registration : registrations) {
+                        if (!registration.keys.isEmpty()) {
+                            try {
+                                registerAll(registration, changed);
+                            } catch (IOException | ClosedWatchServiceException e) {
+                                log.info("Could not watch new directory " + changed + " for changes", e);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        boolean deleted = !key.reset();
+        for (Registration registration : registrations) {
+            Listener listener = registration.get();
+            if (listener != null) {
+                // the watched directory's own last modified time changes when entries are added or removed, and
+                // everything under it is gone if it was deleted
+                listener.onChange(dir, deleted);
+            }
+        }
+        if (deleted) {
+            // the directory was deleted, so the key is no longer needed by anything
+            synchronized (watchers) {
+                List<Registration> removed = keys.remove(key);
+                if (removed != null) {
+                    for (Registration registration : removed) {
+                        registration.keys.remove(key);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.muserver.handlers;
+
+import io.muserver.AsyncHandle;
+import io.muserver.DoneCallback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * A <code>multipart/byteranges</code> response body, as described in RFC 7233, which is used when a client asks
+ * for more than one range of a resource. The boundaries and part headers are created up front so that the exact
+ * content length is known before the body is sent.
+ */
+class MultipartByteRanges {
+
+    final List<BytesRange> ranges;
+    private final String boundary;
+    private final byte[][] partHeaders;
+    private final byte[] end;
+
+    /**
+     * @param ranges The ranges to send, which should not overlap
+     * @param contentType The content type of the resource, or null if it has none
+     */
+    MultipartByteRanges(List<BytesRange> ranges, String contentType) {
+        this.ranges = ranges;
+        this.boundary = Long.toHexString(ThreadLocalRandom.current().nextLong()) + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        this.partHeaders = new byte[ranges.size()][];
+        for (int i = 0; i < ranges.size(); i++) {
+            StringBuilder header = new StringBuilder();
+            if (i > 0) {
+                header.append("\r\n");
+            }
+            header.append("--").append(boundary).append("\r\n");
+            if (contentType != null) {
+                header.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            header.append("Content-Range: ").append(ranges.get(i)).append("\r\n\r\n");
+            partHeaders[i] = header.toString().getBytes(US_ASCII);
+        }
+        this.end = ("\r\n--" + boundary + "--\r\n").getBytes(US_ASCII);
+    }
+
+    /**
+     * @return The value to use for the <code>Content-Type</code> response header
+     */
+    String contentType() {
+        return "multipart/byteranges; boundary=" + boundary;
+    }
+
+    /**
+     * @return The total size of the body, including the boundaries and part headers
+     */
+    long contentLength() {
+        long length = end.length;
+        for (int i = 0; i < ranges.size(); i++) {
+            length += partHeaders[i].length + ranges.get(i).length();
+        }
+        return length;
+    }
+
+    /**
+     * @return The boundary and headers that come before the part at the given index
+     */
+    byte[] partHeader(int index) {
+        return partHeaders[index];
+    }
+
+    /**
+     * @return The closing boundary, which comes after the last part
+     */
+    byte[] end() {
+        return end;
+    }
+
+    interface RangeWriter {
+        void write(BytesRange range, DoneCallback callback) throws IOException;
+    }
+
+    /**
+     * Writes the whole body asynchronously, writing each part only after the previous one has been written.
+     * @param handle The handle to write the boundaries and part headers to
+     * @param rangeWriter Writes the content of a single range
+     * @param onDone Called when the body has been written, or when any write fails
+     */
+    void sendAsync(AsyncHandle handle, RangeWriter rangeWriter, DoneCallback onDone) {
+        sendPart(handle, rangeWriter, 0, onDone);
+    }
+
+    private void sendPart(AsyncHandle handle, RangeWriter rangeWriter, int index, DoneCallback onDone) {
+        if (index == ranges.size()) {
+            handle.write(ByteBuffer.wrap(end), onDone);
+            return;
+        }
+        handle.write(ByteBuffer.wrap(partHeaders[index]), headerError -> {
+            if (headerError != null) {
+                onDone.onComplete(headerError);
+            } else {
+                rangeWriter.write(ranges.get(index), rangeError -> {
+                    if (rangeError != null) {
+                        onDone.onComplete(rangeError);
+                    } else {
+                        sendPart(handle, rangeWriter, index + 1, onDone);
+                    }
+                });
+            }
+        });
+    }
+}
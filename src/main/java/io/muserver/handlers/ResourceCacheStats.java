@@ -0,0 +1,36 @@
+package io.muserver.handlers;
+
+/**
+ * Statistics about the in-memory cache of a {@link ResourceHandler}.
+ * @see ResourceHandlerBuilder#withMemoryCache(long, int)
+ * @see ResourceHandler#cacheStats()
+ */
+public interface ResourceCacheStats {
+
+    /**
+     * @return The number of requests that were served from the cache
+     */
+    long hits();
+
+    /**
+     * @return The number of requests for resources that were not in the cache, including resources that do not exist
+     * or are too large to be cached
+     */
+    long misses();
+
+    /**
+     * @return The number of resources removed from the cache to make room for others
+     */
+    long evictions();
+
+    /**
+     * @return The number of resources currently in the cache
+     */
+    int entries();
+
+    /**
+     * @return The total size of the resources currently in the cache, in bytes
+     */
+    long bytesCached();
+
+}
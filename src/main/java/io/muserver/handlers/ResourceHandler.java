@@ -10,9 +10,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.format.DateTimeParseException;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 import static io.muserver.handlers.ResourceType.DEFAULT_EXTENSION_MAPPINGS;
 
@@ -27,12 +25,25 @@ public class ResourceHandler implements MuHandler {
     private final String pathToServeFrom;
     private final String defaultFile;
     private final ResourceProviderFactory resourceProviderFactory;
+    private final boolean servePrecompressed;
 
-    ResourceHandler(ResourceProviderFactory resourceProviderFactory, String pathToServeFrom, String defaultFile, Map<String, ResourceType> extensionToResourceType) {
+    /**
+     * The encodings of precompressed files, in order of preference when the client has no preference.
+     */
+    private static final CharSequence[] PRECOMPRESSED_ENCODINGS = {HeaderValues.BR, HeaderValues.GZIP};
+
+    /**
+     * The most ranges that will be sent in one response. Requests for more, after overlapping and adjacent ranges are
+     * merged, are answered with the whole resource, so that clients cannot make the server send many tiny parts.
+     */
+    static final int MAX_RANGES = 16;
+
+    ResourceHandler(ResourceProviderFactory resourceProviderFactory, String pathToServeFrom, String defaultFile, Map<String, ResourceType> extensionToResourceType, boolean servePrecompressed) {
         this.resourceProviderFactory = resourceProviderFactory;
         this.pathToServeFrom = pathToServeFrom;
         this.extensionToResourceType = extensionToResourceType;
         this.defaultFile = defaultFile;
+        this.servePrecompressed = servePrecompressed;
     }
 
     @Override
@@ -56,13 +67,52 @@ public class ResourceHandler implements MuHandler {
             response.redirect(goingTo);
         } else {
             String filename = requestPath.substring(requestPath.lastIndexOf('/'));
+            ResourceType type = resourceType(filename);
+            String rh = request.headers().get("range");
+            CharSequence contentEncoding = null;
+            if (servePrecompressed && type.gzip) {
+                response.headers().add(HeaderNames.VARY, HeaderNames.ACCEPT_ENCODING);
+                // a range of compressed bytes is of little use to a client, so ranges always come from the original file
+                if (rh == null) {
+                    for (CharSequence encoding : acceptableEncodings(request.headers().acceptEncoding())) {
+                        ResourceProvider variant = resourceProviderFactory.get(decodedRelativePath + fileSuffix(encoding));
+                        if (isUsableVariant(variant, provider)) {
+                            provider = variant;
+                            contentEncoding = encoding;
+                            break;
+                        }
+                    }
+                }
+            }
             Date lastModified = provider.lastModified();
             Long totalSize = provider.fileSize();
-            addHeaders(response, filename, totalSize, lastModified);
+            String etag = provider.etag();
+            addHeaders(response, type, totalSize, lastModified, etag);
+            if (contentEncoding != null) {
+                // as the response already has a content encoding, it will not be compressed again by the server
+                response.headers().set(HeaderNames.CONTENT_ENCODING, contentEncoding);
+            }
             boolean sendBody = request.method() != Method.HEAD;
 
+            String ifMatch = request.headers().get(HeaderNames.IF_MATCH);
+            String ifNoneMatch = request.headers().get(HeaderNames.IF_NONE_MATCH);
             String ims = request.headers().get(HeaderNames.IF_MODIFIED_SINCE);
-            if (ims != null) {
+            if (ifMatch != null && !EntityTags.matchesStrongly(ifMatch, etag)) {
+                response.status(412);
+                response.headers().set(HeaderNames.CONTENT_LENGTH, 0);
+                sendBody = false;
+            } else if (ifNoneMatch != null) {
+                // If-Modified-Since is ignored when If-None-Match is given, as the ETag is the more accurate check
+                if (EntityTags.matchesWeakly(ifNoneMatch, etag)) {
+                    if (request.method() == Method.GET || request.method() == Method.HEAD) {
+                        response.status(304);
+                    } else {
+                        response.status(412);
+                        response.headers().set(HeaderNames.CONTENT_LENGTH, 0);
+                    }
+                    sendBody = false;
+                }
+            } else if (ims != null) {
                 try {
                     long lastModTime = lastModified.getTime() / 1000;
                     long lastAccessed = Mutils.fromHttpDate(ims).getTime() / 1000;
@@ -75,11 +125,11 @@ public class ResourceHandler implements MuHandler {
                 }
             }
 
-            String rh = request.headers().get("range");
             long maxAmountToSend = Long.MAX_VALUE;
-            if (rh != null && totalSize != null && response.status() != 304) {
+            MultipartByteRanges multipartBody = null;
+            if (rh != null && totalSize != null && response.status() == 200) {
                 try {
-                    List<BytesRange> requestedRanges = BytesRange.parse(totalSize, rh);
+                    List<BytesRange> requestedRanges = BytesRange.coalesce(BytesRange.parse(totalSize, rh));
                     if (requestedRanges.size() == 1) {
                         BytesRange range = requestedRanges.get(0);
                         boolean couldSkip = provider.skipIfPossible(range.from);
@@ -89,13 +139,24 @@ public class ResourceHandler implements MuHandler {
                             response.headers().set(HeaderNames.CONTENT_LENGTH, maxAmountToSend);
                             response.headers().set(HeaderNames.CONTENT_RANGE, range.toString());
                         }
+                    } else if (requestedRanges.size() > MAX_RANGES) {
+                        log.info("Ignoring range request for " + requestedRanges.size() + " ranges, which is more than the limit of " + MAX_RANGES);
+                    } else if (requestedRanges.size() > 1) {
+                        multipartBody = new MultipartByteRanges(requestedRanges, response.headers().get(HeaderNames.CONTENT_TYPE));
+                        response.status(206);
+                        response.headers().set(HeaderNames.CONTENT_TYPE, multipartBody.contentType());
+                        response.headers().set(HeaderNames.CONTENT_LENGTH, multipartBody.contentLength());
                     }
                 } catch (IllegalArgumentException e) {
                     log.info("Ignoring range request due to invalid Range header value: " + rh);
                 }
             }
             try {
-                provider.sendTo(request, response, sendBody, maxAmountToSend);
+                if (multipartBody == null) {
+                    provider.sendTo(request, response, sendBody, maxAmountToSend);
+                } else if (sendBody) {
+                    provider.sendRangesTo(request, response, multipartBody);
+                }
             } catch (IOException | IllegalStateException ignored) {
                 log.debug(request + " cancelled before full response sent to the client");
             }
@@ -104,15 +165,73 @@ public class ResourceHandler implements MuHandler {
         return true;
     }
 
-    private void addHeaders(MuResponse response, String fileName, Long fileSize, Date lastModified) {
+    private ResourceType resourceType(String fileName) {
         int ind = fileName.lastIndexOf('.');
-        ResourceType type;
         if (ind == -1) {
-            type = ResourceType.DEFAULT;
-        } else {
-            String extension = fileName.substring(ind + 1).toLowerCase();
-            type = extensionToResourceType.getOrDefault(extension, ResourceType.DEFAULT);
+            return ResourceType.DEFAULT;
+        }
+        String extension = fileName.substring(ind + 1).toLowerCase();
+        return extensionToResourceType.getOrDefault(extension, ResourceType.DEFAULT);
+    }
+
+    private static CharSequence fileSuffix(CharSequence encoding) {
+        return HeaderValues.GZIP.equals(encoding) ? ".gz" : "." + encoding;
+    }
+
+    /**
+     * A precompressed file is ignored if it is older than the original, as it is probably out of date.
+     */
+    private static boolean isUsableVariant(ResourceProvider variant, ResourceProvider original) {
+        if (!variant.exists() || variant.isDirectory()) {
+            return false;
         }
+        Date variantModified = variant.lastModified();
+        Date originalModified = original.lastModified();
+        return variantModified == null || originalModified == null || !variantModified.before(originalModified);
+    }
+
+    /**
+     * Finds the precompressed encodings that the client accepts, most wanted first.
+     * @param acceptEncoding The parsed <code>Accept-Encoding</code> request header
+     * @return The acceptable encodings, which may be empty
+     */
+    static List<CharSequence> acceptableEncodings(List<ParameterizedHeaderWithValue> acceptEncoding) {
+        double[] qualities = new double[PRECOMPRESSED_ENCODINGS.length];
+        Arrays.fill(qualities, -1);
+        double wildcardQuality = 0;
+        for (ParameterizedHeaderWithValue value : acceptEncoding) {
+            double quality;
+            try {
+                quality = Double.parseDouble(value.parameter("q", "1"));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if ("*".equals(value.value())) {
+                wildcardQuality = quality;
+            }
+            for (int i = 0; i < PRECOMPRESSED_ENCODINGS.length; i++) {
+                if (value.value().equalsIgnoreCase(PRECOMPRESSED_ENCODINGS[i].toString())) {
+                    qualities[i] = quality;
+                }
+            }
+        }
+        List<CharSequence> encodings = new ArrayList<>(PRECOMPRESSED_ENCODINGS.length);
+        List<Double> encodingQualities = new ArrayList<>(PRECOMPRESSED_ENCODINGS.length);
+        for (int i = 0; i < PRECOMPRESSED_ENCODINGS.length; i++) {
+            double quality = qualities[i] == -1 ? wildcardQuality : qualities[i];
+            if (quality > 0) {
+                int insertAt = 0;
+                while (insertAt < encodingQualities.size() && encodingQualities.get(insertAt) >= quality) {
+                    insertAt++;
+                }
+                encodings.add(insertAt, PRECOMPRESSED_ENCODINGS[i]);
+                encodingQualities.add(insertAt, quality);
+            }
+        }
+        return encodings;
+    }
+
+    private void addHeaders(MuResponse response, ResourceType type, Long fileSize, Date lastModified, String etag) {
         response.contentType(type.mimeType);
         Headers headers = response.headers();
         headers.set(HeaderNames.ACCEPT_RANGES, HeaderValues.BYTES);
@@ -122,9 +241,22 @@ public class ResourceHandler implements MuHandler {
         if (lastModified != null) {
             headers.set(HeaderNames.LAST_MODIFIED, Mutils.toHttpDate(lastModified));
         }
+        if (etag != null) {
+            headers.set(HeaderNames.ETAG, etag);
+        }
         headers.add(type.headers);
     }
 
+    /**
+     * @return Statistics about the in-memory cache, or empty if {@link ResourceHandlerBuilder#withMemoryCache(long, int)}
+     * was not used.
+     */
+    public Optional<ResourceCacheStats> cacheStats() {
+        return resourceProviderFactory instanceof ResourceCacheStats
+            ? Optional.of((ResourceCacheStats) resourceProviderFactory)
+            : Optional.empty();
+    }
+
     /**
      * @return This is a temporary accessor which will be demised. Do not use this.
      * @deprecated This is a temporary accessor which will be demised. Do not use this.
@@ -197,7 +329,7 @@ public class ResourceHandler implements MuHandler {
             if (resourceProviderFactory == null) {
                 throw new IllegalStateException("No resourceProviderFactory has been set");
             }
-            return new ResourceHandler(resourceProviderFactory, pathToServeFrom, defaultFile, extensionToResourceType);
+            return new ResourceHandler(resourceProviderFactory, pathToServeFrom, defaultFile, extensionToResourceType, false);
         }
     }
 
@@ -1,12 +1,16 @@
 package io.muserver.handlers;
 
+import io.muserver.MuException;
 import io.muserver.MuHandlerBuilder;
+import io.muserver.Mutils;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static io.muserver.handlers.ResourceType.DEFAULT_EXTENSION_MAPPINGS;
 
@@ -21,6 +25,11 @@ public class ResourceHandlerBuilder implements MuHandlerBuilder<ResourceHandler>
     private String pathToServeFrom = "/";
     private String defaultFile = "index.html";
     private ResourceProviderFactory resourceProviderFactory;
+    private long cacheMaxTotalBytes = 0;
+    private int cacheMaxFileSize = 0;
+    private long metadataMaxAgeMillis = -1;
+    private boolean servePrecompressed = false;
+    private boolean classpathBundle = false;
 
     /**
      * Specify custom filename extension to mime-type mappings. By default {@link ResourceType#DEFAULT_EXTENSION_MAPPINGS}
@@ -55,6 +64,83 @@ public class ResourceHandlerBuilder implements MuHandlerBuilder<ResourceHandler>
         return this;
     }
 
+    /**
+     * <p>Keeps small files in memory so that serving them needs no file system access. The file contents are held
+     * off-heap and sent without being copied. When the cache is full, the least recently used files are removed.</p>
+     * <p>Files are cached the first time they are requested, and changes to them are not seen while they are in the
+     * cache, so this is best suited to content that does not change while the server is running. Hit, miss and
+     * eviction counts are available from {@link ResourceHandler#cacheStats()}.</p>
+     * <p>By default there is no cache.</p>
+     * @param maxTotalBytes The maximum total size of all cached files, in bytes
+     * @param maxFileSize The size in bytes of the largest file that will be cached
+     * @return The builder
+     */
+    public ResourceHandlerBuilder withMemoryCache(long maxTotalBytes, int maxFileSize) {
+        if (maxTotalBytes < 1) {
+            throw new IllegalArgumentException("The maximum cache size must be greater than 0");
+        }
+        if (maxFileSize < 1) {
+            throw new IllegalArgumentException("The maximum cached file size must be greater than 0");
+        }
+        this.cacheMaxTotalBytes = maxTotalBytes;
+        this.cacheMaxFileSize = maxFileSize;
+        return this;
+    }
+
+    /**
+     * <p>For handlers that serve from the file system, keeps the existence, size and modification date of files in
+     * memory rather than reading them from the file system for every request. This mostly helps when the files are
+     * on slow or network-mounted volumes.</p>
+     * <p>Changes to files are detected by watching the directory and its sub-directories with a
+     * {@link java.nio.file.WatchService}. Some file systems, such as network mounts, do not report changes this way, so
+     * cached values are also refreshed once they are older than the given maximum age.</p>
+     * <p>This has no effect for classpath handlers, where this information is always read once at startup.</p>
+     * @param maxAge The time after which cached values are read again even if no change was reported, or 0 to rely
+     *               on the watch service only
+     * @param unit The unit of the maximum age
+     * @return The builder
+     */
+    public ResourceHandlerBuilder withFileMetadataCache(long maxAge, TimeUnit unit) {
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("The maximum age cannot be negative");
+        }
+        Mutils.notNull("unit", unit);
+        this.metadataMaxAgeMillis = unit.toMillis(maxAge);
+        return this;
+    }
+
+    /**
+     * <p>Serves precompressed copies of files when the client accepts them. For a request to <code>/app.js</code>
+     * from a client that accepts brotli, <code>app.js.br</code> is sent if it exists, otherwise if gzip is accepted
+     * then <code>app.js.gz</code> is sent if it exists. These are sent with a <code>Content-Encoding</code> header and
+     * are not compressed again by the server, which saves compressing the same content on every request.</p>
+     * <p>This only applies to file types where {@link ResourceType#gzip} is true. A compressed copy that is older than
+     * the original file is ignored. Range requests are always served from the original file.</p>
+     * <p>This is disabled by default.</p>
+     * @param enabled <code>true</code> to serve precompressed files when they exist
+     * @return The builder
+     */
+    public ResourceHandlerBuilder withPrecompressedFiles(boolean enabled) {
+        this.servePrecompressed = enabled;
+        return this;
+    }
+
+    /**
+     * <p>For handlers that serve from the classpath, copies all the resources under the classpath root into a single
+     * memory-mapped file when the handler is built. Resources, and any ranges of them, are then sent directly from
+     * the mapped memory, rather than a new stream being opened from the classpath for each request. If the resources
+     * are in a jar, the jar is not read again after the handler is built.</p>
+     * <p>The resources are held off-heap for the life of the server, so this suits a moderate amount of static
+     * content, up to a total of 2GB. This has no effect for file handlers.</p>
+     * <p>This is disabled by default.</p>
+     * @param enabled <code>true</code> to pack classpath resources into a memory-mapped bundle
+     * @return The builder
+     */
+    public ResourceHandlerBuilder withClasspathBundle(boolean enabled) {
+        this.classpathBundle = enabled;
+        return this;
+    }
+
     ResourceHandlerBuilder withResourceProviderFactory(ResourceProviderFactory resourceProviderFactory) {
         this.resourceProviderFactory = resourceProviderFactory;
         return this;
@@ -68,7 +154,22 @@ public class ResourceHandlerBuilder implements MuHandlerBuilder<ResourceHandler>
         if (resourceProviderFactory == null) {
             throw new IllegalStateException("No resourceProviderFactory has been set");
         }
-        return new ResourceHandler(resourceProviderFactory, pathToServeFrom, defaultFile, extensionToResourceType);
+        if (classpathBundle && resourceProviderFactory instanceof ClasspathCache) {
+            // the classpath cache cannot be used after it is packed, so the bundle replaces it in case this is built again
+            try {
+                resourceProviderFactory = ClasspathBundle.pack((ClasspathCache) resourceProviderFactory);
+            } catch (IOException e) {
+                throw new MuException("Error while packing classpath resources", e);
+            }
+        }
+        ResourceProviderFactory factory = resourceProviderFactory;
+        if (metadataMaxAgeMillis >= 0 && factory instanceof FileResourceProviderFactory) {
+            factory = ((FileResourceProviderFactory) factory).withMetadataCache(metadataMaxAgeMillis);
+        }
+        if (cacheMaxTotalBytes > 0) {
+            factory = new CachingResourceProviderFactory(factory, cacheMaxTotalBytes, cacheMaxFileSize);
+        }
+        return new ResourceHandler(factory, pathToServeFrom, defaultFile, extensionToResourceType, servePrecompressed);
     }
 
 
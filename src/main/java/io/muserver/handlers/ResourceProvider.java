@@ -4,15 +4,15 @@ import io.muserver.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.EOFException;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.ByteBuffer;
-import java.nio.channels.AsynchronousFileChannel;
-import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.*;
 import java.util.stream.Stream;
@@ -26,9 +26,25 @@ interface ResourceProvider {
 
     Date lastModified();
 
+    /**
+     * @return An ETag for the current version of the resource, or null if none can be given. This may read the
+     * resource the first time it is called for each version of it.
+     */
+    String etag();
+
     boolean skipIfPossible(long bytes);
 
+    /**
+     * @return A stream of the whole resource, which the caller must close
+     */
+    InputStream newInputStream() throws IOException;
+
     void sendTo(MuRequest request, MuResponse response, boolean sendBody, long maxLen) throws IOException;
+
+    /**
+     * Sends several ranges of the resource as a multipart body. The response headers have already been set.
+     */
+    void sendRangesTo(MuRequest request, MuResponse response, MultipartByteRanges body) throws IOException;
 }
 
 interface ResourceProviderFactory {
@@ -39,7 +55,7 @@ interface ResourceProviderFactory {
         if (!Files.isDirectory(baseDirectory, LinkOption.NOFOLLOW_LINKS)) {
             throw new MuException(baseDirectory + " is not a directory");
         }
-        return relativePath -> new AsyncFileProvider(baseDirectory, relativePath);
+        return new FileResourceProviderFactory(baseDirectory, null, new ContentHashCache());
     }
 
     static ResourceProviderFactory classpathBased(String classpathBase) {
@@ -54,67 +70,148 @@ interface ResourceProviderFactory {
 }
 
 
+class FileResourceProviderFactory implements ResourceProviderFactory {
+    private final Path baseDirectory;
+    private final FileMetadataCache metadataCache;
+    private final ContentHashCache hashCache;
+
+    /**
+     * @param metadataCache A cache of file metadata, or null to read it from the file system on each request
+     */
+    FileResourceProviderFactory(Path baseDirectory, FileMetadataCache metadataCache, ContentHashCache hashCache) {
+        this.baseDirectory = baseDirectory;
+        this.metadataCache = metadataCache;
+        this.hashCache = hashCache;
+    }
+
+    FileResourceProviderFactory withMetadataCache(long maxAgeMillis) {
+        return new FileResourceProviderFactory(baseDirectory, new FileMetadataCache(baseDirectory, maxAgeMillis), hashCache);
+    }
+
+    @Override
+    public ResourceProvider get(String relativePath) {
+        if (relativePath.startsWith("/")) {
+            relativePath = "." + relativePath;
+        }
+        Path localPath = baseDirectory.resolve(relativePath);
+        FileMetadata metadata = metadataCache == null ? FileMetadata.read(localPath) : metadataCache.get(localPath);
+        return new AsyncFileProvider(localPath, metadata, hashCache);
+    }
+}
+
+
 class ClasspathCache implements ResourceProviderFactory {
     private final String basePath;
     private final Map<String, ClasspathResourceProvider> all = new HashMap<>();
+    private final ContentHashCache hashCache = new ContentHashCache();
+    // jar file systems opened by classpath caches, with the number of caches using each of them
+    private static final Map<FileSystem, Integer> openedFileSystems = new HashMap<>();
+    private FileSystem openedFileSystem; // a jar file system opened by a classpath cache, released by closeFileSystem
 
     ClasspathCache(String basePath) {
         this.basePath = basePath;
     }
 
     void cacheItems() throws URISyntaxException, IOException {
-        URL resource = ClasspathCache.class.getResource(basePath);
+        cacheItems(ClasspathCache.class.getResource(basePath));
+    }
+
+    void cacheItems(URL resource) throws URISyntaxException, IOException {
         if (resource != null) {
             URI uri = resource.toURI();
             Path myPath;
             if (uri.getScheme().equals("jar")) {
-                FileSystem fileSystem = FileSystems.newFileSystem(uri, Collections.emptyMap());
+                FileSystem fileSystem;
+                synchronized (openedFileSystems) {
+                    try {
+                        fileSystem = FileSystems.newFileSystem(uri, Collections.emptyMap());
+                        openedFileSystems.put(fileSystem, 1);
+                        openedFileSystem = fileSystem;
+                    } catch (FileSystemAlreadyExistsException e) {
+                        // another handler is serving from the same jar, or the application opened it, in which case
+                        // it is the application's to close
+                        fileSystem = FileSystems.getFileSystem(uri);
+                        if (openedFileSystems.computeIfPresent(fileSystem, (fs, users) -> users + 1) != null) {
+                            openedFileSystem = fileSystem;
+                        }
+                    }
+                }
                 myPath = fileSystem.getPath(basePath);
             } else {
                 myPath = Paths.get(uri);
             }
-            Stream<Path> walk = Files.walk(myPath);
-            for (Iterator<Path> it = walk.iterator(); it.hasNext(); ) {
-                Path cur = it.next();
-                String relativePath = myPath.relativize(cur).toString().replace('\\', '/');
+            try (Stream<Path> walk = Files.walk(myPath)) {
+                for (Iterator<Path> it = walk.iterator(); it.hasNext(); ) {
+                    Path cur = it.next();
+                    String relativePath = myPath.relativize(cur).toString().replace('\\', '/');
+
+                    boolean exists = Files.exists(cur);
+                    boolean directory = exists && Files.isDirectory(cur);
+
+                    Long size;
+                    try {
+                        size = Files.size(cur);
+                    } catch (IOException e) {
+                        size = null;
+                    }
+                    Date lastModified;
+                    try {
+                        lastModified = new Date(Files.getLastModifiedTime(cur).toMillis());
+                    } catch (IOException e) {
+                        lastModified = null;
+                    }
+                    ClasspathResourceProvider crp = new ClasspathResourceProvider(exists, directory, size, lastModified, cur, hashCache);
+                    all.put(relativePath, crp);
+                }
+            }
+        }
+    }
 
-                boolean exists = Files.exists(cur);
-                boolean directory = exists && Files.isDirectory(cur);
+    /**
+     * @return All the resources under the classpath root, keyed by their path relative to the root
+     */
+    Map<String, ClasspathResourceProvider> items() {
+        return Collections.unmodifiableMap(all);
+    }
 
-                Long size;
-                try {
-                    size = Files.size(cur);
-                } catch (IOException e) {
-                    size = null;
-                }
-                Date lastModified;
-                try {
-                    lastModified = new Date(Files.getLastModifiedTime(cur).toMillis());
-                } catch (IOException e) {
-                    lastModified = null;
+    /**
+     * Stops using the jar file system, which is closed if a classpath cache opened it and no other cache still uses
+     * it. After this, the resources of this cache may no longer be readable.
+     */
+    void closeFileSystem() throws IOException {
+        synchronized (openedFileSystems) {
+            if (openedFileSystem != null) {
+                int users = openedFileSystems.get(openedFileSystem) - 1;
+                if (users == 0) {
+                    openedFileSystems.remove(openedFileSystem);
+                    openedFileSystem.close();
+                } else {
+                    openedFileSystems.put(openedFileSystem, users);
                 }
-                ClasspathResourceProvider crp = new ClasspathResourceProvider(exists, directory, size, lastModified, cur, null);
-                all.put(relativePath, crp);
+                openedFileSystem = null;
             }
         }
     }
 
-
-    @Override
-    public ResourceProvider get(String relativePath) {
+    static String normalisePath(String relativePath) {
         if (relativePath.startsWith("./")) {
             relativePath = relativePath.substring(1);
         }
-        relativePath = Mutils.trim(relativePath, "/");
-        ClasspathResourceProvider cur = all.get(relativePath);
+        return Mutils.trim(relativePath, "/");
+    }
+
+
+    @Override
+    public ResourceProvider get(String relativePath) {
+        ClasspathResourceProvider cur = all.get(normalisePath(relativePath));
         if (cur == null) {
             return nullProvider;
         }
-        return cur.newWithInputStream();
+        return cur.newInstance();
     }
 
 
-    private static final ResourceProvider nullProvider = new ResourceProvider() {
+    static final ResourceProvider nullProvider = new ResourceProvider() {
         public boolean exists() {
             return false;
         }
@@ -131,62 +228,64 @@ class ClasspathCache implements ResourceProviderFactory {
             return null;
         }
 
+        public String etag() {
+            return null;
+        }
+
         public boolean skipIfPossible(long bytes) {
             return false;
         }
 
+        public InputStream newInputStream() throws IOException {
+            throw new FileNotFoundException("The resource does not exist");
+        }
+
         public void sendTo(MuRequest request, MuResponse response, boolean sendBody, long maxLen) {
         }
+
+        public void sendRangesTo(MuRequest request, MuResponse response, MultipartByteRanges body) {
+        }
     };
 }
 
 
-class AsyncFileProvider implements ResourceProvider, CompletionHandler<Integer, Object> {
+class AsyncFileProvider implements ResourceProvider {
     private static final Logger log = LoggerFactory.getLogger(AsyncFileProvider.class);
     private final Path localPath;
-    private AsynchronousFileChannel channel;
+    private final FileMetadata metadata;
+    private final ContentHashCache hashCache;
     private long curPos = 0;
-    private ByteBuffer buf;
-    private AsyncHandle handle;
-    private long maxLen;
-    private long bytesSent = 0;
 
-    AsyncFileProvider(Path baseDirectory, String relativePath) {
-        if (relativePath.startsWith("/")) {
-            relativePath = "." + relativePath;
-        }
-        this.localPath = baseDirectory.resolve(relativePath);
+    AsyncFileProvider(Path localPath, FileMetadata metadata, ContentHashCache hashCache) {
+        this.localPath = localPath;
+        this.metadata = metadata;
+        this.hashCache = hashCache;
     }
 
     public boolean exists() {
-        return Files.exists(localPath);
+        return metadata.exists;
     }
 
     @Override
     public boolean isDirectory() {
-        return Files.isDirectory(localPath);
+        return metadata.isDirectory;
     }
 
     public Long fileSize() {
-        try {
-            long size = Files.size(localPath);
-            if (size == 0L && isDirectory()) {
-                return null;
-            }
-            return size;
-        } catch (IOException e) {
-            log.error("Error finding file size: " + e.getMessage());
-            return null;
-        }
+        return metadata.exists && !metadata.isDirectory ? metadata.size : null;
     }
 
     @Override
     public Date lastModified() {
-        try {
-            return new Date(Files.getLastModifiedTime(localPath).toMillis());
-        } catch (IOException e) {
+        return metadata.lastModified;
+    }
+
+    @Override
+    public String etag() {
+        if (!metadata.exists || metadata.isDirectory) {
             return null;
         }
+        return hashCache.etag(localPath, metadata.size, metadata.lastModified, this::newInputStream);
     }
 
     @Override
@@ -195,59 +294,57 @@ class AsyncFileProvider implements ResourceProvider, CompletionHandler<Integer,
         return true;
     }
 
+    @Override
+    public InputStream newInputStream() throws IOException {
+        return Files.newInputStream(localPath, StandardOpenOption.READ);
+    }
+
     @Override
     public void sendTo(MuRequest request, MuResponse response, boolean sendBody, long maxLen) throws IOException {
         if (sendBody) {
-            this.maxLen = maxLen;
-            handle = request.handleAsync();
-            channel = AsynchronousFileChannel.open(localPath, StandardOpenOption.READ);
-            buf = ByteBuffer.allocate(8192);
-            channel.read(buf, curPos, handle, this);
+            FileChannel channel = FileChannel.open(localPath, StandardOpenOption.READ);
+            AsyncHandle handle;
+            long length;
+            try {
+                // for range requests, only part of the file is sent, and if the file grew since its size was read
+                // then no more than the declared length is sent
+                length = Math.min(maxLen, Math.min(metadata.size, channel.size()) - curPos);
+                handle = request.handleAsync();
+            } catch (IOException | RuntimeException e) {
+                closeChannelQuietly(channel);
+                throw e;
+            }
+            handle.writeFile(channel, curPos, length, error -> {
+                // if there was an error, the client probably disconnected... no big deal
+                closeChannelQuietly(channel);
+                handle.complete();
+            });
         }
     }
 
     @Override
-    public void completed(Integer bytesRead, Object a) {
-        buf.flip();
-        if (bytesRead == -1) {
-            handle.complete();
-            closeChannelQuietly();
-        } else {
-
-            // for range requests, more bytes may be read than should be written, so the write is limited
-            long remaining = maxLen - bytesSent;
-            if (remaining < buf.limit()) {
-                buf.limit((int) remaining);
-            }
-
-            handle.write(buf, error -> {
-                if (error == null) {
-                    buf.clear();
-                    curPos += bytesRead;
-                    bytesSent += bytesRead;
-                    channel.read(buf, curPos, null, AsyncFileProvider.this);
-                } else {
-                    // client probably disconnected... no big deal
-                    closeChannelQuietly();
-                    handle.complete();
-                }
-            });
+    public void sendRangesTo(MuRequest request, MuResponse response, MultipartByteRanges body) throws IOException {
+        FileChannel channel = FileChannel.open(localPath, StandardOpenOption.READ);
+        AsyncHandle handle;
+        try {
+            handle = request.handleAsync();
+        } catch (RuntimeException e) {
+            closeChannelQuietly(channel);
+            throw e;
         }
+        body.sendAsync(handle, (range, callback) -> handle.writeFile(channel, range.from, range.length(), callback), error -> {
+            closeChannelQuietly(channel);
+            handle.complete();
+        });
     }
 
-    private void closeChannelQuietly() {
+    private void closeChannelQuietly(FileChannel channel) {
         try {
             channel.close();
         } catch (IOException e) {
             log.debug("Error while closing file channel " + localPath, e);
         }
     }
-
-    @Override
-    public void failed(Throwable exc, Object a) {
-        log.info("File read failure for " + localPath, exc);
-        handle.complete(exc);
-    }
 }
 
 class ClasspathResourceProvider implements ResourceProvider {
@@ -256,25 +353,34 @@ class ClasspathResourceProvider implements ResourceProvider {
     private final Long fileSize;
     private final Date lastModified;
     private final Path path;
-    private final InputStream inputStream;
+    private final ContentHashCache hashCache;
+    private InputStream inputStream; // opened on first use, so that requests answered from headers alone do not open it
 
-    ClasspathResourceProvider(boolean exists, boolean isDir, Long fileSize, Date lastModified, Path path, InputStream inputStream) {
+    ClasspathResourceProvider(boolean exists, boolean isDir, Long fileSize, Date lastModified, Path path, ContentHashCache hashCache) {
         this.exists = exists;
         this.isDir = isDir;
         this.path = path;
-        this.inputStream = inputStream;
+        this.hashCache = hashCache;
         this.fileSize = isDir ? null : fileSize;
         this.lastModified = lastModified;
     }
 
-    ClasspathResourceProvider newWithInputStream() {
-        InputStream inputStream;
-        try {
-            inputStream = isDir ? null : Files.newInputStream(path, StandardOpenOption.READ);
-        } catch (IOException e) {
-            throw new MuException("Error while opening " + path + " from the classpath", e);
+    Path path() {
+        return path;
+    }
+
+    ClasspathResourceProvider newInstance() {
+        return new ClasspathResourceProvider(exists, isDir, fileSize, lastModified, path, hashCache);
+    }
+
+    private InputStream inputStream() throws IOException {
+        if (inputStream == null) {
+            if (isDir) {
+                throw new FileNotFoundException(path + " is not a file");
+            }
+            inputStream = Files.newInputStream(path, StandardOpenOption.READ);
         }
-        return new ClasspathResourceProvider(exists, isDir, fileSize, lastModified, path, inputStream);
+        return inputStream;
     }
 
     public boolean exists() {
@@ -296,6 +402,14 @@ class ClasspathResourceProvider implements ResourceProvider {
         return lastModified;
     }
 
+    @Override
+    public String etag() {
+        if (isDir || fileSize == null) {
+            return null;
+        }
+        return hashCache.etag(path, fileSize, lastModified, this::newInputStream);
+    }
+
     @Override
     public boolean skipIfPossible(long bytes) {
         if (bytes > 0) {
@@ -303,7 +417,7 @@ class ClasspathResourceProvider implements ResourceProvider {
             while (totalSkipped < bytes) {
                 long skipped;
                 try {
-                    skipped = inputStream.skip(bytes);
+                    skipped = inputStream().skip(bytes);
                 } catch (IOException e) {
                     return false;
                 }
@@ -316,11 +430,17 @@ class ClasspathResourceProvider implements ResourceProvider {
         return true;
     }
 
+    @Override
+    public InputStream newInputStream() throws IOException {
+        return Files.newInputStream(path, StandardOpenOption.READ);
+    }
+
     @Override
     public void sendTo(MuRequest request, MuResponse response, boolean sendBody, long maxLen) throws IOException {
         if (sendBody) {
 
-            try (OutputStream out = response.outputStream()) {
+            try (InputStream inputStream = inputStream();
+                 OutputStream out = response.outputStream()) {
                 byte[] buffer = new byte[8192];
                 long soFar = 0;
                 int read;
@@ -337,4 +457,36 @@ class ClasspathResourceProvider implements ResourceProvider {
         }
     }
 
+    @Override
+    public void sendRangesTo(MuRequest request, MuResponse response, MultipartByteRanges body) throws IOException {
+        try (InputStream inputStream = inputStream();
+             OutputStream out = response.outputStream()) {
+            byte[] buffer = new byte[8192];
+            long position = 0;
+            // the ranges are in order, so the stream only ever needs to move forwards
+            for (int i = 0; i < body.ranges.size(); i++) {
+                BytesRange range = body.ranges.get(i);
+                out.write(body.partHeader(i));
+                while (position < range.from) {
+                    long skipped = inputStream.skip(range.from - position);
+                    if (skipped <= 0) {
+                        throw new EOFException("Unexpected end of " + path);
+                    }
+                    position += skipped;
+                }
+                long remaining = range.length();
+                while (remaining > 0) {
+                    int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        throw new EOFException("Unexpected end of " + path);
+                    }
+                    out.write(buffer, 0, read);
+                    position += read;
+                    remaining -= read;
+                }
+            }
+            out.write(body.end());
+        }
+    }
+
 }
\ No newline at end of file
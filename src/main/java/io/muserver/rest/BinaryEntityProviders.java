@@ -14,6 +14,7 @@ import java.io.*;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 import static java.util.Arrays.asList;
@@ -28,7 +29,8 @@ class BinaryEntityProviders {
     static final List<MessageBodyWriter> binaryEntityWriters = asList(
         new StreamingOutputWriter(),
         new ByteArrayReaderWriter(),
-        new FileReaderWriter()
+        new FileReaderWriter(),
+        new PathWriter()
     );
 
     @Produces("*/*")
@@ -109,8 +111,40 @@ class BinaryEntityProviders {
 
         @Override
         public void writeTo(File file, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
-            try (FileInputStream fileInputStream = new FileInputStream(file)) {
-                Mutils.copy(fileInputStream, entityStream, 8192);
+            writeFile(file.toPath(), entityStream);
+        }
+    }
+
+    @Produces("*/*")
+    static class PathWriter implements MessageBodyWriter<Path> {
+
+        @Override
+        public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+            return Path.class.isAssignableFrom(type);
+        }
+
+        @Override
+        public long getSize(Path path, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+            try {
+                return Files.size(path);
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public void writeTo(Path path, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+            writeFile(path, entityStream);
+        }
+    }
+
+    private static void writeFile(Path file, OutputStream entityStream) throws IOException {
+        if (entityStream instanceof LazyAccessOutputStream) {
+            // not wrapped by a writer interceptor, so the file can go straight to the response
+            ((LazyAccessOutputStream) entityStream).sendFile(file);
+        } else {
+            try (InputStream in = Files.newInputStream(file)) {
+                Mutils.copy(in, entityStream, 8192);
             }
         }
     }
@@ -4,6 +4,7 @@ import io.muserver.MuResponse;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Path;
 
 /**
  * An output stream based on the request output stream, but if no methods are called then the output stream is never created.
@@ -30,6 +31,13 @@ class LazyAccessOutputStream extends OutputStream {
         muResponse.outputStream().flush();
     }
 
+    /**
+     * Sends a file straight to the response, so it can use zero-copy transfers rather than being copied through this stream.
+     */
+    void sendFile(Path file) throws IOException {
+        muResponse.sendFile(file);
+    }
+
     @Override
     public void close() throws IOException {
         muResponse.outputStream().close();
@@ -0,0 +1,122 @@
+package io.muserver.rest;
+
+import io.muserver.Mutils;
+
+import java.util.*;
+
+/**
+ * <p>An index of URI templates by the literal path segments that they start with, used to narrow down which
+ * templates could possibly match a path before running any regular expressions.</p>
+ * <p>Each item is stored at the node reached by its leading literal segments, so the template <code>/api/{id}</code>
+ * is stored under <code>api</code> and <code>/{id}</code> is stored at the root. Looking up a path walks down its
+ * segments as far as the tree allows and returns every item stored along the way, in the order the items were added.
+ * Those lists are built when the trie is compiled, so a lookup does not sort or merge anything.</p>
+ *
+ * @param <T> The type of item stored against each template
+ */
+class LiteralPrefixTrie<T> {
+
+    private final Node<T> root = new Node<>();
+    private int nextRank = 0;
+    private boolean compiled = false;
+
+    /**
+     * Adds an item. Items are returned from lookups in the order that they were added.
+     * @param pathTemplate The template, as given to a {@link javax.ws.rs.Path} annotation
+     * @param item The item to return for paths that may match the template
+     */
+    void add(String pathTemplate, T item) {
+        if (compiled) {
+            throw new IllegalStateException("Items cannot be added after the trie is compiled");
+        }
+        Node<T> node = root;
+        for (String segment : literalPrefix(pathTemplate)) {
+            node = node.children.computeIfAbsent(segment, s -> new Node<>());
+        }
+        node.items.add(new Ranked<>(nextRank++, item));
+    }
+
+    /**
+     * Builds the candidate list of every node. This must be called after all items are added and before any lookups.
+     * @return This trie
+     */
+    LiteralPrefixTrie<T> compile() {
+        root.compile(Collections.emptyList());
+        compiled = true;
+        return this;
+    }
+
+    /**
+     * @param rawPath A URL-encoded path, with or without a leading slash
+     * @return The items whose templates may match the path, in the order they were added. The list must not be changed.
+     */
+    List<T> candidates(String rawPath) {
+        Node<T> node = root;
+        int start = rawPath.startsWith("/") ? 1 : 0;
+        int length = rawPath.length();
+        while (start < length && !node.children.isEmpty()) {
+            int end = rawPath.indexOf('/', start);
+            if (end == -1) {
+                end = length;
+            }
+            Node<T> child = node.children.get(rawPath.substring(start, end));
+            if (child == null) {
+                break;
+            }
+            node = child;
+            start = end + 1;
+        }
+        return node.candidates;
+    }
+
+    /**
+     * Finds the leading segments of a template that contain no parameters, encoded in the same way as they are
+     * by {@link UriPattern#uriTemplateToRegex(String)}. Literals containing <code>%</code> end the prefix because
+     * the regex matches them leniently.
+     */
+    static List<String> literalPrefix(String pathTemplate) {
+        String template = UriPattern.trimSlashes(pathTemplate);
+        List<String> segments = new ArrayList<>();
+        if (template.isEmpty()) {
+            return segments;
+        }
+        for (String segment : template.split("/", -1)) {
+            if (segment.isEmpty() || segment.indexOf('{') != -1 || segment.indexOf('}') != -1 || segment.indexOf('%') != -1) {
+                break;
+            }
+            segments.add(Mutils.urlEncode(segment));
+        }
+        return segments;
+    }
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<>();
+        private final List<Ranked<T>> items = new ArrayList<>();
+        private List<T> candidates;
+
+        private void compile(List<Ranked<T>> inherited) {
+            List<Ranked<T>> merged = new ArrayList<>(inherited.size() + items.size());
+            merged.addAll(inherited);
+            merged.addAll(items);
+            merged.sort(Comparator.comparingInt(r -> r.rank));
+            List<T> values = new ArrayList<>(merged.size());
+            for (Ranked<T> r : merged) {
+                values.add(r.item);
+            }
+            candidates = Collections.unmodifiableList(values);
+            for (Node<T> child : children.values()) {
+                child.compile(merged);
+            }
+        }
+    }
+
+    private static class Ranked<T> {
+        private final int rank;
+        private final T item;
+
+        Ranked(int rank, T item) {
+            this.rank = rank;
+            this.item = item;
+        }
+    }
+}
@@ -10,8 +10,6 @@ import java.net.URI;
 import java.util.*;
 
 import static java.util.Collections.singletonList;
-import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toSet;
 
 /**
  * <p>
@@ -21,6 +19,11 @@ import static java.util.stream.Collectors.toSet;
  * Note that some of part 2 of this section, i.e. "Obtain the object that will handle the request and a set of candidate methods"
  * is skipped due to the fact that sub-resource locators are not supported in this implementation.
  * </p>
+ * <p>
+ * The sorting that the spec describes for each request is done once when the matcher is created. Root resource classes
+ * and sub-resource methods are held in sorted order in {@link LiteralPrefixTrie}s, so matching a request only runs the
+ * regular expressions of templates whose literal prefix matches the path, stopping at the first that matches.
+ * </p>
  */
 class RequestMatcher {
     static {
@@ -28,13 +31,32 @@ class RequestMatcher {
     }
 
     static final List<MediaType> WILDCARD_AS_LIST = singletonList(MediaType.WILDCARD_TYPE);
-    private final Set<ResourceClass> roots;
+    private final LiteralPrefixTrie<CompiledClass> rootTrie;
 
+    /**
+     * Compiles the resource classes so that requests can be matched without sorting or regex-matching every class.
+     * @param roots The root resource classes
+     */
     RequestMatcher(Set<ResourceClass> roots) {
         if (roots == null) {
             throw new NullPointerException("roots cannot be null");
         }
-        this.roots = roots;
+        // The sort is stable, so classes that the spec ranks equally stay in the order of the set
+        List<ResourceClass> sorted = new ArrayList<>(roots);
+        sorted.sort(RequestMatcher::compareClasses);
+
+        Map<String, CompiledGroup> groups = new LinkedHashMap<>();
+        LiteralPrefixTrie<CompiledClass> trie = new LiteralPrefixTrie<>();
+        for (ResourceClass rc : sorted) {
+            CompiledGroup group = groups.computeIfAbsent(rc.pathPattern.patternModuloVariableNames(), p -> new CompiledGroup());
+            CompiledClass cc = new CompiledClass(rc, group);
+            group.members.add(cc);
+            trie.add(rc.pathTemplate, cc);
+        }
+        for (CompiledGroup group : groups.values()) {
+            group.compile();
+        }
+        this.rootTrie = trie.compile();
     }
 
     public MatchedMethod findResourceMethod(Method httpMethod, String path, List<MediaType> acceptHeaders, String requestBodyContentType) throws NotAllowedException, NotAcceptableException, NotSupportedException, NotMatchedException {
@@ -45,113 +67,197 @@ class RequestMatcher {
     public Set<MatchedMethod> getMatchedMethodsForPath(String path) throws NotMatchedException {
         StepOneOutput stepOneOutput = stepOneIdentifyASetOfCandidateRootResourceClassesMatchingTheRequest(path);
         URI methodURI = stepOneOutput.unmatchedGroup == null ? null : URI.create(UriPattern.trimSlashes(stepOneOutput.unmatchedGroup));
-        return stepTwoObtainASetOfCandidateResourceMethodsForTheRequest(methodURI, stepOneOutput.candidates);
+        return stepTwoObtainASetOfCandidateResourceMethodsForTheRequest(methodURI, stepOneOutput);
     }
 
     StepOneOutput stepOneIdentifyASetOfCandidateRootResourceClassesMatchingTheRequest(String uri) throws NotMatchedException {
-        List<MatchedClass> candidates = roots.stream()
-            .map(rc -> new MatchedClass(rc, rc.pathPattern.matcher(uri)))
-            .filter(rc -> {
-                PathMatch matcher = rc.pathMatch;
-                // Remove members that do not match U.
-                // Remove members for which the final regular expression capturing group value is neither empty nor ‘/’ and the class has no subresource methods or locators.
-                return matcher.prefixMatches() && !(matcher.lastGroup() != null && rc.resourceClass.subResourceMethods().isEmpty());
-            })
-            .sorted((o1, o2) -> {
-                UriPattern o1pp = o1.resourceClass.pathPattern;
-                UriPattern o2pp = o2.resourceClass.pathPattern;
-                // "Sort E using the number of literal characters in each member as the primary key (descending order)"
-                int c = Integer.compare(o2pp.numberOfLiterals, o1pp.numberOfLiterals);
-                if (c == 0) {
-                    // "the number of capturing groups as a secondary key (descending order)"
-                    c = Integer.compare(o2pp.namedGroups().size(), o1pp.namedGroups().size());
-                }
-                if (c == 0) {
-                    // " and the number of capturing groups with non-default regular expressions (i.e. not ‘([ˆ/]+?)’) as the tertiary key (descending order)"
-                    c = Integer.compare(countNonDefaultGroups(o2.resourceClass.pathTemplate), countNonDefaultGroups(o1.resourceClass.pathTemplate));
-                }
-                return c;
-            })
-            .collect(toList());
-        if (candidates.isEmpty()) {
+        // The candidates are already sorted using the number of literal characters, then the number of capturing
+        // groups, and then the number of capturing groups with non-default regular expressions, so the first
+        // one that matches is Rmatch.
+        CompiledClass first = null;
+        PathMatch firstMatch = null;
+        for (CompiledClass candidate : rootTrie.candidates(uri)) {
+            PathMatch matcher = candidate.resourceClass.pathPattern.matcher(uri);
+            if (candidate.isCandidate(matcher)) {
+                first = candidate;
+                firstMatch = matcher;
+                break;
+            }
+        }
+        if (first == null) {
             throw new NotMatchedException();
         }
-        // Set Rmatch to be the first member of E and set U to be the value of the final capturing group of Rmatch when matched against U
-        UriPattern rMatch = candidates.get(0).resourceClass.pathPattern;
-        String u = rMatch.matcher(uri).lastGroup();
+        // Set U to be the value of the final capturing group of Rmatch when matched against U
+        String u = firstMatch.lastGroup();
 
         // Let C0 be the set of classes Z such that R(TZ) = Rmatch. By definition, all root resource classes in C0 must be annotated with the same URI path template modulo variable names
-
-        List<MatchedClass> c0 = candidates.stream()
-            .filter(rc -> rc.resourceClass.pathPattern.equalModuloVariableNames(rMatch))
-            .collect(toList());
-        return new StepOneOutput(u, c0);
+        List<MatchedClass> c0;
+        CompiledGroup group = first.group;
+        if (group.members.size() == 1) {
+            c0 = singletonList(new MatchedClass(first.resourceClass, firstMatch));
+        } else {
+            c0 = new ArrayList<>(group.members.size());
+            for (CompiledClass member : group.members) {
+                PathMatch matcher = member == first ? firstMatch : member.resourceClass.pathPattern.matcher(uri);
+                if (member.isCandidate(matcher)) {
+                    c0.add(new MatchedClass(member.resourceClass, matcher));
+                }
+            }
+        }
+        return new StepOneOutput(u, c0, group);
     }
 
-    private Set<MatchedMethod> stepTwoObtainASetOfCandidateResourceMethodsForTheRequest(URI relativeUri, List<MatchedClass> candidateClasses) throws NotMatchedException {
+    private Set<MatchedMethod> stepTwoObtainASetOfCandidateResourceMethodsForTheRequest(URI relativeUri, StepOneOutput stepOneOutput) throws NotMatchedException {
+        List<MatchedClass> candidateClasses = stepOneOutput.candidates;
         if (relativeUri == null) {
             // handle section 3.7.2 - 2(a)
-            Set<MatchedMethod> candidates = new HashSet<>();
+            Set<MatchedMethod> candidates = new LinkedHashSet<>();
             for (MatchedClass mc : candidateClasses) {
-                for (ResourceMethod resourceMethod : mc.resourceClass.resourceMethods) {
-                    if (!resourceMethod.isSubResource() && !resourceMethod.isSubResourceLocator()) {
-                        MatchedMethod matchedMethod = new MatchedMethod(mc, resourceMethod, true, mc.pathMatch.params(), mc.pathMatch);
-                        candidates.add(matchedMethod);
-                    }
+                for (ResourceMethod resourceMethod : stepOneOutput.group.rootMethods.get(mc.resourceClass)) {
+                    candidates.add(new MatchedMethod(mc, resourceMethod, true, mc.pathMatch.params(), mc.pathMatch));
                 }
             }
             if (!candidates.isEmpty()) {
                 return candidates;
             }
+            // there is no relative URI to match sub-resource methods against
+            throw new NotMatchedException();
         }
 
-        List<MatchedMethod> candidates = new ArrayList<>();
-        for (MatchedClass candidateClass : candidateClasses) {
-            for (ResourceMethod resourceMethod : candidateClass.resourceClass.resourceMethods) {
-                if (resourceMethod.isSubResource() || resourceMethod.isSubResourceLocator()) {
-                    if (relativeUri != null) {
-                        PathMatch matcher = resourceMethod.pathPattern.matcher(relativeUri);
-                        if (matcher.prefixMatches()) {
-                            Map<String, String> combinedParams = new HashMap<>(candidateClass.pathMatch.params());
-                            combinedParams.putAll(matcher.params());
-                            candidates.add(new MatchedMethod(candidateClass, resourceMethod, true, combinedParams, matcher));
-                        }
+        // The sub-resource methods of the group are already sorted in the order described in 3.7.2 - 2(f), so the
+        // first that matches gives the pattern that all the candidates share.
+        for (CompiledMethod candidate : stepOneOutput.group.subResourceTrie.candidates(relativeUri.getRawPath())) {
+            if (matchedClassFor(candidateClasses, candidate.resourceMethod.resourceClass) == null) {
+                continue;
+            }
+            PathMatch matcher = candidate.resourceMethod.pathPattern.matcher(relativeUri);
+            if (matcher.prefixMatches()) {
+                Set<MatchedMethod> m = new LinkedHashSet<>();
+                for (CompiledMethod samePattern : candidate.samePattern) {
+                    MatchedClass candidateClass = matchedClassFor(candidateClasses, samePattern.resourceMethod.resourceClass);
+                    if (candidateClass != null) {
+                        Map<String, String> combinedParams = new HashMap<>(candidateClass.pathMatch.params());
+                        combinedParams.putAll(matcher.params());
+                        m.add(new MatchedMethod(candidateClass, samePattern.resourceMethod, true, combinedParams, matcher));
                     }
                 }
+                return m;
             }
         }
+        throw new NotMatchedException();
+    }
 
-        candidates.sort((o1, o2) -> {
-            ResourceMethod rm1 = o1.resourceMethod;
-            ResourceMethod rm2 = o2.resourceMethod;
-            // "Sort E using the number of literal characters4 in each member as the primary key (descending order)"
-            int c = Integer.compare(rm2.pathPattern.numberOfLiterals, rm1.pathPattern.numberOfLiterals);
-            if (c == 0) {
-                // "the number of capturing groups as a secondary key (descending order)"
-                c = Integer.compare(rm2.pathPattern.namedGroups().size(), rm1.pathPattern.namedGroups().size());
+    private static MatchedClass matchedClassFor(List<MatchedClass> candidateClasses, ResourceClass resourceClass) {
+        for (MatchedClass candidateClass : candidateClasses) {
+            if (candidateClass.resourceClass == resourceClass) {
+                return candidateClass;
             }
-            if (c == 0) {
-                // " and the number of capturing groups with non-default regular expressions (i.e. not ‘([ˆ/]+?)’) as the tertiary key (descending order)"
-                c = Integer.compare(countNonDefaultGroups(rm2.pathTemplate), countNonDefaultGroups(rm1.pathTemplate));
+        }
+        return null;
+    }
+
+    private static int compareClasses(ResourceClass o1, ResourceClass o2) {
+        UriPattern o1pp = o1.pathPattern;
+        UriPattern o2pp = o2.pathPattern;
+        // "Sort E using the number of literal characters in each member as the primary key (descending order)"
+        int c = Integer.compare(o2pp.numberOfLiterals, o1pp.numberOfLiterals);
+        if (c == 0) {
+            // "the number of capturing groups as a secondary key (descending order)"
+            c = Integer.compare(o2pp.namedGroups().size(), o1pp.namedGroups().size());
+        }
+        if (c == 0) {
+            // " and the number of capturing groups with non-default regular expressions (i.e. not ‘([ˆ/]+?)’) as the tertiary key (descending order)"
+            c = Integer.compare(countNonDefaultGroups(o2.pathTemplate), countNonDefaultGroups(o1.pathTemplate));
+        }
+        return c;
+    }
+
+    private static int compareMethods(ResourceMethod rm1, ResourceMethod rm2) {
+        // "Sort E using the number of literal characters4 in each member as the primary key (descending order)"
+        int c = Integer.compare(rm2.pathPattern.numberOfLiterals, rm1.pathPattern.numberOfLiterals);
+        if (c == 0) {
+            // "the number of capturing groups as a secondary key (descending order)"
+            c = Integer.compare(rm2.pathPattern.namedGroups().size(), rm1.pathPattern.namedGroups().size());
+        }
+        if (c == 0) {
+            // " and the number of capturing groups with non-default regular expressions (i.e. not ‘([ˆ/]+?)’) as the tertiary key (descending order)"
+            c = Integer.compare(countNonDefaultGroups(rm2.pathTemplate), countNonDefaultGroups(rm1.pathTemplate));
+        }
+        if (c == 0) {
+            // "and the source of each member as quaternary key sorting those derived from sub-resource methods ahead of those derived from sub-resource locators"
+            // TODO: test that this is around the right way
+            c = Boolean.compare(rm1.isSubResourceLocator(), rm2.isSubResourceLocator());
+        }
+        return c;
+    }
+
+    /**
+     * A root resource class along with the group of classes that share its path template modulo variable names.
+     */
+    private static class CompiledClass {
+        final ResourceClass resourceClass;
+        final CompiledGroup group;
+        final boolean hasSubResourceMethods;
+
+        CompiledClass(ResourceClass resourceClass, CompiledGroup group) {
+            this.resourceClass = resourceClass;
+            this.group = group;
+            this.hasSubResourceMethods = !resourceClass.subResourceMethods().isEmpty();
+        }
+
+        boolean isCandidate(PathMatch matcher) {
+            // Remove members that do not match U.
+            // Remove members for which the final regular expression capturing group value is neither empty nor ‘/’ and the class has no subresource methods or locators.
+            return matcher.prefixMatches() && !(matcher.lastGroup() != null && !hasSubResourceMethods);
+        }
+    }
+
+    /**
+     * The root resource classes with the same path template modulo variable names, which is the most that C0 can
+     * contain, and the resource methods of all of them.
+     */
+    private static class CompiledGroup {
+        final List<CompiledClass> members = new ArrayList<>();
+        final Map<ResourceClass, List<ResourceMethod>> rootMethods = new HashMap<>();
+        final LiteralPrefixTrie<CompiledMethod> subResourceTrie = new LiteralPrefixTrie<>();
+
+        void compile() {
+            List<ResourceMethod> subResourceMethods = new ArrayList<>();
+            for (CompiledClass member : members) {
+                List<ResourceMethod> methods = new ArrayList<>();
+                for (ResourceMethod resourceMethod : member.resourceClass.resourceMethods) {
+                    if (resourceMethod.isSubResource() || resourceMethod.isSubResourceLocator()) {
+                        subResourceMethods.add(resourceMethod);
+                    } else {
+                        methods.add(resourceMethod);
+                    }
+                }
+                rootMethods.put(member.resourceClass, methods);
             }
-            if (c == 0) {
-                // "and the source of each member as quaternary key sorting those derived from sub-resource methods ahead of those derived from sub-resource locators"
-                // TODO: test that this is around the right way
-                c = Boolean.compare(o1.resourceMethod.isSubResourceLocator(), o2.resourceMethod.isSubResourceLocator());
+            subResourceMethods.sort(RequestMatcher::compareMethods);
+
+            Map<UriPattern, List<CompiledMethod>> byPattern = new HashMap<>();
+            for (ResourceMethod resourceMethod : subResourceMethods) {
+                List<CompiledMethod> samePattern = byPattern.computeIfAbsent(resourceMethod.pathPattern, p -> new ArrayList<>());
+                CompiledMethod compiledMethod = new CompiledMethod(resourceMethod, samePattern);
+                samePattern.add(compiledMethod);
+                subResourceTrie.add(resourceMethod.pathTemplate, compiledMethod);
             }
-            return c;
-        });
-
-        if (candidates.isEmpty()) {
-            throw new NotMatchedException();
+            subResourceTrie.compile();
         }
+    }
 
-        UriPattern matcher = candidates.get(0).resourceMethod.pathPattern;
-        Set<MatchedMethod> m = candidates.stream().filter(rm -> rm.resourceMethod.pathPattern.equals(matcher)).collect(toSet());
-        if (!m.isEmpty()) {
-            return m;
+    private static class CompiledMethod {
+        final ResourceMethod resourceMethod;
+        final List<CompiledMethod> samePattern;
+
+        /**
+         * @param samePattern The sub-resource methods of the group with the same path pattern as this one, including this one
+         */
+        CompiledMethod(ResourceMethod resourceMethod, List<CompiledMethod> samePattern) {
+            this.resourceMethod = resourceMethod;
+            this.samePattern = samePattern;
         }
-        throw new NotMatchedException();
     }
 
     static class MatchedClass {
@@ -190,17 +296,26 @@ class RequestMatcher {
     }
 
     private MatchedMethod stepThreeIdentifyTheMethodThatWillHandleTheRequest(Method method, Set<MatchedMethod> candidates, String requestBodyContentType, List<MediaType> acceptHeaders) throws NotAllowedException, NotAcceptableException, NotSupportedException {
-        List<MatchedMethod> result = candidates.stream().filter(rm -> rm.resourceMethod.httpMethod == method).collect(toList());
+        List<MatchedMethod> result = new ArrayList<>(candidates.size());
+        for (MatchedMethod candidate : candidates) {
+            if (candidate.resourceMethod.httpMethod == method) {
+                result.add(candidate);
+            }
+        }
         if (result.isEmpty()) {
-            List<String> allowed = candidates.stream().map(c -> c.resourceMethod.httpMethod.name()).distinct().collect(toList());
-            throw new NotAllowedException(allowed.get(0), allowed.subList(1, allowed.size()).toArray(new String[0]));
+            Set<String> allowed = new LinkedHashSet<>();
+            for (MatchedMethod candidate : candidates) {
+                allowed.add(candidate.resourceMethod.httpMethod.name());
+            }
+            String[] allowedArray = allowed.toArray(new String[0]);
+            throw new NotAllowedException(allowedArray[0], Arrays.copyOfRange(allowedArray, 1, allowedArray.length));
         }
 
         // The media type of the request entity body (if any) is a supported input data format (see Section3.5).
         // If no methods support the media type of the request entity body an implementation MUST generate a
         // NotSupportedException (415 status) and no entity.
         MediaType requestBodyMediaType = requestBodyContentType == null ? MediaTypeHeaderDelegate.NONE : MediaType.valueOf(requestBodyContentType);
-        result = result.stream().filter(rm -> rm.resourceMethod.canConsume(requestBodyMediaType)).collect(toList());
+        result.removeIf(rm -> !rm.resourceMethod.canConsume(requestBodyMediaType));
         if (result.isEmpty()) {
             throw new NotSupportedException();
         }
@@ -209,7 +324,7 @@ class RequestMatcher {
         // If no methods support one of the acceptable response entity body media types an implementation MUST generate a
         // NotAcceptableException (406 status) and no entity.
         List<MediaType> clientAccepts = acceptHeaders.isEmpty() ? WILDCARD_AS_LIST : acceptHeaders;
-        result = result.stream().filter(rm -> rm.resourceMethod.canProduceFor(clientAccepts)).collect(toList());
+        result.removeIf(rm -> !rm.resourceMethod.canProduceFor(clientAccepts));
         if (result.isEmpty()) {
             throw new NotAcceptableException();
         }
@@ -218,37 +333,60 @@ class RequestMatcher {
             return result.get(0);
         }
 
+        // Pick the best by request body type and then by response type, keeping the first of any that are equally good
         List<MediaType> requestBodyTypeAsList = Collections.singletonList(requestBodyMediaType);
-        return result.stream()
-            .max((o1, o2) -> {
-                int compare = bestMediaType(requestBodyTypeAsList, o1.resourceMethod.effectiveConsumes).compareTo(bestMediaType(requestBodyTypeAsList, o2.resourceMethod.effectiveConsumes));
-                if (compare != 0) {
-                    return compare;
+        MatchedMethod best = null;
+        CombinedMediaType bestConsumes = null;
+        CombinedMediaType bestProduces = null;
+        for (MatchedMethod candidate : result) {
+            CombinedMediaType consumes = bestMediaType(requestBodyTypeAsList, candidate.resourceMethod.effectiveConsumes);
+            CombinedMediaType produces = bestMediaType(clientAccepts, candidate.resourceMethod.effectiveProduces);
+            if (best != null) {
+                int compare = consumes.compareTo(bestConsumes);
+                if (compare == 0) {
+                    compare = produces.compareTo(bestProduces);
                 }
-                return bestMediaType(clientAccepts, o1.resourceMethod.effectiveProduces).compareTo(bestMediaType(clientAccepts, o2.resourceMethod.effectiveProduces));
-            }).get();
-
+                if (compare <= 0) {
+                    continue;
+                }
+            }
+            best = candidate;
+            bestConsumes = consumes;
+            bestProduces = produces;
+        }
+        return best;
     }
 
-
+    /**
+     * @return The combination of a requested type and a server type that sorts first, or the first of those that sort equally
+     */
     private static CombinedMediaType bestMediaType(List<MediaType> requestedTypes, List<MediaType> serverProvided) {
-        return serverProvided.stream()
-            .map(serverType -> requestedTypes.stream().map(clientType -> CombinedMediaType.s(clientType, serverType)).max(Comparator.reverseOrder()).get())
-            .max(Comparator.reverseOrder()).get();
+        CombinedMediaType best = null;
+        for (MediaType serverType : serverProvided) {
+            for (MediaType clientType : requestedTypes) {
+                CombinedMediaType combined = CombinedMediaType.s(clientType, serverType);
+                if (best == null || combined.compareTo(best) < 0) {
+                    best = combined;
+                }
+            }
+        }
+        return best;
     }
 
     static class StepOneOutput {
         final String unmatchedGroup;
         final List<RequestMatcher.MatchedClass> candidates;
+        private final CompiledGroup group;
 
-        StepOneOutput(String unmatchedGroup, List<RequestMatcher.MatchedClass> candidates) {
+        private StepOneOutput(String unmatchedGroup, List<RequestMatcher.MatchedClass> candidates, CompiledGroup group) {
             this.unmatchedGroup = unmatchedGroup;
             this.candidates = candidates;
+            this.group = group;
         }
 
     }
 
-    private int countNonDefaultGroups(String pathTemplate) {
+    private static int countNonDefaultGroups(String pathTemplate) {
         int count = 0;
         for (String bit : pathTemplate.split("/")) {
             if (bit.startsWith("{") && bit.endsWith("}") && bit.contains(":")) {
@@ -188,9 +188,14 @@ public class UriPattern {
     }
 
     boolean equalModuloVariableNames(UriPattern other) {
-        String regex = "\\(\\?<[^>]+>";
-        String thisNormalised = this.pattern().replaceAll(regex, "(");
-        String otherNormalised = other.pattern().replaceAll(regex, "(");
-        return thisNormalised.equals(otherNormalised);
+        return this.patternModuloVariableNames().equals(other.patternModuloVariableNames());
+    }
+
+    /**
+     * @return The regular expression with the names removed from its capturing groups, so that patterns which differ
+     * only by variable names are equal
+     */
+    String patternModuloVariableNames() {
+        return pattern().replaceAll("\\(\\?<[^>]+>", "(");
     }
 }
@@ -0,0 +1,82 @@
+import io.muserver.Method;
+import io.muserver.MuServer;
+import io.muserver.MuServerBuilder;
+import okhttp3.*;
+import scaffolding.ClientUtils;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.muserver.MuServerBuilder.httpServer;
+
+/**
+ * Compares the default handler thread pool against virtual threads for requests that block. Each request
+ * sleeps for a fixed time to simulate a slow downstream call. Run the main method with the test classpath on
+ * Java 21 or later to see a difference, as on older versions both runs use the thread pool.
+ * <p>Optional arguments: number of requests (default 2000), then milliseconds each request blocks for (default 200).</p>
+ */
+public class VirtualThreadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int blockMillis = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        System.out.println("Java " + System.getProperty("java.version") + ": " + requests + " requests that each block for " + blockMillis + "ms");
+
+        // warm up both modes before measuring
+        run(httpServer(), requests / 4, blockMillis);
+        run(httpServer().withVirtualThreads(true), requests / 4, blockMillis);
+
+        long poolMillis = run(httpServer(), requests, blockMillis);
+        System.out.println("Default thread pool: " + poolMillis + "ms");
+        long virtualMillis = run(httpServer().withVirtualThreads(true), requests, blockMillis);
+        System.out.println("Virtual threads:     " + virtualMillis + "ms");
+        System.exit(0);
+    }
+
+    private static long run(MuServerBuilder builder, int requests, int blockMillis) throws Exception {
+        MuServer server = builder
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                Thread.sleep(blockMillis);
+                response.write("done");
+            })
+            .start();
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(requests);
+        dispatcher.setMaxRequestsPerHost(requests);
+        OkHttpClient client = ClientUtils.client.newBuilder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(requests, 1, TimeUnit.MINUTES))
+            .readTimeout(5, TimeUnit.MINUTES)
+            .build();
+        CountDownLatch finished = new CountDownLatch(requests);
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < requests; i++) {
+            client.newCall(ClientUtils.request(server.uri()).build()).enqueue(new Callback() {
+                public void onFailure(Call call, IOException e) {
+                    failures.incrementAndGet();
+                    finished.countDown();
+                }
+
+                public void onResponse(Call call, Response response) {
+                    if (response.code() != 200) {
+                        failures.incrementAndGet();
+                    }
+                    response.close();
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+        long duration = System.currentTimeMillis() - start;
+        if (failures.get() > 0) {
+            System.out.println(failures.get() + " requests failed");
+        }
+        dispatcher.executorService().shutdownNow();
+        client.connectionPool().evictAll();
+        server.stop();
+        return duration;
+    }
+}
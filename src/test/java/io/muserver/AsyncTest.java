@@ -313,6 +313,50 @@ public class AsyncTest {
     }
 
 
+    @Test
+    public void requestBodiesCanBeReadWithDemandDrivenSubscribers() throws Exception {
+        byte[] bytes = StringUtils.randomBytes(2 * 1024 * 1024);
+        server = ServerUtils.httpsServerForTest()
+            .withRequestBodyBufferSize(8192)
+            .addHandler(Method.POST, "/echo", (request, response, pathParams) -> {
+                response.contentType(ContentTypes.APPLICATION_OCTET_STREAM);
+                AsyncHandle handle = request.handleAsync();
+                handle.subscribeToRequestBody(new RequestBodySubscriber() {
+                    private RequestBodySubscription subscription;
+
+                    public void onSubscribe(RequestBodySubscription subscription) {
+                        this.subscription = subscription;
+                        subscription.request(1);
+                    }
+
+                    public void onNext(ByteBuffer buffer) {
+                        handle.write(buffer, error -> {
+                            if (error == null) {
+                                subscription.request(1);
+                            } else {
+                                subscription.cancel();
+                                handle.complete(error);
+                            }
+                        });
+                    }
+
+                    public void onError(Throwable t) {
+                        handle.complete(t);
+                    }
+
+                    public void onComplete() {
+                        handle.complete();
+                    }
+                });
+            })
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/echo"))
+            .post(RequestBody.create(MediaType.get("application/octet-stream"), bytes)))) {
+            assertThat(resp.code(), equalTo(200));
+            assertThat(resp.body().bytes(), equalTo(bytes));
+        }
+    }
+
     @After
     public void destroy() {
         scaffolding.MuAssert.stopAndCheck(server);
@@ -1,8 +1,10 @@
 package io.muserver;
 
+import okhttp3.Protocol;
 import okhttp3.Response;
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import scaffolding.MuAssert;
 import scaffolding.ServerUtils;
@@ -10,6 +12,9 @@ import scaffolding.ServerUtils;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.ProtocolException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.concurrent.CountDownLatch;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -23,6 +28,51 @@ public class FixedLengthTest {
     private StringBuilder errors = new StringBuilder();
     private CountDownLatch errorSetLatch = new CountDownLatch(1);
 
+    @Test
+    public void filesAndFileRegionsAreSentWithAContentLengthOverHttp1() throws IOException {
+        server = fileServer(MuServerBuilder.httpServer());
+        try (Response resp = call(request(server.uri().resolve("/whole")))) {
+            assertThat(resp.protocol(), is(Protocol.HTTP_1_1));
+            assertThat(resp.header("Content-Length"), is("62"));
+            assertThat(resp.body().string(), is("0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/region")))) {
+            assertThat(resp.header("Content-Length"), is("26"));
+            assertThat(resp.body().string(), is("abcdefghijklmnopqrstuvwxyz"));
+        }
+    }
+
+    @Test
+    public void filesAndFileRegionsAreSentWithAContentLengthOverHttp2() throws IOException {
+        Assume.assumeTrue("HTTP2 is not available on this JVM", Http2ConfigBuilder.http2EnabledIfAvailable().build().enabled);
+        server = fileServer(ServerUtils.httpsServerForTest());
+        try (Response resp = call(request(server.uri().resolve("/whole")))) {
+            assertThat(resp.protocol(), is(Protocol.HTTP_2));
+            assertThat(resp.header("Content-Length"), is("62"));
+            assertThat(resp.body().string(), is("0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/region")))) {
+            assertThat(resp.header("Content-Length"), is("26"));
+            assertThat(resp.body().string(), is("abcdefghijklmnopqrstuvwxyz"));
+        }
+    }
+
+    private static MuServer fileServer(MuServerBuilder builder) {
+        Path file = Paths.get("src/test/resources/sample-static/alphanumerics.txt");
+        return builder
+            .addHandler(Method.GET, "/whole", (req, resp, pp) -> {
+                resp.contentType("text/plain");
+                resp.sendFile(file);
+            })
+            .addHandler(Method.GET, "/region", (req, resp, pp) -> {
+                resp.contentType("text/plain");
+                try (FileChannel channel = FileChannel.open(file)) {
+                    resp.sendFile(channel, 10, 26);
+                }
+            })
+            .start();
+    }
+
     @Test
     public void ifMoreThanDeclaredAreSentThenAnExceptionIsThrownAndConnectionIsClosedForHttp1() throws IOException {
         server = ServerUtils.httpsServerForTest()
@@ -1,18 +1,23 @@
 package io.muserver;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -24,7 +29,7 @@ public class GrowableByteBufferInputStreamTest {
 
     @Test
     public void itCanHaveStuffAddedAsyncyAndClosedButReadInASyncManner() throws IOException {
-        GrowableByteBufferInputStream stream = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE);
+        GrowableByteBufferInputStream stream = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE, Long.MAX_VALUE, new RequestBodyBudget(Long.MAX_VALUE), null);
 
         int totalSize = 0;
         List<ByteBuffer> generated = new ArrayList<>();
@@ -73,7 +78,7 @@ public class GrowableByteBufferInputStreamTest {
             generated.add(buffer);
         }
 
-        GrowableByteBufferInputStream stream = new GrowableByteBufferInputStream(10000, totalSize - 1L);
+        GrowableByteBufferInputStream stream = new GrowableByteBufferInputStream(10000, totalSize - 1L, Long.MAX_VALUE, new RequestBodyBudget(Long.MAX_VALUE), null);
 
         stream.handOff(Unpooled.wrappedBuffer(generated.get(0)), DoneCallback.NoOp);
 
@@ -88,7 +93,7 @@ public class GrowableByteBufferInputStreamTest {
 
     @Test
     public void itCanBeSwitchedToListenerMode() throws InterruptedException {
-        GrowableByteBufferInputStream gb = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE);
+        GrowableByteBufferInputStream gb = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE, Long.MAX_VALUE, new RequestBodyBudget(Long.MAX_VALUE), null);
         List<Throwable> errors = new ArrayList<>();
         List<ByteBuffer> sent = new ArrayList<>();
         for (int i = 0; i < 100; i++) {
@@ -146,6 +151,223 @@ public class GrowableByteBufferInputStreamTest {
         assertThat(received, equalTo(sent));
     }
 
+    @Test
+    public void buffersAreRetainedUntilReadAndThenReleased() throws IOException {
+        GrowableByteBufferInputStream stream = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE, Long.MAX_VALUE, new RequestBodyBudget(Long.MAX_VALUE), null);
+        ByteBuf data = Unpooled.copiedBuffer("Hello world", StandardCharsets.UTF_8);
+        AtomicInteger consumed = new AtomicInteger();
+        stream.handOff(data, error -> consumed.incrementAndGet());
+        data.release(); // the caller's reference
+        assertThat(data.refCnt(), is(1));
+        stream.close();
+
+        byte[] buffer = new byte[6];
+        assertThat(stream.read(buffer), is(6));
+        assertThat(data.refCnt(), is(1));
+        assertThat(consumed.get(), is(0));
+        assertThat(stream.read(buffer), is(5));
+        assertThat(data.refCnt(), is(0));
+        assertThat(consumed.get(), is(1));
+        assertThat(stream.read(buffer), is(-1));
+    }
+
+    @Test
+    public void readingIsPausedWhenTooMuchDataIsUnconsumedAndResumedWhenConsumed() throws IOException {
+        AtomicInteger resumes = new AtomicInteger();
+        GrowableByteBufferInputStream stream = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE, 100, new RequestBodyBudget(Long.MAX_VALUE), resumes::incrementAndGet);
+        assertThat(stream.handOff(Unpooled.wrappedBuffer(new byte[60]), DoneCallback.NoOp), is(true));
+        assertThat(stream.handOff(Unpooled.wrappedBuffer(new byte[60]), DoneCallback.NoOp), is(false));
+        assertThat(stream.bufferedBytes(), is(120L));
+
+        byte[] buffer = new byte[30];
+        assertThat(stream.read(buffer), is(30));
+        assertThat(resumes.get(), is(0));
+        assertThat(stream.read(buffer), is(30));
+        assertThat(stream.bufferedBytes(), is(60L));
+        assertThat(resumes.get(), is(1));
+
+        assertThat(stream.handOff(Unpooled.wrappedBuffer(new byte[10]), DoneCallback.NoOp), is(true));
+    }
+
+    @Test
+    public void discardingReleasesUnreadDataAndResumesReading() throws IOException {
+        AtomicInteger resumes = new AtomicInteger();
+        GrowableByteBufferInputStream stream = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE, 10, new RequestBodyBudget(Long.MAX_VALUE), resumes::incrementAndGet);
+        ByteBuf first = Unpooled.copiedBuffer(new byte[20]);
+        ByteBuf second = Unpooled.copiedBuffer(new byte[20]);
+        assertThat(stream.handOff(first, DoneCallback.NoOp), is(false));
+        stream.handOff(second, DoneCallback.NoOp);
+        first.release();
+        second.release();
+        assertThat(stream.read(new byte[5]), is(5));
+
+        stream.discard();
+        assertThat(first.refCnt(), is(0));
+        assertThat(second.refCnt(), is(0));
+        assertThat(stream.bufferedBytes(), is(0L));
+        assertThat(resumes.get(), is(1));
+
+        AtomicInteger consumedAfterDiscard = new AtomicInteger();
+        ByteBuf late = Unpooled.copiedBuffer(new byte[20]);
+        assertThat(stream.handOff(late, error -> consumedAfterDiscard.incrementAndGet()), is(true));
+        assertThat(late.refCnt(), is(1));
+        assertThat(consumedAfterDiscard.get(), is(1));
+        late.release();
+        try {
+            stream.read(new byte[5]);
+            Assert.fail("Should have failed");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("no longer available"));
+        }
+    }
+
+    @Test
+    public void theServerWideBudgetPausesAnyStreamAndResumesWhenAnotherIsConsumed() throws IOException {
+        RequestBodyBudget budget = new RequestBodyBudget(100);
+        AtomicInteger firstResumes = new AtomicInteger();
+        AtomicInteger secondResumes = new AtomicInteger();
+        GrowableByteBufferInputStream first = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE, Long.MAX_VALUE, budget, firstResumes::incrementAndGet);
+        GrowableByteBufferInputStream second = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE, Long.MAX_VALUE, budget, secondResumes::incrementAndGet);
+        assertThat(first.handOff(Unpooled.wrappedBuffer(new byte[60]), DoneCallback.NoOp), is(true));
+        assertThat(second.handOff(Unpooled.wrappedBuffer(new byte[60]), DoneCallback.NoOp), is(false));
+        assertThat(budget.inUse(), is(120L));
+        assertThat(budget.pauses(), is(1L));
+
+        assertThat(first.read(new byte[60]), is(60));
+        assertThat(budget.inUse(), is(60L));
+        assertThat(firstResumes.get(), is(0));
+        assertThat(secondResumes.get(), is(1));
+
+        second.discard();
+        assertThat(budget.inUse(), is(0L));
+        assertThat(secondResumes.get(), is(1));
+    }
+
+    @Test
+    public void subscribersOnlyReceiveDataTheyAskFor() throws IOException {
+        AtomicInteger resumes = new AtomicInteger();
+        GrowableByteBufferInputStream stream = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE, 100, new RequestBodyBudget(Long.MAX_VALUE), resumes::incrementAndGet);
+        List<String> events = new ArrayList<>();
+        RequestBodySubscription[] subscription = new RequestBodySubscription[1];
+        stream.handOff(Unpooled.copiedBuffer("Hello", StandardCharsets.UTF_8), DoneCallback.NoOp);
+        stream.subscribe(new RequestBodySubscriber() {
+            public void onSubscribe(RequestBodySubscription s) {
+                subscription[0] = s;
+            }
+            public void onNext(ByteBuffer buffer) {
+                events.add(StandardCharsets.UTF_8.decode(buffer).toString());
+            }
+            public void onError(Throwable t) {
+                events.add("error " + t);
+            }
+            public void onComplete() {
+                events.add("complete");
+            }
+        });
+        assertThat(stream.handOff(Unpooled.wrappedBuffer(new byte[100]), DoneCallback.NoOp), is(false));
+        assertThat(events, is(empty()));
+
+        subscription[0].request(1);
+        assertThat(events, contains("Hello"));
+        assertThat(resumes.get(), is(0));
+        subscription[0].request(1);
+        assertThat(events, hasSize(2));
+        assertThat(resumes.get(), is(1));
+        assertThat(stream.bufferedBytes(), is(0L));
+
+        stream.handOff(Unpooled.copiedBuffer(" world", StandardCharsets.UTF_8), DoneCallback.NoOp);
+        stream.close();
+        assertThat(events, hasSize(2));
+        subscription[0].request(Long.MAX_VALUE);
+        subscription[0].request(Long.MAX_VALUE);
+        assertThat(events.subList(2, events.size()), contains(" world", "complete"));
+    }
+
+    @Test
+    public void discardingWhileASubscriberHasDemandEndsTheSubscriptionWithAnError() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            GrowableByteBufferInputStream stream = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE, Long.MAX_VALUE, new RequestBodyBudget(Long.MAX_VALUE), null);
+            List<ByteBuf> sent = new ArrayList<>();
+            for (int j = 0; j < 100; j++) {
+                ByteBuf buf = Unpooled.copiedBuffer(new byte[1000]);
+                stream.handOff(buf, DoneCallback.NoOp);
+                buf.release();
+                sent.add(buf);
+            }
+            List<Throwable> errors = new CopyOnWriteArrayList<>();
+            CountDownLatch ended = new CountDownLatch(1);
+            CountDownLatch receiving = new CountDownLatch(10);
+            RequestBodySubscription[] subscription = new RequestBodySubscription[1];
+            stream.subscribe(new RequestBodySubscriber() {
+                public void onSubscribe(RequestBodySubscription s) {
+                    subscription[0] = s;
+                }
+                public void onNext(ByteBuffer buffer) {
+                    receiving.countDown();
+                }
+                public void onError(Throwable t) {
+                    errors.add(t);
+                    ended.countDown();
+                }
+                public void onComplete() {
+                    ended.countDown();
+                }
+            });
+            Future<?> requester = executor.submit(() -> {
+                while (ended.getCount() > 0) {
+                    subscription[0].request(1);
+                }
+            });
+            // discards while the subscriber is part way through the body and asking for more
+            receiving.await();
+            stream.discard();
+            requester.get(10, TimeUnit.SECONDS);
+            assertThat("Timed out waiting for the subscriber to be told", ended.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(errors, contains(instanceOf(IOException.class)));
+            for (ByteBuf buf : sent) {
+                assertThat(buf.refCnt(), is(0));
+            }
+        }
+    }
+
+    @Test
+    public void cancellingWhileDemandIsPendingReleasesTheBodyAndEndsTheSubscription() throws IOException {
+        GrowableByteBufferInputStream stream = new GrowableByteBufferInputStream(10000, Long.MAX_VALUE, Long.MAX_VALUE, new RequestBodyBudget(Long.MAX_VALUE), null);
+        List<String> events = new ArrayList<>();
+        RequestBodySubscription[] subscription = new RequestBodySubscription[1];
+        stream.subscribe(new RequestBodySubscriber() {
+            public void onSubscribe(RequestBodySubscription s) {
+                subscription[0] = s;
+            }
+            public void onNext(ByteBuffer buffer) {
+                events.add("next");
+            }
+            public void onError(Throwable t) {
+                events.add("error");
+            }
+            public void onComplete() {
+                events.add("complete");
+            }
+        });
+        subscription[0].request(2);
+        ByteBuf first = Unpooled.copiedBuffer("Hello", StandardCharsets.UTF_8);
+        stream.handOff(first, DoneCallback.NoOp);
+        first.release();
+        assertThat(events, contains("next"));
+
+        subscription[0].cancel();
+        ByteBuf second = Unpooled.copiedBuffer(" world", StandardCharsets.UTF_8);
+        AtomicInteger consumed = new AtomicInteger();
+        stream.handOff(second, error -> consumed.incrementAndGet());
+        second.release();
+        stream.close();
+        assertThat(first.refCnt(), is(0));
+        assertThat(second.refCnt(), is(0));
+        assertThat(consumed.get(), is(1));
+        assertThat(stream.bufferedBytes(), is(0L));
+        assertThat(events, contains("next"));
+    }
+
     private ByteBuffer randomBuffer() {
         int size = 1 + rng.nextInt(16384);
         byte[] bytes = new byte[size];
@@ -1,7 +1,11 @@
 package io.muserver;
 
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
 import okhttp3.Response;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Test;
 import scaffolding.MuAssert;
 import scaffolding.StringUtils;
@@ -9,8 +13,11 @@ import scaffolding.StringUtils;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collections;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static io.muserver.handlers.ResourceHandlerBuilder.classpathHandler;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -151,6 +158,124 @@ public class GzipTest {
         }
     }
 
+    @Test
+    public void http1RequestBodiesCanBeDecompressedWhenEnabled() throws IOException {
+        server = decompressingServer(MuServerBuilder.httpServer());
+        for (String encoding : new String[]{"gzip", "deflate"}) {
+            byte[] compressed = compress(encoding, LOTS_OF_TEXT.getBytes(UTF_8));
+            try (Response resp = call(request(server.uri().resolve("/"))
+                .header("Content-Encoding", encoding)
+                .post(RequestBody.create(MediaType.get("text/plain"), compressed)))) {
+                assertThat(resp.code(), is(200));
+                assertThat(resp.protocol(), is(Protocol.HTTP_1_1));
+                assertThat(resp.body().string(), equalTo("null " + LOTS_OF_TEXT.length() + " true"));
+            }
+        }
+    }
+
+    @Test
+    public void http2RequestBodiesCanBeDecompressedWhenEnabled() throws IOException {
+        Assume.assumeTrue("HTTP2 is not available on this JVM", Http2ConfigBuilder.http2EnabledIfAvailable().build().enabled);
+        server = decompressingServer(httpsServerForTest());
+        for (String encoding : new String[]{"gzip", "deflate"}) {
+            byte[] compressed = compress(encoding, LOTS_OF_TEXT.getBytes(UTF_8));
+            try (Response resp = call(request(server.uri().resolve("/"))
+                .header("Content-Encoding", encoding)
+                .post(RequestBody.create(MediaType.get("text/plain"), compressed)))) {
+                assertThat(resp.code(), is(200));
+                assertThat(resp.protocol(), is(Protocol.HTTP_2));
+                assertThat(resp.body().string(), equalTo("null " + LOTS_OF_TEXT.length() + " true"));
+            }
+        }
+    }
+
+    private static MuServer decompressingServer(MuServerBuilder builder) {
+        return builder
+            .withRequestDecompressionEnabled(true)
+            .addHandler(Method.POST, "/", (request, response, pathParams) -> {
+                String body = request.readBodyAsString();
+                response.write(request.headers().get("content-encoding") + " " + body.length() + " " + body.equals(LOTS_OF_TEXT));
+            })
+            .start();
+    }
+
+    @Test
+    public void compressedFormsCanBeRead() throws IOException {
+        server = httpsServerForTest()
+            .withRequestDecompressionEnabled(true)
+            .addHandler(Method.POST, "/", (request, response, pathParams) -> response.write(request.form().get("name")))
+            .start();
+        byte[] compressed = compress("gzip", "name=A%20value".getBytes(UTF_8));
+        try (Response resp = call(request(server.uri().resolve("/"))
+            .header("Content-Encoding", "gzip")
+            .post(RequestBody.create(MediaType.get("application/x-www-form-urlencoded"), compressed)))) {
+            assertThat(resp.body().string(), equalTo("A value"));
+        }
+    }
+
+    @Test
+    public void theMaxRequestSizeAppliesToTheDecompressedSizeOfHttp1Bodies() throws IOException {
+        server = limitedDecompressingServer(MuServerBuilder.httpServer());
+        try (Response resp = call(request(server.uri().resolve("/"))
+            .header("Content-Encoding", "gzip")
+            .post(RequestBody.create(MediaType.get("application/octet-stream"), compressedZeros())))) {
+            assertThat(resp.code(), is(413));
+            assertThat(resp.protocol(), is(Protocol.HTTP_1_1));
+        }
+    }
+
+    @Test
+    public void theMaxRequestSizeAppliesToTheDecompressedSizeOfHttp2Bodies() throws IOException {
+        Assume.assumeTrue("HTTP2 is not available on this JVM", Http2ConfigBuilder.http2EnabledIfAvailable().build().enabled);
+        server = limitedDecompressingServer(httpsServerForTest());
+        try (Response resp = call(request(server.uri().resolve("/"))
+            .header("Content-Encoding", "gzip")
+            .post(RequestBody.create(MediaType.get("application/octet-stream"), compressedZeros())))) {
+            assertThat(resp.code(), is(413));
+            assertThat(resp.protocol(), is(Protocol.HTTP_2));
+        }
+    }
+
+    private static MuServer limitedDecompressingServer(MuServerBuilder builder) {
+        return builder
+            .withRequestDecompressionEnabled(true)
+            .withMaxRequestSize(100000)
+            .addHandler(Method.POST, "/", (request, response, pathParams) -> {
+                request.readBodyAsString();
+            })
+            .start();
+    }
+
+    private static byte[] compressedZeros() throws IOException {
+        byte[] compressed = compress("gzip", new byte[1000000]);
+        assertThat(compressed.length, lessThan(100000));
+        return compressed;
+    }
+
+    @Test
+    public void compressedRequestBodiesArePassedThroughByDefault() throws IOException {
+        server = httpsServerForTest()
+            .addHandler(Method.POST, "/", (request, response, pathParams) -> {
+                byte[] body = Mutils.toByteArray(request.inputStream().get(), 8192);
+                response.write(request.headers().get("content-encoding") + " " + body.length);
+            })
+            .start();
+        byte[] compressed = compress("gzip", LOTS_OF_TEXT.getBytes(UTF_8));
+        try (Response resp = call(request(server.uri().resolve("/"))
+            .header("Content-Encoding", "gzip")
+            .post(RequestBody.create(MediaType.get("text/plain"), compressed)))) {
+            assertThat(resp.body().string(), equalTo("gzip " + compressed.length));
+        }
+    }
+
+    private static byte[] compress(String encoding, byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream out = encoding.equals("gzip") ? new GZIPOutputStream(baos) : new DeflaterOutputStream(baos)) {
+            out.write(data);
+        }
+        return baos.toByteArray();
+    }
+
     @After
     public void stopIt() {
         MuAssert.stopAndCheck(server);
@@ -0,0 +1,210 @@
+package io.muserver;
+
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.startsWith;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class HandlerExecutorTest {
+
+    private MuServer server;
+    private final ExecutorService clientExecutor = Executors.newCachedThreadPool();
+
+    @Test(timeout = 30000)
+    public void threadsAreAddedBeforeRequestsAreQueued() throws Exception {
+        CountDownLatch allStarted = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        server = ServerUtils.httpsServerForTest()
+            .withHandlerThreadPool(1, 3, 10)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                allStarted.countDown();
+                release.await();
+                response.write("done");
+            })
+            .start();
+
+        List<Future<String>> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(clientExecutor.submit(this::callServer));
+        }
+        MuAssert.assertNotTimedOut("allStarted", allStarted);
+        assertThat(server.stats().queuedRequests(), is(0L));
+        release.countDown();
+        for (Future<String> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS), is("200 done"));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void requestsAreRejectedWithA503WhenTheQueueIsFull() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server = ServerUtils.httpsServerForTest()
+            .withHandlerThreadPool(1, 1, 1)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                firstStarted.countDown();
+                release.await();
+                response.write("done");
+            })
+            .start();
+
+        Future<String> first = clientExecutor.submit(this::callServer);
+        MuAssert.assertNotTimedOut("firstStarted", firstStarted);
+        Future<String> queued = clientExecutor.submit(this::callServer);
+        assertEventually(() -> server.stats().queuedRequests() == 1L);
+
+        assertThat(callServer(), is("503 503 Service Unavailable"));
+        assertThat(server.stats().rejectedDueToOverload(), is(1L));
+
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS), is("200 done"));
+        assertThat(queued.get(10, TimeUnit.SECONDS), is("200 done"));
+        assertThat(server.stats().queuedRequests(), is(0L));
+    }
+
+    @Test(timeout = 30000)
+    public void requestsThatWaitLongerThanTheMaxQueueTimeAreRejected() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server = ServerUtils.httpsServerForTest()
+            .withHandlerThreadPool(1, 1, 10)
+            .withMaxHandlerQueueTime(100, TimeUnit.MILLISECONDS)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                firstStarted.countDown();
+                release.await();
+                response.write("done");
+            })
+            .start();
+
+        Future<String> first = clientExecutor.submit(this::callServer);
+        MuAssert.assertNotTimedOut("firstStarted", firstStarted);
+        Future<String> queued = clientExecutor.submit(this::callServer);
+        assertEventually(() -> server.stats().queuedRequests() == 1L);
+        Thread.sleep(300);
+        release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS), is("200 done"));
+        assertThat(queued.get(10, TimeUnit.SECONDS), is("503 503 Service Unavailable"));
+        assertThat(server.stats().rejectedDueToOverload(), is(1L));
+        assertThat(server.stats().queueWaitMillis(), greaterThanOrEqualTo(300L));
+
+        // once the backlog has cleared, requests are handled as normal
+        assertThat(callServer(), is("200 done"));
+    }
+
+    @Test
+    public void customExecutorsAreStillUsed() throws Exception {
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "custom-handler"));
+        try {
+            server = httpServer()
+                .withHandlerExecutor(executor)
+                .withHandlerThreadPool(1, 1, 1)
+                .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                    threadNames.add(Thread.currentThread().getName());
+                    response.write("done");
+                })
+                .start();
+            assertThat(callServer(), is("200 done"));
+            assertThat(callServer(), is("200 done"));
+            assertThat(threadNames, contains("custom-handler", "custom-handler"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void eachEventLoopCanHaveItsOwnHandlerPool() throws Exception {
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+        server = ServerUtils.httpsServerForTest()
+            .withNetworkConfig(NetworkConfigBuilder.networkConfig().withWorkerThreads(3))
+            .withEventLoopAffineHandlers(2)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                threadNames.add(Thread.currentThread().getName());
+                response.write("done");
+            })
+            .start();
+
+        List<HandlerGroupStats> groups = server.stats().handlerGroups();
+        assertThat(groups, hasSize(3));
+        for (HandlerGroupStats group : groups) {
+            assertThat(group.name(), startsWith("muhandler-group"));
+            assertThat(group.threads(), is(2));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(callServer(), is("200 done"));
+        }
+        // all requests on one connection are handled by the pool of that connection's event loop
+        String groupName = threadNames.get(0).substring(0, threadNames.get(0).indexOf('-', "muhandler-".length()));
+        assertThat(threadNames, everyItem(startsWith(groupName + "-")));
+        assertEventually(() -> groups.stream().mapToLong(HandlerGroupStats::completedRequests).sum() == 10L);
+        assertThat(groups.stream().filter(g -> g.name().equals(groupName)).findFirst().get().completedRequests(), is(10L));
+    }
+
+    @Test
+    public void handlerGroupsAreEmptyWithASharedPool() {
+        server = httpServer().start();
+        assertThat(server.stats().handlerGroups(), is(empty()));
+    }
+
+    @Test
+    public void statsAreIncludedInToString() {
+        server = httpServer().start();
+        assertThat(server.stats().toString().contains("; queued: 0; queue wait millis: 0"), is(true));
+    }
+
+    @Test
+    public void invalidPoolSettingsAreRejected() {
+        MuServerBuilder builder = httpServer();
+        for (int[] invalid : new int[][]{{-1, 1, 1}, {1, 0, 1}, {2, 1, 1}, {1, 1, 0}}) {
+            try {
+                builder.withHandlerThreadPool(invalid[0], invalid[1], invalid[2]);
+                throw new AssertionError("Expected failure for " + invalid[0] + ", " + invalid[1] + ", " + invalid[2]);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        builder.withHandlerThreadPool(0, 1, 1);
+        builder.withMaxHandlerQueueTime(0, TimeUnit.SECONDS);
+    }
+
+    private String callServer() throws Exception {
+        try (Response resp = call(request(server.uri()))) {
+            return resp.code() + " " + resp.body().string();
+        }
+    }
+
+    private static void assertEventually(Callable<Boolean> condition) throws Exception {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > end) {
+                throw new AssertionError("Condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void stop() {
+        clientExecutor.shutdownNow();
+        MuAssert.stopAndCheck(server);
+    }
+
+}
@@ -0,0 +1,122 @@
+package io.muserver;
+
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelOption;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.ServerUtils;
+import scaffolding.StringUtils;
+
+import java.io.IOException;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static io.muserver.NetworkConfigBuilder.networkConfig;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class NetworkConfigTest {
+
+    private MuServer server;
+
+    @Test
+    public void defaultsAreUsedIfNothingIsSpecified() {
+        server = httpServer().start();
+        NetworkConfig config = server.networkConfig();
+        assertThat(config.workerThreads(), is(0));
+        assertThat(config.acceptBacklog(), is(0));
+        assertThat(config.tcpNoDelay(), is(true));
+        assertThat(config.receiveBufferSize(), is(0));
+        assertThat(config.sendBufferSize(), is(0));
+        assertThat(config.writeBufferLowWaterMark(), is(32 * 1024));
+        assertThat(config.writeBufferHighWaterMark(), is(64 * 1024));
+        assertThat(config.allocator(), is(AllocatorType.POOLED_DIRECT));
+    }
+
+    @Test
+    public void customSettingsAreAppliedAndExposed() throws IOException {
+        String bigText = StringUtils.randomStringOfLength(200000);
+        for (AllocatorType allocatorType : AllocatorType.values()) {
+            server = ServerUtils.httpsServerForTest()
+                .withNetworkConfig(networkConfig()
+                    .withWorkerThreads(2)
+                    .withAcceptBacklog(512)
+                    .withTcpNoDelay(false)
+                    .withReceiveBufferSize(16 * 1024)
+                    .withSendBufferSize(16 * 1024)
+                    .withWriteBufferWaterMark(1024, 4096)
+                    .withAllocator(allocatorType))
+                .addHandler(Method.POST, "/", (request, response, pathParams) -> {
+                    response.contentType("text/plain");
+                    response.writer().write(request.readBodyAsString());
+                })
+                .start();
+
+            NetworkConfig config = server.networkConfig();
+            assertThat(config.workerThreads(), is(2));
+            assertThat(config.acceptBacklog(), is(512));
+            assertThat(config.tcpNoDelay(), is(false));
+            assertThat(config.receiveBufferSize(), is(16 * 1024));
+            assertThat(config.sendBufferSize(), is(16 * 1024));
+            assertThat(config.writeBufferLowWaterMark(), is(1024));
+            assertThat(config.writeBufferHighWaterMark(), is(4096));
+            assertThat(config.allocator(), is(allocatorType));
+
+            try (Response resp = call(request(server.uri()).post(RequestBody.create(MediaType.get("text/plain"), bigText)))) {
+                assertThat(resp.code(), is(200));
+                assertThat(resp.body().string(), equalTo(bigText));
+            }
+            scaffolding.MuAssert.stopAndCheck(server);
+            server = null;
+        }
+    }
+
+    @Test
+    public void socketOptionsAreSetOnAcceptedConnections() throws IOException {
+        server = httpServer()
+            .withNetworkConfig(networkConfig()
+                .withTcpNoDelay(false)
+                .withReceiveBufferSize(16 * 1024)
+                .withSendBufferSize(16 * 1024)
+                .withWriteBufferWaterMark(1024, 4096)
+                .withAllocator(AllocatorType.UNPOOLED_HEAP))
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                NettyRequestAdapter adapter = (NettyRequestAdapter) request;
+                ChannelConfig config = adapter.channel().config();
+                response.write(config.getOption(ChannelOption.TCP_NODELAY)
+                    + " " + config.getOption(ChannelOption.SO_RCVBUF)
+                    + " " + config.getOption(ChannelOption.SO_SNDBUF)
+                    + " " + config.getWriteBufferLowWaterMark()
+                    + " " + config.getWriteBufferHighWaterMark()
+                    + " " + (config.getAllocator() == adapter.settings().networkConfig.nettyAllocator()));
+            })
+            .start();
+        try (Response resp = call(request(server.uri()))) {
+            String[] options = resp.body().string().split(" ");
+            assertThat(options[0], equalTo("false"));
+            // the operating system may round the buffer sizes up, for example Linux doubles them
+            assertThat(Integer.parseInt(options[1]), greaterThanOrEqualTo(16 * 1024));
+            assertThat(Integer.parseInt(options[2]), greaterThanOrEqualTo(16 * 1024));
+            assertThat(options[3], equalTo("1024"));
+            assertThat(options[4], equalTo("4096"));
+            assertThat(options[5], equalTo("true"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void highWaterMarkCannotBeLessThanLowWaterMark() {
+        networkConfig().withWriteBufferWaterMark(2048, 1024);
+    }
+
+    @After
+    public void stop() {
+        scaffolding.MuAssert.stopAndCheck(server);
+    }
+
+}
@@ -0,0 +1,226 @@
+package io.muserver;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+import scaffolding.StringUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class NonBlockingHandlerTest {
+
+    private MuServer server;
+
+    @Test
+    public void nonBlockingRoutesRunOnTheIOThreadForHttp1() throws IOException {
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+        server = healthServer(MuServerBuilder.httpServer(), threadNames);
+        try (Response resp = call(request(server.uri().resolve("/health")))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("OK HTTP/1.1"));
+        }
+        assertThat(threadNames, hasSize(1));
+        assertThat(threadNames, everyItem(not(startsWith("muhandler"))));
+    }
+
+    @Test
+    public void nonBlockingRoutesRunOnTheIOThreadForHttp2() throws IOException {
+        Assume.assumeTrue("HTTP2 is not available on this JVM", Http2ConfigBuilder.http2EnabledIfAvailable().build().enabled);
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+        server = healthServer(ServerUtils.httpsServerForTest(), threadNames);
+        try (Response resp = call(request(server.uri().resolve("/health")))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("OK HTTP/2"));
+        }
+        assertThat(threadNames, hasSize(1));
+        assertThat(threadNames, everyItem(not(startsWith("muhandler"))));
+    }
+
+    private static MuServer healthServer(MuServerBuilder builder, List<String> threadNames) {
+        return builder
+            .addNonBlockingHandler(Method.GET, "/health", (request, response, pathParams) -> {
+                threadNames.add(Thread.currentThread().getName());
+                response.write("OK " + request.protocol());
+            })
+            .start();
+    }
+
+    @Test
+    public void unhandledRequestsAreHandedToTheExecutorForTheRemainingHandlers() throws IOException {
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+        server = ServerUtils.httpsServerForTest()
+            .addHandler((NonBlockingMuHandler) (request, response) -> {
+                threadNames.add("filter " + Thread.currentThread().getName());
+                response.headers().set("X-Filtered", "true");
+                return false;
+            })
+            .addNonBlockingHandler(Method.GET, "/health", (request, response, pathParams) -> response.write("OK"))
+            .addHandler(Method.GET, "/blocking", (request, response, pathParams) -> {
+                threadNames.add("handler " + Thread.currentThread().getName());
+                response.sendChunk("Hello ");
+                response.sendChunk("world");
+            })
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/blocking")))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.header("X-Filtered"), is("true"));
+            assertThat(resp.body().string(), is("Hello world"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/missing")))) {
+            assertThat(resp.code(), is(404));
+            assertThat(resp.header("X-Filtered"), is("true"));
+        }
+        assertThat(threadNames, hasSize(3));
+        assertThat(threadNames.get(0), not(startsWith("filter muhandler")));
+        assertThat(threadNames.get(1), startsWith("handler muhandler"));
+    }
+
+    @Test
+    public void nonBlockingHandlersAddedAfterRegularHandlersRunOnTheExecutor() throws IOException {
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+        server = ServerUtils.httpsServerForTest()
+            .addHandler((request, response) -> false)
+            .addNonBlockingHandler(Method.GET, "/health", (request, response, pathParams) -> {
+                threadNames.add(Thread.currentThread().getName());
+                response.write("OK");
+            })
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/health")))) {
+            assertThat(resp.body().string(), is("OK"));
+        }
+        assertThat(threadNames, contains(startsWith("muhandler")));
+    }
+
+    @Test
+    public void requestsRejectedByTheExecutorAfterTheNonBlockingHandlersAreOnlyRejectedOnce() throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        server = ServerUtils.httpsServerForTest()
+            .withHandlerExecutor(executor)
+            .addNonBlockingHandler(Method.GET, "/health", (request, response, pathParams) -> response.write("OK"))
+            .addHandler(Method.GET, "/blocking", (request, response, pathParams) -> response.write("Blocking"))
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/blocking")))) {
+            assertThat(resp.code(), is(503));
+        }
+        try (Response resp = call(request(server.uri().resolve("/health")))) {
+            assertThat(resp.body().string(), is("OK"));
+        }
+        assertThat(server.stats().rejectedDueToOverload(), is(1L));
+    }
+
+    @Test
+    public void blockingReadsAndWritesFailLoudly() throws IOException {
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        server = ServerUtils.httpsServerForTest()
+            .addNonBlockingHandler(Method.POST, "/read", (request, response, pathParams) -> {
+                try {
+                    request.readBodyAsString();
+                } catch (Throwable e) {
+                    errors.add(e);
+                    throw e;
+                }
+            })
+            .addNonBlockingHandler(Method.GET, "/chunk", (request, response, pathParams) -> {
+                try {
+                    response.sendChunk("Hello");
+                } catch (Throwable e) {
+                    errors.add(e);
+                    throw e;
+                }
+            })
+            .addNonBlockingHandler(Method.GET, "/stream", (request, response, pathParams) -> {
+                try {
+                    response.outputStream();
+                } catch (Throwable e) {
+                    errors.add(e);
+                    throw e;
+                }
+            })
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/read")).post(RequestBody.create(MediaType.get("text/plain"), "Hello")))) {
+            assertThat(resp.code(), is(500));
+        }
+        try (Response resp = call(request(server.uri().resolve("/chunk")))) {
+            assertThat(resp.code(), is(500));
+        }
+        try (Response resp = call(request(server.uri().resolve("/stream")))) {
+            assertThat(resp.code(), is(500));
+        }
+        assertThat(errors, hasSize(3));
+        assertThat(errors, everyItem(instanceOf(IllegalStateException.class)));
+        assertThat(errors.get(0).getMessage(), startsWith("Reading the request body blocks"));
+        assertThat(errors.get(1).getMessage(), startsWith("MuResponse.sendChunk blocks"));
+        assertThat(errors.get(2).getMessage(), startsWith("MuResponse.outputStream blocks"));
+    }
+
+    @Test
+    public void asyncHandlesCanBeUsedToReadAndWriteHttp1Bodies() throws IOException {
+        String bigText = StringUtils.randomStringOfLength(100000);
+        server = echoServer(MuServerBuilder.httpServer());
+        try (Response resp = call(request(server.uri().resolve("/echo")).post(RequestBody.create(MediaType.get("text/plain"), bigText)))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.protocol(), is(Protocol.HTTP_1_1));
+            assertThat(resp.body().string(), equalTo(bigText));
+        }
+    }
+
+    @Test
+    public void asyncHandlesCanBeUsedToReadAndWriteHttp2Bodies() throws IOException {
+        Assume.assumeTrue("HTTP2 is not available on this JVM", Http2ConfigBuilder.http2EnabledIfAvailable().build().enabled);
+        String bigText = StringUtils.randomStringOfLength(100000);
+        server = echoServer(ServerUtils.httpsServerForTest());
+        try (Response resp = call(request(server.uri().resolve("/echo")).post(RequestBody.create(MediaType.get("text/plain"), bigText)))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.protocol(), is(Protocol.HTTP_2));
+            assertThat(resp.body().string(), equalTo(bigText));
+        }
+    }
+
+    private static MuServer echoServer(MuServerBuilder builder) {
+        return builder
+            .addNonBlockingHandler(Method.POST, "/echo", (request, response, pathParams) -> {
+                AsyncHandle handle = request.handleAsync();
+                response.contentType("text/plain");
+                handle.setReadListener(new RequestBodyListener() {
+                    @Override
+                    public void onDataReceived(ByteBuffer bb, DoneCallback doneCallback) {
+                        handle.write(bb, doneCallback);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        handle.complete();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        handle.complete(t);
+                    }
+                });
+            })
+            .start();
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+
+}
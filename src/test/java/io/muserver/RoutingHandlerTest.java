@@ -0,0 +1,179 @@
+package io.muserver;
+
+import io.muserver.rest.PathMatch;
+import io.muserver.rest.UriPattern;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.ClientUtils;
+import scaffolding.ServerUtils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static io.muserver.ContextHandlerBuilder.context;
+import static io.muserver.RoutingHandlerBuilder.routingHandler;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static scaffolding.ClientUtils.request;
+
+public class RoutingHandlerTest {
+    private MuServer server;
+
+    @Test
+    public void theFirstMatchingRouteIsUsedRegardlessOfWhetherItIsLiteral() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(routingHandler()
+                .addRoute(Method.GET, "/things/{id}", (req, resp, params) -> resp.write("id " + params.get("id")))
+                .addRoute(Method.GET, "/things/new", (req, resp, params) -> resp.write("new"))
+                .addRoute(Method.GET, "/other/new", (req, resp, params) -> resp.write("literal"))
+                .addRoute(Method.GET, "/other/{id}", (req, resp, params) -> resp.write("other " + params.get("id")))
+            )
+            .start();
+        assertThat(body(Method.GET, "/things/new"), equalTo("id new"));
+        assertThat(body(Method.GET, "/other/new"), equalTo("literal"));
+        assertThat(body(Method.GET, "/other/old"), equalTo("other old"));
+    }
+
+    @Test
+    public void customRegexSegmentsAreMatchedWhereTheyStart() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(routingHandler()
+                .addRoute(Method.GET, "/files/{path : .+}", (req, resp, params) -> resp.write("path " + params.get("path")))
+                .addRoute(Method.GET, "/blah/{id : [0-9]+}/ha", (req, resp, params) -> resp.write("number " + params.get("id")))
+                .addRoute(Method.GET, "/blah/{name}/ha", (req, resp, params) -> resp.write("name " + params.get("name")))
+                .addRoute(Method.GET, "/report-{year}.csv", (req, resp, params) -> resp.write("year " + params.get("year")))
+            )
+            .start();
+        assertThat(body(Method.GET, "/files/a/b%20c/d.txt"), equalTo("path a/b c/d.txt"));
+        assertThat(body(Method.GET, "/blah/123/ha"), equalTo("number 123"));
+        assertThat(body(Method.GET, "/blah/abc/ha"), equalTo("name abc"));
+        assertThat(body(Method.GET, "/report-2020.csv"), equalTo("year 2020"));
+        assertThat(call(Method.GET, "/blah/123/ha/more"), is(404));
+    }
+
+    @Test
+    public void unmatchedRequestsFallThroughToTheNextHandlerByDefault() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(routingHandler()
+                .addRoute(Method.GET, "/things/{id}", (req, resp, params) -> resp.write("route"))
+            )
+            .addHandler((req, resp) -> {
+                resp.write("fallback");
+                return true;
+            })
+            .start();
+        assertThat(body(Method.GET, "/things/1"), equalTo("route"));
+        assertThat(body(Method.POST, "/things/1"), equalTo("fallback"));
+        assertThat(body(Method.GET, "/things/1/2"), equalTo("fallback"));
+    }
+
+    @Test
+    public void methodNotAllowedResponsesCanBeSent() {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(routingHandler()
+                .withMethodNotAllowedResponses(true)
+                .addRoute(Method.GET, "/things/{id}", (req, resp, params) -> resp.write("get"))
+                .addRoute(Method.DELETE, "/things/{id : [0-9]+}", (req, resp, params) -> resp.write("delete"))
+                .addRoute(Method.PUT, "/things/special", (req, resp, params) -> resp.write("put"))
+            )
+            .start();
+        try (Response resp = ClientUtils.call(request(server.uri().resolve("/things/123")).post(okhttp3.RequestBody.create(null, "")))) {
+            assertThat(resp.code(), is(405));
+            assertThat(resp.header("Allow"), equalTo("GET, DELETE"));
+        }
+        try (Response resp = ClientUtils.call(request(server.uri().resolve("/things/special")).post(okhttp3.RequestBody.create(null, "")))) {
+            assertThat(resp.code(), is(405));
+            assertThat(resp.header("Allow"), equalTo("GET, PUT"));
+        }
+        assertThat(call(Method.DELETE, "/things/abc"), is(405));
+        assertThat(call(Method.DELETE, "/things/123"), is(200));
+        assertThat(call(Method.GET, "/others/123"), is(404));
+    }
+
+    @Test
+    public void routesAddedToServersAndContextsAreCombined() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.GET, "/a", (req, resp, params) -> resp.write("a"))
+            .addHandler(Method.GET, "/b/{id}", (req, resp, params) -> resp.write("b " + params.get("id")))
+            .addHandler(context("api")
+                .addHandler(Method.GET, "/", (req, resp, params) -> resp.write("api"))
+                .addHandler(Method.GET, "/c/{id}", (req, resp, params) -> resp.write("c " + params.get("id")))
+            )
+            .addHandler(Method.GET, "/{anything}", (req, resp, params) -> resp.write("anything"))
+            .start();
+        assertThat(body(Method.GET, "/a"), equalTo("a"));
+        assertThat(body(Method.GET, "/b/1"), equalTo("b 1"));
+        assertThat(body(Method.GET, "/api/"), equalTo("api"));
+        assertThat(body(Method.GET, "/api/c/2"), equalTo("c 2"));
+        assertThat(call(Method.GET, "/api/d"), is(404));
+        assertThat(body(Method.GET, "/other"), equalTo("anything"));
+    }
+
+    @Test
+    public void theSameRouteIsChosenAsWhenMatchingEachRouteInTurn() throws IOException {
+        String[] templates = {
+            "/", "/abc", "/abc/{id}", "/abc/{id : [0-9]+}", "/abc/def", "/{a}/{b}", "/abc/{id}/ghi",
+            "/abc/{path : .*}", "//abc", "/a b/{name}", "/x%20y", "/{a}", "/abc/{id}-{other}", "/abc/def/"
+        };
+        String[] paths = {
+            "/", "/abc", "/abc/", "/abc/123", "/abc/xyz", "/abc/def", "/abc/def/", "/abc/1/ghi",
+            "/abc/1/ghi/", "/abc/1/2/3", "/abc/1-2", "/a%20b/hello%20there", "/x%20y", "/nothing/here/at/all",
+            "/abc/def/ghi", "/other"
+        };
+        RoutingHandlerBuilder builder = routingHandler();
+        for (int i = 0; i < templates.length; i++) {
+            String name = String.valueOf(i);
+            builder.addRoute(Method.GET, templates[i], (req, resp, params) -> resp.write(name + " " + new TreeMap<>(params)));
+        }
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(builder)
+            .start();
+
+        for (String path : paths) {
+            String expected = "none";
+            for (int i = 0; i < templates.length; i++) {
+                PathMatch match = UriPattern.uriTemplateToRegex(templates[i]).matcher(path);
+                if (match.fullyMatches()) {
+                    expected = i + " " + new TreeMap<>(match.params());
+                    break;
+                }
+            }
+            try (Response resp = ClientUtils.call(request().url(server.uri() + path))) {
+                String actual = resp.code() == 404 ? "none" : resp.body().string();
+                assertThat(path, actual, equalTo(expected));
+            }
+        }
+    }
+
+    @Test
+    public void templateSegmentsCanContainSlashesInRegexes() {
+        assertThat(RoutingHandler.templateSegments("/a/{b : x/y}/c/").toString(), equalTo("[a, {b : x/y}, c]"));
+        assertThat(RoutingHandler.templateSegments("/").toString(), equalTo("[]"));
+        assertThat(String.join("|", RoutingHandler.pathSegments("/a//b/")), equalTo("a||b"));
+    }
+
+    private int call(Method method, String path) {
+        try (Response resp = ClientUtils.call(request()
+            .method(method.name(), null)
+            .url(server.uri().resolve(path).toString()))) {
+            return resp.code();
+        }
+    }
+
+    private String body(Method method, String path) throws IOException {
+        okhttp3.RequestBody body = method == Method.POST ? okhttp3.RequestBody.create(null, "") : null;
+        try (Response resp = ClientUtils.call(request()
+            .method(method.name(), body)
+            .url(server.uri().resolve(path).toString()))) {
+            return resp.body().string();
+        }
+    }
+
+    @After
+    public void destroy() {
+        scaffolding.MuAssert.stopAndCheck(server);
+    }
+}
@@ -1,9 +1,14 @@
 package io.muserver;
 
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
 import okhttp3.Response;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Test;
 import scaffolding.MuAssert;
+import scaffolding.RawClient;
 import scaffolding.ServerUtils;
 
 import java.io.BufferedOutputStream;
@@ -12,13 +17,17 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static scaffolding.ClientUtils.*;
 
 public class StreamingTest {
@@ -161,6 +170,221 @@ public class StreamingTest {
         }
 	}
 
+	@Test(timeout = 30000) public void slowReadersOfLargeHttp1BodiesGetAllTheDataWhenTheBufferIsSmall() throws Exception {
+        server = slowReaderServer(MuServerBuilder.httpServer());
+        byte[] body = new byte[2 * 1024 * 1024];
+        new Random().nextBytes(body);
+        try (Response resp = call(request(server.uri())
+            .post(RequestBody.create(MediaType.get("application/octet-stream"), body)))) {
+            assertThat(resp.protocol(), is(Protocol.HTTP_1_1));
+            assertThat(resp.body().string(), equalTo("Received " + body.length));
+        }
+	}
+
+	@Test(timeout = 30000) public void slowReadersOfLargeHttp2BodiesGetAllTheDataWhenTheBufferIsSmallerThanTheDefaultWindow() throws Exception {
+        Assume.assumeTrue("HTTP2 is not available on this JVM", Http2ConfigBuilder.http2EnabledIfAvailable().build().enabled);
+        server = slowReaderServer(ServerUtils.httpsServerForTest());
+        // larger than the 65535 byte window that the client may send before it receives the server's settings
+        byte[] body = new byte[200 * 1024];
+        new Random().nextBytes(body);
+        for (int i = 0; i < 3; i++) {
+            try (Response resp = call(request(server.uri())
+                .post(RequestBody.create(MediaType.get("application/octet-stream"), body)))) {
+                assertThat(resp.protocol(), is(Protocol.HTTP_2));
+                assertThat(resp.body().string(), equalTo("Received " + body.length));
+            }
+        }
+        assertThat(server.stats().requestBodyBytesBuffered(), is(0L));
+	}
+
+	private static MuServer slowReaderServer(MuServerBuilder builder) {
+        return builder
+            .withRequestBodyBufferSize(1024)
+            .addHandler((request, response) -> {
+                long count = 0;
+                try (InputStream in = request.inputStream().get()) {
+                    byte[] buffer = new byte[512];
+                    int read;
+                    while ((read = in.read(buffer)) > -1) {
+                        count += read;
+                        if (count % (64 * 1024) < read) {
+                            Thread.sleep(20);
+                        }
+                    }
+                }
+                response.write("Received " + count);
+                return true;
+            }).start();
+	}
+
+	@Test public void readingHttp1BodiesPausesWhenTheServerWideRequestBodyMemoryLimitIsReached() throws Exception {
+        server = memoryLimitedServer(MuServerBuilder.httpServer());
+        byte[] body = new byte[2 * 1024 * 1024];
+        new Random().nextBytes(body);
+        try (Response resp = call(request(server.uri())
+            .post(RequestBody.create(MediaType.get("application/octet-stream"), body)))) {
+            assertThat(resp.protocol(), is(Protocol.HTTP_1_1));
+            assertThat(resp.body().string(), equalTo("Received " + body.length));
+        }
+        assertThat(server.stats().requestBodyPauses(), greaterThan(0L));
+        assertThat(server.stats().requestBodyBytesBuffered(), is(0L));
+	}
+
+	@Test public void readingHttp2BodiesPausesWhenTheServerWideRequestBodyMemoryLimitIsReached() throws Exception {
+        Assume.assumeTrue("HTTP2 is not available on this JVM", Http2ConfigBuilder.http2EnabledIfAvailable().build().enabled);
+        server = memoryLimitedServer(ServerUtils.httpsServerForTest());
+        byte[] body = new byte[2 * 1024 * 1024];
+        new Random().nextBytes(body);
+        try (Response resp = call(request(server.uri())
+            .post(RequestBody.create(MediaType.get("application/octet-stream"), body)))) {
+            assertThat(resp.protocol(), is(Protocol.HTTP_2));
+            assertThat(resp.body().string(), equalTo("Received " + body.length));
+        }
+        assertThat(server.stats().requestBodyPauses(), greaterThan(0L));
+        assertThat(server.stats().requestBodyBytesBuffered(), is(0L));
+	}
+
+	private static MuServer memoryLimitedServer(MuServerBuilder builder) {
+        return builder
+            .withRequestBodyMemoryLimit(16 * 1024)
+            .addHandler((request, response) -> {
+                long count = 0;
+                try (InputStream in = request.inputStream().get()) {
+                    byte[] buffer = new byte[512];
+                    int read;
+                    while ((read = in.read(buffer)) > -1) {
+                        count += read;
+                        if (count % (256 * 1024) < read) {
+                            Thread.sleep(20);
+                        }
+                    }
+                }
+                response.write("Received " + count);
+                return true;
+            }).start();
+	}
+
+	@Test(timeout = 20000) public void smallWritesAreCoalescedIntoLargerChunks() throws Exception {
+        server = MuServerBuilder.httpServer()
+            .withGzipEnabled(false)
+            .addHandler((request, response) -> {
+                OutputStream out = response.outputStream();
+                for (int i = 0; i < 40000; i++) {
+                    out.write('a');
+                }
+                return true;
+            }).start();
+
+        String body;
+        try (RawClient rawClient = RawClient.create(server.uri())) {
+            rawClient.sendStartLine("GET", "/")
+                .sendHeader("host", server.uri().getAuthority())
+                .endHeaders()
+                .flushRequest();
+            while (!(body = rawClient.responseString()).endsWith("\r\n0\r\n\r\n")) {
+                Thread.sleep(20);
+            }
+        }
+        String chunks = body.substring(body.indexOf("\r\n\r\n") + 4);
+        List<String> chunkSizes = new ArrayList<>();
+        for (String line : chunks.split("\r\n")) {
+            if (!line.startsWith("a")) {
+                chunkSizes.add(line);
+            }
+        }
+        assertThat(chunkSizes, equalTo(asList("4000", "4000", "1c40", "0")));
+	}
+
+	@Test public void smallStreamedResponsesCanBeSentWithAFixedLength() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .withFixedLengthResponseThreshold(1000)
+            .addHandler((request, response) -> {
+                response.contentType("text/plain;charset=utf-8");
+                PrintWriter writer = response.writer();
+                writer.print("Hello ");
+                writer.flush();
+                writer.print("world");
+                return true;
+            }).start();
+
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.header("Content-Length"), is("11"));
+            assertThat(resp.header("Transfer-Encoding"), is(nullValue()));
+            assertThat(resp.body().string(), is("Hello world"));
+        }
+	}
+
+	@Test public void heldResponsesAreReplacedWithAnErrorIfTheHandlerThrows() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .withFixedLengthResponseThreshold(1000)
+            .addHandler((request, response) -> {
+                response.contentType("text/plain;charset=utf-8");
+                PrintWriter writer = response.writer();
+                writer.print("Half a resp");
+                writer.flush();
+                throw new RuntimeException("Failed half way through");
+            }).start();
+
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.code(), is(500));
+            assertThat(resp.body().string(), containsString("500 Internal Server Error"));
+        }
+	}
+
+	@Test public void fixedLengthResponsesAreCompressedWhenOverTheGzipThreshold() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .withFixedLengthResponseThreshold(8192)
+            .addHandler((request, response) -> {
+                response.contentType("text/plain;charset=utf-8");
+                PrintWriter writer = response.writer();
+                for (int i = 0; i < 200; i++) {
+                    writer.print("Line " + i + "\n");
+                }
+                return true;
+            }).start();
+
+        try (Response resp = call(request(server.uri()).header("Accept-Encoding", "gzip"))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.header("Content-Encoding"), is("gzip"));
+        }
+	}
+
+	@Test(timeout = 20000) public void responsesOverTheFixedLengthThresholdAreStillStreamed() throws Exception {
+        server = MuServerBuilder.httpServer()
+            .withGzipEnabled(false)
+            .withFixedLengthResponseThreshold(100)
+            .addHandler((request, response) -> {
+                OutputStream out = response.outputStream();
+                for (int i = 0; i < 150; i++) {
+                    out.write('a');
+                }
+                response.sendChunk("b");
+                return true;
+            }).start();
+
+        String body;
+        try (RawClient rawClient = RawClient.create(server.uri())) {
+            rawClient.sendStartLine("GET", "/")
+                .sendHeader("host", server.uri().getAuthority())
+                .endHeaders()
+                .flushRequest();
+            while (!(body = rawClient.responseString()).endsWith("\r\n0\r\n\r\n")) {
+                Thread.sleep(20);
+            }
+        }
+        assertThat(body, containsString("transfer-encoding: chunked"));
+        String chunks = body.substring(body.indexOf("\r\n\r\n") + 4);
+        List<String> chunkSizes = new ArrayList<>();
+        for (String line : chunks.split("\r\n")) {
+            if (!line.startsWith("a") && !line.equals("b")) {
+                chunkSizes.add(line);
+            }
+        }
+        assertThat(chunkSizes, equalTo(asList("64", "32", "1", "0")));
+        assertThat(chunks, containsString("\r\nb\r\n"));
+	}
+
 	@Test public void thereIsNoInputStreamIfThereIsNoRequestBody() throws Exception {
 		List<String> actual = new ArrayList<>();
         server = ServerUtils.httpsServerForTest()
@@ -0,0 +1,136 @@
+package io.muserver;
+
+import io.netty.channel.epoll.Epoll;
+import io.netty.incubator.channel.uring.IOUring;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import scaffolding.ServerUtils;
+
+import java.io.IOException;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class TransportTest {
+
+    private MuServer server;
+
+    @Test
+    public void nioIsTheDefault() throws IOException {
+        Assume.assumeTrue("A default transport was set with a system property", System.getProperty(Transports.TRANSPORT_PROPERTY) == null);
+        server = httpServer()
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+        assertThat(server.transport(), is(Transport.NIO));
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.body().string(), equalTo("Hello"));
+        }
+    }
+
+    @Test
+    public void epollCanBeUsedForHttp1IfAvailable() throws IOException {
+        Assume.assumeTrue("Epoll is not available on this platform", Epoll.isAvailable());
+        server = echoServer(httpServer().withTransport(Transport.EPOLL));
+        assertThat(server.transport(), is(Transport.EPOLL));
+        try (Response resp = call(request(server.uri()).post(RequestBody.create(MediaType.get("text/plain"), "Hi from epoll")))) {
+            assertThat(resp.protocol(), is(Protocol.HTTP_1_1));
+            assertThat(resp.body().string(), equalTo("Hi from epoll"));
+        }
+    }
+
+    @Test
+    public void epollCanBeUsedForHttp2IfAvailable() throws IOException {
+        Assume.assumeTrue("Epoll is not available on this platform", Epoll.isAvailable());
+        Assume.assumeTrue("HTTP2 is not available on this JVM", Http2ConfigBuilder.http2EnabledIfAvailable().build().enabled);
+        server = echoServer(ServerUtils.httpsServerForTest().withTransport(Transport.EPOLL));
+        assertThat(server.transport(), is(Transport.EPOLL));
+        try (Response resp = call(request(server.uri()).post(RequestBody.create(MediaType.get("text/plain"), "Hi from epoll")))) {
+            assertThat(resp.protocol(), is(Protocol.HTTP_2));
+            assertThat(resp.body().string(), equalTo("Hi from epoll"));
+        }
+    }
+
+    @Test
+    public void multipleAcceptorsCanBindToTheSamePortWithEpoll() throws Exception {
+        Assume.assumeTrue("Epoll is not available on this platform", Epoll.isAvailable());
+        server = httpServer()
+            .withTransport(Transport.EPOLL)
+            .withAcceptorsPerPort(4)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+        assertThat(server.acceptorsPerPort(), is(4));
+        for (int i = 0; i < 20; i++) {
+            // a new connection each time, so that the connections are spread over the acceptors
+            try (Response resp = call(request(server.uri()).header("Connection", "close"))) {
+                assertThat(resp.protocol(), is(Protocol.HTTP_1_1));
+                assertThat(resp.body().string(), equalTo("Hello"));
+            }
+        }
+    }
+
+    @Test
+    public void aSingleAcceptorIsUsedIfNotUsingEpoll() {
+        server = httpServer().withTransport(Transport.NIO).withAcceptorsPerPort(4).start();
+        assertThat(server.acceptorsPerPort(), is(1));
+    }
+
+    @Test
+    public void ioUringCanBeUsedForHttp1IfAvailable() throws IOException {
+        Assume.assumeTrue("io_uring is not available on this platform", IOUring.isAvailable());
+        server = echoServer(httpServer().withTransport(Transport.IO_URING).withAcceptorsPerPort(2));
+        assertThat(server.transport(), is(Transport.IO_URING));
+        assertThat(server.acceptorsPerPort(), is(2));
+        try (Response resp = call(request(server.uri()).post(RequestBody.create(MediaType.get("text/plain"), "Hi from io_uring")))) {
+            assertThat(resp.protocol(), is(Protocol.HTTP_1_1));
+            assertThat(resp.body().string(), equalTo("Hi from io_uring"));
+        }
+    }
+
+    @Test
+    public void ioUringCanBeUsedForHttp2IfAvailable() throws IOException {
+        Assume.assumeTrue("io_uring is not available on this platform", IOUring.isAvailable());
+        Assume.assumeTrue("HTTP2 is not available on this JVM", Http2ConfigBuilder.http2EnabledIfAvailable().build().enabled);
+        server = echoServer(ServerUtils.httpsServerForTest().withTransport(Transport.IO_URING).withAcceptorsPerPort(2));
+        assertThat(server.transport(), is(Transport.IO_URING));
+        assertThat(server.acceptorsPerPort(), is(2));
+        try (Response resp = call(request(server.uri()).post(RequestBody.create(MediaType.get("text/plain"), "Hi from io_uring")))) {
+            assertThat(resp.protocol(), is(Protocol.HTTP_2));
+            assertThat(resp.body().string(), equalTo("Hi from io_uring"));
+        }
+    }
+
+    @Test
+    public void epollIsUsedIfIoUringIsNotAvailable() {
+        Assume.assumeTrue("io_uring is available on this platform", !IOUring.isAvailable() && Epoll.isAvailable());
+        server = httpServer().withTransport(Transport.IO_URING).start();
+        assertThat(server.transport(), is(Transport.EPOLL));
+    }
+
+    @Test
+    public void nioIsUsedIfEpollIsNotAvailable() {
+        Assume.assumeTrue("Epoll is available on this platform", !Epoll.isAvailable());
+        server = httpServer().withTransport(Transport.EPOLL).start();
+        assertThat(server.transport(), is(Transport.NIO));
+    }
+
+    private static MuServer echoServer(MuServerBuilder builder) {
+        return builder
+            .addHandler(Method.POST, "/", (request, response, pathParams) -> response.write(request.readBodyAsString()))
+            .start();
+    }
+
+    @After
+    public void stop() {
+        scaffolding.MuAssert.stopAndCheck(server);
+    }
+
+}
@@ -11,8 +11,13 @@ import scaffolding.ServerUtils;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import static org.hamcrest.CoreMatchers.endsWith;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static scaffolding.ClientUtils.call;
 import static scaffolding.ClientUtils.request;
@@ -136,6 +141,84 @@ public class UploadTest {
         }
     }
 
+    @Test
+    public void partsCanBeReceivedAsTheyArriveWithAMultipartListener() throws Exception {
+        File uploadDir = new File("target/multipart-listener-uploads/" + System.currentTimeMillis());
+        List<String> events = new CopyOnWriteArrayList<>();
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+        server = ServerUtils.httpsServerForTest()
+            .withUploadMemoryThreshold(1024)
+            .addHandler(Method.POST, "/upload", (request, response, pathParams) -> {
+                AsyncHandle handle = request.handleAsync();
+                handle.setMultipartListener(new MultipartListener() {
+                    public void onFormField(String name, String value) {
+                        events.add("field " + name + "=" + value);
+                    }
+
+                    public void onFile(String name, UploadedFile file) throws IOException {
+                        events.add("file " + name + " " + file.filename() + " " + file.size());
+                        threadNames.add(Thread.currentThread().getName());
+                        file.saveTo(new File(uploadDir, file.filename()));
+                    }
+
+                    public void onComplete() {
+                        events.add("complete");
+                        threadNames.add(Thread.currentThread().getName());
+                        response.write("Got " + events.size() + " events");
+                        handle.complete();
+                    }
+
+                    public void onError(Throwable t) {
+                        handle.complete(t);
+                    }
+                });
+            }).start();
+
+        try (Response resp = call(request(server.uri().resolve("/upload"))
+            .post(new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("Hello", "World")
+                .addPart(Headers.of("Content-Disposition", "form-data; name=\"image\"; filename=\"friends.jpg\""),
+                    RequestBody.create(MediaType.parse("image/jpeg"), friends))
+                .addFormDataPart("The name", "the value / with / stuff")
+                .build())
+        )) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("Got 4 events"));
+        }
+        assertThat(events, contains("field Hello=World", "file image friends.jpg 1712954",
+            "field The name=the value / with / stuff", "complete"));
+        assertThat(new File(uploadDir, "friends.jpg").length(), is(friends.length()));
+        // the file is written to disk while it is parsed, which must not happen on an I/O thread
+        assertThat(threadNames, everyItem(startsWith("muhandler")));
+    }
+
+    @Test
+    public void multipartListenersCanOnlyBeUsedForMultipartRequests() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.POST, "/upload", (request, response, pathParams) -> {
+                AsyncHandle handle = request.handleAsync();
+                try {
+                    handle.setMultipartListener(new MultipartListener() {
+                        public void onFormField(String name, String value) { }
+                        public void onFile(String name, UploadedFile file) { }
+                        public void onComplete() { }
+                        public void onError(Throwable t) { }
+                    });
+                } catch (IllegalStateException e) {
+                    response.status(400);
+                    response.write(e.getMessage());
+                    handle.complete();
+                }
+            }).start();
+
+        try (Response resp = call(request(server.uri().resolve("/upload"))
+            .post(RequestBody.create(MediaType.parse("text/plain"), "Hello")))) {
+            assertThat(resp.code(), is(400));
+            assertThat(resp.body().string(), endsWith("is not multipart: text/plain"));
+        }
+    }
+
     @After
     public void stopIt() {
         scaffolding.MuAssert.stopAndCheck(server);
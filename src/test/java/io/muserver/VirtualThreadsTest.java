@@ -0,0 +1,127 @@
+package io.muserver;
+
+import okhttp3.*;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.ClientUtils;
+import scaffolding.MuAssert;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assume.assumeTrue;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class VirtualThreadsTest {
+
+    private MuServer server;
+
+    @Test
+    public void handlersRunOnVirtualThreadsIfSupportedOtherwiseThePoolIsUsed() throws IOException {
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+        server = httpServer()
+            .withVirtualThreads(true)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                threadNames.add(Thread.currentThread().getName());
+                response.write(request.query().get("name"));
+            })
+            .start();
+        for (int i = 0; i < 3; i++) {
+            try (Response resp = call(request(server.uri().resolve("/?name=req" + i)))) {
+                assertThat(resp.body().string(), is("req" + i));
+            }
+        }
+        String expectedPrefix = VirtualThreads.isSupported() ? "muhandler-virtual-" : "muhandler-";
+        assertThat(threadNames, everyItem(startsWith(expectedPrefix)));
+    }
+
+    @Test
+    public void customExecutorsTakePrecedence() throws IOException {
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+        ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor(r -> new Thread(r, "custom-handler"));
+        try {
+            server = httpServer()
+                .withVirtualThreads(true)
+                .withHandlerExecutor(executor)
+                .addHandler(Method.GET, "/", (request, response, pathParams) -> threadNames.add(Thread.currentThread().getName()))
+                .start();
+            try (Response resp = call(request(server.uri()))) {
+                assertThat(resp.code(), is(200));
+            }
+            assertThat(threadNames, contains("custom-handler"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void unavailabilityIsReportedOnOlderJVMs() {
+        if (System.getProperty("java.specification.version").startsWith("1.")) {
+            assertThat(VirtualThreads.isSupported(), is(false));
+            assertThat(VirtualThreads.unavailabilityCause().getMessage(), containsString("Java 21"));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void moreBlockingRequestsThanTheDefaultMaxThreadsCanRunConcurrently() throws Exception {
+        assumeTrue("Virtual threads are not supported on this JVM", VirtualThreads.isSupported());
+        int requestCount = 500;
+        CountDownLatch allStarted = new CountDownLatch(requestCount);
+        CountDownLatch allFinished = new CountDownLatch(requestCount);
+        List<String> results = new CopyOnWriteArrayList<>();
+        server = httpServer()
+            .withVirtualThreads(true)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                allStarted.countDown();
+                // blocks until every request is in-flight, which would deadlock with a 200 thread pool
+                MuAssert.assertNotTimedOut("allStarted", allStarted);
+                response.write("done");
+            })
+            .start();
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(requestCount);
+        dispatcher.setMaxRequestsPerHost(requestCount);
+        OkHttpClient client = ClientUtils.client.newBuilder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(requestCount, 1, TimeUnit.MINUTES))
+            .build();
+        try {
+            for (int i = 0; i < requestCount; i++) {
+                client.newCall(request(server.uri()).build()).enqueue(new Callback() {
+                    public void onFailure(Call call, IOException e) {
+                        results.add(e.toString());
+                        allFinished.countDown();
+                    }
+
+                    public void onResponse(Call call, Response response) throws IOException {
+                        try (ResponseBody body = response.body()) {
+                            results.add(body.string());
+                        }
+                        allFinished.countDown();
+                    }
+                });
+            }
+            MuAssert.assertNotTimedOut("allFinished", allFinished, 30, TimeUnit.SECONDS);
+            assertThat(results, hasSize(requestCount));
+            assertThat(results, everyItem(is("done")));
+        } finally {
+            dispatcher.executorService().shutdownNow();
+            client.connectionPool().evictAll();
+        }
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+
+}
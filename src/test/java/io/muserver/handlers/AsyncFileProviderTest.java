@@ -1,10 +1,13 @@
 package io.muserver.handlers;
 
 import io.muserver.MuServer;
+import io.muserver.MuServerBuilder;
 import io.muserver.Mutils;
+import okhttp3.Protocol;
 import okhttp3.Response;
 import org.hamcrest.Matchers;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Test;
 import scaffolding.MuAssert;
 import scaffolding.ServerUtils;
@@ -17,6 +20,8 @@ import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Date;
 
 import static io.muserver.Mutils.urlEncode;
@@ -25,6 +30,7 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.isHttp2;
 import static scaffolding.ClientUtils.request;
 
 public class AsyncFileProviderTest {
@@ -61,6 +67,42 @@ public class AsyncFileProviderTest {
         }
     }
 
+    @Test
+    public void filesAndRangesCanBeSentOverHttp1() throws Exception {
+        server = MuServerBuilder.httpServer()
+            .addHandler(fileHandler(BIG_FILE_DIR))
+            .start();
+        assertFileAndRangeAreSent(Protocol.HTTP_1_1);
+    }
+
+    @Test
+    public void filesAndRangesCanBeSentOverHttp2() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(fileHandler(BIG_FILE_DIR))
+            .start();
+        try (Response resp = call(request(server.uri()))) {
+            Assume.assumeTrue("HTTP2 is not available on this JVM", isHttp2(resp));
+        }
+        assertFileAndRangeAreSent(Protocol.HTTP_2);
+    }
+
+    private void assertFileAndRangeAreSent(Protocol expectedProtocol) throws IOException {
+        File file = new File(BIG_FILE_DIR, "guangzhou.jpeg");
+        byte[] expected = Files.readAllBytes(file.toPath());
+        URI downloadUri = server.uri().resolve("/guangzhou.jpeg");
+        try (Response resp = call(request(downloadUri))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.protocol(), is(expectedProtocol));
+            assertThat(resp.header("content-length"), equalTo(String.valueOf(file.length())));
+            assertThat(resp.body().bytes(), equalTo(expected));
+        }
+        try (Response resp = call(request(downloadUri).header("range", "bytes=200000-300999"))) {
+            assertThat(resp.code(), is(206));
+            assertThat(resp.header("content-length"), equalTo("101000"));
+            assertThat(resp.body().bytes(), equalTo(Arrays.copyOfRange(expected, 200000, 301000)));
+        }
+    }
+
     private static boolean isEqual(InputStream i1, InputStream i2) throws IOException {
 
         ReadableByteChannel ch1 = Channels.newChannel(i1);
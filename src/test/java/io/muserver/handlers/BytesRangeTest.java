@@ -3,6 +3,7 @@ package io.muserver.handlers;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
@@ -78,4 +79,11 @@ public class BytesRangeTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void overlappingAndAdjacentRangesCanBeCoalesced() {
+        List<BytesRange> merged = BytesRange.coalesce(BytesRange.parse(1000L, "bytes=500-599, 0-9, 10-19, 5-7, 550-700, 900-"));
+        assertThat(merged.stream().map(BytesRange::toString).collect(Collectors.toList()),
+            contains("bytes 0-19/1000", "bytes 500-700/1000", "bytes 900-999/1000"));
+    }
+
+}
@@ -0,0 +1,121 @@
+package io.muserver.handlers;
+
+import io.muserver.MuServer;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static io.muserver.handlers.ResourceHandlerBuilder.classpathHandler;
+import static io.muserver.handlers.ResourceHandlerBuilder.fileHandler;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class CachingResourceProviderFactoryTest {
+
+    private MuServer server;
+
+    @Test
+    public void filesAreServedFromTheCacheAfterTheFirstRequest() throws IOException {
+        ResourceHandler handler = fileHandler("src/test/resources/sample-static")
+            .withMemoryCache(1024 * 1024, 8192)
+            .build();
+        server = ServerUtils.httpsServerForTest().addHandler(handler).start();
+        ResourceCacheStats stats = handler.cacheStats().get();
+
+        for (int i = 0; i < 3; i++) {
+            assertBody("/alphanumerics.txt", "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        }
+        assertThat(stats.misses(), is(1L));
+        assertThat(stats.hits(), is(2L));
+        assertThat(stats.entries(), is(1));
+        assertThat(stats.bytesCached(), is(62L));
+
+        try (Response resp = call(request(server.uri().resolve("/alphanumerics.txt")).header("Range", "bytes=10-19"))) {
+            assertThat(resp.code(), is(206));
+            assertThat(resp.header("Content-Length"), is("10"));
+            assertThat(resp.header("Content-Range"), is("bytes 10-19/62"));
+            assertThat(resp.body().string(), is("abcdefghij"));
+        }
+        assertThat(stats.hits(), is(3L));
+    }
+
+    @Test
+    public void leastRecentlyUsedFilesAreEvictedWhenTheCacheIsFull() throws IOException {
+        ResourceHandler handler = fileHandler("src/test/resources/sample-static")
+            .withMemoryCache(2100, 8192)
+            .build();
+        server = ServerUtils.httpsServerForTest().withGzipEnabled(false).addHandler(handler).start();
+        ResourceCacheStats stats = handler.cacheStats().get();
+
+        assertBody("/index.html", fileContents("index.html")); // 1080 bytes
+        assertBody("/alphanumerics.txt", fileContents("alphanumerics.txt")); // 62 bytes
+        assertBody("/index.html", fileContents("index.html"));
+        assertThat(stats.entries(), is(2));
+        assertThat(stats.evictions(), is(0L));
+
+        assertBody("/sample.css", fileContents("sample.css")); // 1979 bytes
+        assertThat(stats.evictions(), is(2L));
+        assertThat(stats.entries(), is(1));
+        assertThat(stats.bytesCached(), is(1979L));
+
+        assertBody("/sample.css", fileContents("sample.css"));
+        assertThat(stats.hits(), is(2L));
+    }
+
+    @Test
+    public void largeFilesAreNotCached() throws IOException {
+        ResourceHandler handler = fileHandler("src/test/resources/sample-static")
+            .withMemoryCache(1024 * 1024, 8192)
+            .build();
+        server = ServerUtils.httpsServerForTest().withGzipEnabled(false).addHandler(handler).start();
+        ResourceCacheStats stats = handler.cacheStats().get();
+
+        assertBody("/overview.txt", fileContents("overview.txt"));
+        assertBody("/overview.txt", fileContents("overview.txt"));
+        assertThat(stats.misses(), is(2L));
+        assertThat(stats.entries(), is(0));
+    }
+
+    @Test
+    public void classpathResourcesCanBeCached() throws IOException {
+        ResourceHandler handler = classpathHandler("/sample-static")
+            .withMemoryCache(1024 * 1024, 8192)
+            .build();
+        server = ServerUtils.httpsServerForTest().withGzipEnabled(false).addHandler(handler).start();
+
+        assertBody("/index.html", fileContents("index.html"));
+        assertBody("/index.html", fileContents("index.html"));
+        assertThat(handler.cacheStats().get().hits(), is(1L));
+    }
+
+    @Test
+    public void thereAreNoStatsIfThereIsNoCache() {
+        assertThat(fileHandler("src/test/resources/sample-static").build().cacheStats().isPresent(), is(false));
+    }
+
+    private void assertBody(String path, String expected) throws IOException {
+        try (Response resp = call(request(server.uri().resolve(path)))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.header("Content-Length"), equalTo(String.valueOf(expected.length())));
+            assertThat(resp.body().string(), equalTo(expected));
+        }
+    }
+
+    private static String fileContents(String name) throws IOException {
+        return new String(Files.readAllBytes(new File("src/test/resources/sample-static", name).toPath()), "UTF-8");
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
@@ -0,0 +1,176 @@
+package io.muserver.handlers;
+
+import io.muserver.MuServer;
+import io.muserver.Mutils;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static io.muserver.ContextHandlerBuilder.context;
+import static io.muserver.handlers.ResourceHandlerBuilder.classpathHandler;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class ClasspathBundleTest {
+
+    private MuServer server;
+    private Path jar;
+
+    @Test
+    public void bundledResourcesAreTheSameAsClasspathResources() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .withGzipEnabled(false)
+            .addHandler(context("bundle").addHandler(classpathHandler("/sample-static").withClasspathBundle(true)))
+            .addHandler(context("classpath").addHandler(classpathHandler("/sample-static")))
+            .start();
+
+        for (String file : new String[]{"alphanumerics.txt", "index.html", "overview.txt", "images/friends.jpg"}) {
+            byte[] expected = Files.readAllBytes(new File("src/test/resources/sample-static", file).toPath());
+            String etag;
+            try (Response resp = call(request(server.uri().resolve("/classpath/" + file)))) {
+                etag = resp.header("ETag");
+            }
+            try (Response resp = call(request(server.uri().resolve("/bundle/" + file)))) {
+                assertThat(file, resp.code(), is(200));
+                assertThat(file, resp.header("Content-Length"), is(String.valueOf(expected.length)));
+                assertThat(file, resp.header("ETag"), equalTo(etag));
+                assertThat(file, resp.body().bytes(), equalTo(expected));
+            }
+        }
+    }
+
+    @Test
+    public void directoriesAndMissingFilesAreHandled() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(classpathHandler("/sample-static").withClasspathBundle(true))
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/images")))) {
+            assertThat(resp.code(), is(302));
+            assertThat(resp.header("Location"), is(server.uri().resolve("/images/").toString()));
+        }
+        try (Response resp = call(request(server.uri().resolve("/")))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.header("Content-Type"), startsWith("text/html"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/missing.txt")))) {
+            assertThat(resp.code(), is(404));
+        }
+    }
+
+    @Test
+    public void rangesAreServedFromTheBundle() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(classpathHandler("/sample-static").withClasspathBundle(true))
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/alphanumerics.txt")).header("Range", "bytes=10-19"))) {
+            assertThat(resp.code(), is(206));
+            assertThat(resp.header("Content-Range"), is("bytes 10-19/62"));
+            assertThat(resp.body().string(), is("abcdefghij"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/alphanumerics.txt")).header("Range", "bytes=0-0,-1"))) {
+            assertThat(resp.code(), is(206));
+            assertThat(resp.header("Content-Type"), startsWith("multipart/byteranges"));
+            String body = resp.body().string();
+            assertThat(body, containsString("Content-Range: bytes 0-0/62\r\n\r\n0\r\n"));
+            assertThat(body, containsString("Content-Range: bytes 61-61/62\r\n\r\nZ\r\n"));
+        }
+    }
+
+    @Test
+    public void buildersCanBeBuiltMoreThanOnce() throws IOException {
+        ResourceHandlerBuilder builder = classpathHandler("/sample-static").withClasspathBundle(true);
+        builder.build();
+        server = ServerUtils.httpsServerForTest().addHandler(builder.build()).start();
+        try (Response resp = call(request(server.uri().resolve("/alphanumerics.txt")))) {
+            assertThat(resp.body().string(), is("0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"));
+        }
+    }
+
+    @Test
+    public void jarFileSystemsAreOnlyClosedOnceNoClasspathCacheUsesThem() throws Exception {
+        URL resource = createJar();
+        ClasspathCache bundled = new ClasspathCache("/sample");
+        bundled.cacheItems(resource);
+        ClasspathCache unbundled = new ClasspathCache("/sample");
+        unbundled.cacheItems(resource);
+
+        ClasspathBundle bundle = ClasspathBundle.pack(bundled);
+        assertThat(read(bundle.get("hello.txt")), is("Hello from a jar"));
+        assertThat(jarIsOpen(), is(true));
+        assertThat(read(unbundled.get("hello.txt")), is("Hello from a jar"));
+
+        ClasspathBundle.pack(unbundled);
+        assertThat(jarIsOpen(), is(false));
+    }
+
+    @Test
+    public void jarFileSystemsOpenedByTheApplicationAreLeftOpen() throws Exception {
+        URL resource = createJar();
+        try (FileSystem fileSystem = FileSystems.newFileSystem(jarUri(), Collections.emptyMap())) {
+            ClasspathCache cache = new ClasspathCache("/sample");
+            cache.cacheItems(resource);
+            assertThat(read(ClasspathBundle.pack(cache).get("hello.txt")), is("Hello from a jar"));
+            assertThat(fileSystem.isOpen(), is(true));
+            assertThat(new String(Files.readAllBytes(fileSystem.getPath("/sample/hello.txt")), UTF_8), is("Hello from a jar"));
+        }
+    }
+
+    private URL createJar() throws IOException {
+        jar = Files.createTempFile("mu-classpath-bundle", ".jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("sample/"));
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("sample/hello.txt"));
+            out.write("Hello from a jar".getBytes(UTF_8));
+            out.closeEntry();
+        }
+        return new URL(jarUri() + "!/sample");
+    }
+
+    private URI jarUri() {
+        return URI.create("jar:" + jar.toUri());
+    }
+
+    private boolean jarIsOpen() {
+        try {
+            return FileSystems.getFileSystem(jarUri()).isOpen();
+        } catch (FileSystemNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static String read(ResourceProvider provider) throws IOException {
+        try (InputStream in = provider.newInputStream()) {
+            return new String(Mutils.toByteArray(in, 8192), UTF_8);
+        }
+    }
+
+    @After
+    public void stop() throws IOException {
+        MuAssert.stopAndCheck(server);
+        if (jar != null) {
+            Files.deleteIfExists(jar);
+        }
+    }
+}
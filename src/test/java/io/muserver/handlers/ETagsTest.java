@@ -0,0 +1,149 @@
+package io.muserver.handlers;
+
+import io.muserver.MuServer;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static io.muserver.Mutils.toHttpDate;
+import static io.muserver.handlers.ResourceHandlerBuilder.classpathHandler;
+import static io.muserver.handlers.ResourceHandlerBuilder.fileHandler;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class ETagsTest {
+
+    private MuServer server;
+    private Path dir;
+
+    @Test
+    public void etagsAreBasedOnContentRatherThanModificationDates() throws Exception {
+        dir = Files.createTempDirectory("mu-etags");
+        Path file = dir.resolve("file.txt");
+        Files.write(file, "Hello".getBytes(UTF_8));
+        server = ServerUtils.httpsServerForTest().addHandler(fileHandler(dir)).start();
+
+        String etag = etagOf("/file.txt");
+        assertThat(etag, allOf(startsWith("\""), endsWith("\"")));
+        assertThat(etagOf("/file.txt"), equalTo(etag));
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60000));
+        assertThat(etagOf("/file.txt"), equalTo(etag));
+
+        Files.write(file, "Howdy".getBytes(UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 120000));
+        assertThat(etagOf("/file.txt"), not(equalTo(etag)));
+    }
+
+    @Test
+    public void fileClasspathAndCachedResourcesWithTheSameContentHaveTheSameETag() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(fileHandler("src/test/resources/sample-static"))
+            .start();
+        String fromFile = etagOf("/index.html");
+        MuAssert.stopAndCheck(server);
+
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(classpathHandler("/sample-static"))
+            .start();
+        assertThat(etagOf("/index.html"), equalTo(fromFile));
+        MuAssert.stopAndCheck(server);
+
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(fileHandler("src/test/resources/sample-static").withMemoryCache(1024 * 1024, 8192))
+            .start();
+        assertThat(etagOf("/index.html"), equalTo(fromFile));
+        assertThat(etagOf("/index.html"), equalTo(fromFile));
+    }
+
+    @Test
+    public void ifNoneMatchReturns304WhenTheETagMatches() throws IOException {
+        server = ServerUtils.httpsServerForTest().addHandler(classpathHandler("/sample-static")).start();
+        String etag = etagOf("/alphanumerics.txt");
+
+        assertThat(statusWith("If-None-Match", etag), is(304));
+        assertThat(statusWith("If-None-Match", "\"other\", " + etag), is(304));
+        assertThat(statusWith("If-None-Match", "W/" + etag), is(304));
+        assertThat(statusWith("If-None-Match", "*"), is(304));
+        assertThat(statusWith("If-None-Match", "\"other\""), is(200));
+
+        try (Response resp = call(request(server.uri().resolve("/alphanumerics.txt")).header("If-None-Match", etag))) {
+            assertThat(resp.code(), is(304));
+            assertThat(resp.header("ETag"), equalTo(etag));
+        }
+    }
+
+    @Test
+    public void ifModifiedSinceIsIgnoredWhenThereIsAnIfNoneMatch() throws IOException {
+        server = ServerUtils.httpsServerForTest().addHandler(classpathHandler("/sample-static")).start();
+        String future = toHttpDate(new Date(System.currentTimeMillis() + 60000));
+        try (Response resp = call(request(server.uri().resolve("/alphanumerics.txt"))
+            .header("If-None-Match", "\"other\"")
+            .header("If-Modified-Since", future))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"));
+        }
+    }
+
+    @Test
+    public void ifMatchReturns412WhenNoETagMatchesStrongly() throws IOException {
+        server = ServerUtils.httpsServerForTest().addHandler(classpathHandler("/sample-static")).start();
+        String etag = etagOf("/alphanumerics.txt");
+
+        assertThat(statusWith("If-Match", etag), is(200));
+        assertThat(statusWith("If-Match", "*"), is(200));
+        assertThat(statusWith("If-Match", "W/" + etag), is(412));
+        assertThat(statusWith("If-Match", "\"other\""), is(412));
+
+        try (Response resp = call(request(server.uri().resolve("/alphanumerics.txt"))
+            .header("If-Match", etag)
+            .header("Range", "bytes=0-9"))) {
+            assertThat(resp.code(), is(206));
+            assertThat(resp.body().string(), is("0123456789"));
+        }
+    }
+
+    @Test
+    public void entityTagListsCanBeParsed() {
+        assertThat(EntityTags.parse("\"a\""), contains("\"a\""));
+        assertThat(EntityTags.parse("\"a\", W/\"b,c\" ,\"d\""), contains("\"a\"", "W/\"b,c\"", "\"d\""));
+        assertThat(EntityTags.parse("unquoted, \"quoted\""), contains("unquoted", "\"quoted\""));
+        assertThat(EntityTags.parse(" "), is(empty()));
+    }
+
+    private String etagOf(String path) throws IOException {
+        try (Response resp = call(request(server.uri().resolve(path)))) {
+            assertThat(resp.code(), is(200));
+            return resp.header("ETag");
+        }
+    }
+
+    private int statusWith(String header, String value) throws IOException {
+        try (Response resp = call(request(server.uri().resolve("/alphanumerics.txt")).header(header, value))) {
+            return resp.code();
+        }
+    }
+
+    @After
+    public void stop() throws IOException {
+        MuAssert.stopAndCheck(server);
+        if (dir != null) {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
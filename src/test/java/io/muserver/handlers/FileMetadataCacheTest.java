@@ -0,0 +1,178 @@
+package io.muserver.handlers;
+
+import io.muserver.MuServer;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static io.muserver.handlers.ResourceHandlerBuilder.fileHandler;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class FileMetadataCacheTest {
+
+    private MuServer server;
+    private Path dir;
+    private FileMetadataCache cache;
+
+    @Test
+    public void changesToWatchedFilesAreSeen() throws Exception {
+        dir = Files.createTempDirectory("mu-metadata");
+        Path file = dir.resolve("file.txt");
+        Files.write(file, "Hello".getBytes(UTF_8));
+        cache = new FileMetadataCache(dir, 0);
+        assertThat(cache.isWatching(), is(true));
+
+        FileMetadata metadata = cache.get(file);
+        assertThat(metadata.exists, is(true));
+        assertThat(metadata.isDirectory, is(false));
+        assertThat(metadata.size, is(5L));
+        assertThat(cache.get(file), sameInstance(metadata));
+
+        Files.write(file, "Hello, world".getBytes(UTF_8));
+        waitFor(() -> cache.get(file).size == 12L);
+
+        Files.delete(file);
+        waitFor(() -> !cache.get(file).exists);
+
+        Path newFile = dir.resolve("sub").resolve("new.txt");
+        assertThat(cache.get(newFile).exists, is(false));
+        Files.createDirectory(dir.resolve("sub"));
+        Files.write(newFile, "New".getBytes(UTF_8));
+        waitFor(() -> cache.get(newFile).exists);
+
+        Files.write(newFile, "Newer".getBytes(UTF_8));
+        waitFor(() -> cache.get(newFile).size == 5L);
+    }
+
+    @Test
+    public void changingAFileLeavesItsSiblingsCached() throws Exception {
+        dir = Files.createTempDirectory("mu-metadata");
+        Path sub = Files.createDirectory(dir.resolve("sub"));
+        Path file = sub.resolve("file.txt");
+        Path sibling = sub.resolve("sibling.txt");
+        Files.write(file, "Hello".getBytes(UTF_8));
+        Files.write(sibling, "Sibling".getBytes(UTF_8));
+        cache = new FileMetadataCache(dir, 0);
+        FileMetadata siblingMetadata = cache.get(sibling);
+        assertThat(cache.get(file).size, is(5L));
+
+        Files.write(file, "Hello, world".getBytes(UTF_8));
+        waitFor(() -> cache.get(file).size == 12L);
+        assertThat(cache.get(sibling), sameInstance(siblingMetadata));
+    }
+
+    @Test
+    public void entriesAreReloadedAfterTheMaxAge() throws Exception {
+        dir = Files.createTempDirectory("mu-metadata");
+        Path file = dir.resolve("file.txt");
+        Files.write(file, "Hello".getBytes(UTF_8));
+        cache = new FileMetadataCache(dir, 10);
+        FileMetadata first = cache.get(file);
+        Thread.sleep(20);
+        assertThat(cache.get(file), not(sameInstance(first)));
+    }
+
+    @Test
+    public void directoriesAreWatchedOnceAndUnwatchedWhenNoCacheNeedsThem() throws Exception {
+        dir = Files.createTempDirectory("mu-metadata");
+        Files.createDirectory(dir.resolve("sub"));
+        int before = FileWatcher.watchedDirectories();
+        FileMetadataCache first = new FileMetadataCache(dir, 0);
+        FileMetadataCache second = new FileMetadataCache(dir, 0);
+        assertThat(FileWatcher.watchedDirectories(), is(before + 2));
+
+        first.close();
+        assertThat(FileWatcher.watchedDirectories(), is(before + 2));
+        Path file = dir.resolve("sub").resolve("file.txt");
+        assertThat(second.get(file).exists, is(false));
+        Files.write(file, "Hello".getBytes(UTF_8));
+        waitFor(() -> second.get(file).exists);
+
+        second.close();
+        assertThat(FileWatcher.watchedDirectories(), is(before));
+    }
+
+    @Test
+    public void cachesThatAreGarbageCollectedStopWatching() throws Exception {
+        dir = Files.createTempDirectory("mu-metadata");
+        int before = FileWatcher.watchedDirectories();
+        assertThat(new FileMetadataCache(dir, 0).isWatching(), is(true));
+        assertThat(FileWatcher.watchedDirectories(), is(before + 1));
+        waitFor(() -> {
+            System.gc();
+            return FileWatcher.watchedDirectories() == before;
+        });
+    }
+
+    @Test
+    public void resourceHandlersCanUseTheCache() throws Exception {
+        dir = Files.createTempDirectory("mu-metadata");
+        Path file = dir.resolve("file.txt");
+        Files.write(file, "Hello".getBytes(UTF_8));
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(fileHandler(dir).withFileMetadataCache(1, TimeUnit.MINUTES))
+            .start();
+
+        String etag;
+        try (Response resp = call(request(server.uri().resolve("/file.txt")))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.header("Content-Length"), is("5"));
+            etag = resp.header("ETag");
+            assertThat(etag, startsWith("\""));
+            assertThat(resp.body().string(), is("Hello"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/missing.txt")))) {
+            assertThat(resp.code(), is(404));
+        }
+
+        Files.write(file, "Hello, world".getBytes(UTF_8));
+        waitFor(() -> {
+            try (Response resp = call(request(server.uri().resolve("/file.txt")))) {
+                return resp.body().string().equals("Hello, world");
+            } catch (IOException | RuntimeException e) {
+                // the file may be read while it is being written
+                return false;
+            }
+        });
+        try (Response resp = call(request(server.uri().resolve("/file.txt")))) {
+            assertThat(resp.header("Content-Length"), is("12"));
+            assertThat(resp.header("ETag"), not(equalTo(etag)));
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        // the JDK's polling watch service, used on some platforms, can take several seconds to see changes
+        long end = System.currentTimeMillis() + 30000;
+        while (!condition.getAsBoolean()) {
+            assertThat("Timed out waiting for the change to be seen", System.currentTimeMillis() < end, is(true));
+            Thread.sleep(20);
+        }
+    }
+
+    @After
+    public void stop() throws IOException {
+        MuAssert.stopAndCheck(server);
+        if (cache != null) {
+            cache.close();
+        }
+        if (dir != null) {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
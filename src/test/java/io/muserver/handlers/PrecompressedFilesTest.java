@@ -0,0 +1,158 @@
+package io.muserver.handlers;
+
+import io.muserver.MuServer;
+import io.muserver.ParameterizedHeaderWithValue;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static io.muserver.handlers.ResourceHandlerBuilder.fileHandler;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class PrecompressedFilesTest {
+
+    private MuServer server;
+    private Path dir;
+    private byte[] original;
+    private byte[] gzipped;
+    private final byte[] brotlied = "pretend this is brotli".getBytes(UTF_8);
+
+    private void startServer(boolean precompressed) throws IOException {
+        dir = Files.createTempDirectory("mu-precompressed");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("Line ").append(i).append(" of some compressible text\n");
+        }
+        original = text.toString().getBytes(UTF_8);
+        Files.write(dir.resolve("app.js"), original);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(original);
+        }
+        gzipped = compressed.toByteArray();
+        Files.write(dir.resolve("app.js.gz"), gzipped);
+        Files.write(dir.resolve("app.js.br"), brotlied);
+        Files.write(dir.resolve("image.png"), original);
+        Files.write(dir.resolve("image.png.gz"), gzipped);
+
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(fileHandler(dir).withPrecompressedFiles(precompressed))
+            .start();
+    }
+
+    @Test
+    public void theMostPreferredAcceptableVariantIsSent() throws IOException {
+        startServer(true);
+        URI uri = server.uri().resolve("/app.js");
+        assertVariant(uri, "gzip", "gzip", gzipped);
+        assertVariant(uri, "gzip, deflate, br", "br", brotlied);
+        assertVariant(uri, "br;q=0.5, gzip", "gzip", gzipped);
+        assertVariant(uri, "br;q=0, *", "gzip", gzipped);
+        assertVariant(uri, "identity", null, original);
+    }
+
+    @Test
+    public void headRequestsGetTheVariantHeaders() throws IOException {
+        startServer(true);
+        try (Response resp = call(request(server.uri().resolve("/app.js")).head().header("Accept-Encoding", "gzip"))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.header("Content-Encoding"), is("gzip"));
+            assertThat(resp.header("Content-Length"), is(String.valueOf(gzipped.length)));
+            assertThat(resp.body().string(), is(""));
+        }
+    }
+
+    @Test
+    public void rangeRequestsAreServedFromTheOriginalFile() throws IOException {
+        startServer(true);
+        try (Response resp = call(request(server.uri().resolve("/app.js"))
+            .header("Accept-Encoding", "gzip")
+            .header("Range", "bytes=0-3"))) {
+            assertThat(resp.code(), is(206));
+            assertThat(resp.header("Content-Encoding"), is(nullValue()));
+            assertThat(resp.body().string(), is("Line"));
+        }
+    }
+
+    @Test
+    public void variantsOlderThanTheOriginalAreIgnored() throws IOException {
+        startServer(true);
+        FileTime originalTime = Files.getLastModifiedTime(dir.resolve("app.js"));
+        Files.setLastModifiedTime(dir.resolve("app.js.br"), FileTime.fromMillis(originalTime.toMillis() - 60000));
+        assertVariant(server.uri().resolve("/app.js"), "br", null, original);
+    }
+
+    @Test
+    public void variantsAreOnlyUsedForCompressibleTypes() throws IOException {
+        startServer(true);
+        try (Response resp = call(request(server.uri().resolve("/image.png")).header("Accept-Encoding", "gzip"))) {
+            assertThat(resp.header("Content-Encoding"), is(nullValue()));
+            assertThat(resp.header("Vary"), is(nullValue()));
+            assertThat(resp.body().bytes(), equalTo(original));
+        }
+    }
+
+    @Test
+    public void variantsAreNotUsedByDefault() throws IOException {
+        startServer(false);
+        try (Response resp = call(request(server.uri().resolve("/app.js")).header("Accept-Encoding", "br"))) {
+            assertThat(resp.header("Content-Encoding"), is(nullValue()));
+            assertThat(resp.body().bytes(), equalTo(original));
+        }
+    }
+
+    @Test
+    public void acceptableEncodingsAreOrderedByQualityThenServerPreference() {
+        assertThat(encodings(""), is(empty()));
+        assertThat(encodings("gzip"), contains("gzip"));
+        assertThat(encodings("gzip, br"), contains("br", "gzip"));
+        assertThat(encodings("gzip;q=0.9, br;q=0.8"), contains("gzip", "br"));
+        assertThat(encodings("*"), contains("br", "gzip"));
+        assertThat(encodings("GZIP, *;q=0"), contains("gzip"));
+        assertThat(encodings("gzip;q=0, br;q=oops"), is(empty()));
+        assertThat(encodings("identity"), is(empty()));
+    }
+
+    private static List<String> encodings(String acceptEncoding) {
+        return ResourceHandler.acceptableEncodings(ParameterizedHeaderWithValue.fromString(acceptEncoding))
+            .stream().map(CharSequence::toString).collect(Collectors.toList());
+    }
+
+    private static void assertVariant(URI uri, String acceptEncoding, String expectedEncoding, byte[] expectedBody) throws IOException {
+        try (Response resp = call(request(uri).header("Accept-Encoding", acceptEncoding))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.header("Content-Encoding"), is(expectedEncoding));
+            assertThat(resp.header("Vary"), containsString("accept-encoding"));
+            assertThat(resp.header("Content-Length"), is(String.valueOf(expectedBody.length)));
+            assertThat(resp.body().bytes(), equalTo(expectedBody));
+        }
+    }
+
+    @After
+    public void stop() throws IOException {
+        MuAssert.stopAndCheck(server);
+        if (dir != null) {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
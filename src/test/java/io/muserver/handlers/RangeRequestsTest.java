@@ -13,8 +13,7 @@ import static io.muserver.ContextHandlerBuilder.context;
 import static io.muserver.handlers.ResourceHandlerBuilder.classpathHandler;
 import static io.muserver.handlers.ResourceHandlerBuilder.fileHandler;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.is;
-import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.*;
 import static scaffolding.ClientUtils.call;
 import static scaffolding.ClientUtils.request;
 
@@ -23,6 +22,7 @@ public class RangeRequestsTest {
     private MuServer server = ServerUtils.httpsServerForTest()
         .addHandler(context("cp").addHandler(classpathHandler("/sample-static")))
         .addHandler(context("fp").addHandler(fileHandler("src/test/resources/sample-static")))
+        .addHandler(context("mem").addHandler(fileHandler("src/test/resources/sample-static").withMemoryCache(10000, 1000)))
         .start();
 
     @Test
@@ -147,6 +147,67 @@ public class RangeRequestsTest {
 
     }
 
+    @Test
+    public void multipleRangesAreSentAsMultipartBodies() throws IOException {
+        for (String prefix : new String[]{"cp", "fp", "mem"}) {
+            URI uri = server.uri().resolve("/" + prefix + "/alphanumerics.txt");
+
+            try (Response resp = call(request(uri).header("Range", "bytes=50-51, 0-2,-1"))) {
+                assertThat(prefix, resp.code(), is(206));
+                String contentType = resp.header("Content-Type");
+                assertThat(prefix, contentType, startsWith("multipart/byteranges; boundary="));
+                String boundary = contentType.substring(contentType.indexOf('=') + 1);
+                String expected = "--" + boundary + "\r\n" +
+                    "Content-Type: text/plain\r\n" +
+                    "Content-Range: bytes 0-2/62\r\n\r\n" +
+                    "012\r\n" +
+                    "--" + boundary + "\r\n" +
+                    "Content-Type: text/plain\r\n" +
+                    "Content-Range: bytes 50-51/62\r\n\r\n" +
+                    "OP\r\n" +
+                    "--" + boundary + "\r\n" +
+                    "Content-Type: text/plain\r\n" +
+                    "Content-Range: bytes 61-61/62\r\n\r\n" +
+                    "Z\r\n" +
+                    "--" + boundary + "--\r\n";
+                assertThat(prefix, resp.header("Content-Length"), is(String.valueOf(expected.length())));
+                assertThat(prefix, resp.header("Content-Range"), is(nullValue()));
+                assertThat(prefix, resp.body().string(), equalTo(expected));
+            }
+
+            try (Response resp = call(request(uri).head().header("Range", "bytes=0-1,10-11"))) {
+                assertThat(prefix, resp.code(), is(206));
+                assertThat(prefix, resp.header("Content-Type"), startsWith("multipart/byteranges; boundary="));
+                assertThat(prefix, resp.body().string(), is(""));
+            }
+        }
+    }
+
+    @Test
+    public void overlappingAndAdjacentRangesAreMerged() throws IOException {
+        for (String prefix : new String[]{"cp", "fp", "mem"}) {
+            URI uri = server.uri().resolve("/" + prefix + "/alphanumerics.txt");
+            try (Response resp = call(request(uri).header("Range", "bytes=5-9,0-4,3-6"))) {
+                assertThat(prefix, resp.code(), is(206));
+                assertThat(prefix, resp.header("Content-Type"), is("text/plain"));
+                assertThat(prefix, resp.header("Content-Range"), is("bytes 0-9/62"));
+                assertThat(prefix, resp.body().string(), is("0123456789"));
+            }
+        }
+    }
+
+    @Test
+    public void tooManyRangesResultInTheWholeResource() throws IOException {
+        StringBuilder ranges = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= ResourceHandler.MAX_RANGES; i++) {
+            ranges.append(",").append(i * 2).append("-").append(i * 2);
+        }
+        try (Response resp = call(request(server.uri().resolve("/fp/alphanumerics.txt")).header("Range", ranges.toString()))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"));
+        }
+    }
+
     @After
     public void destroy() {
         scaffolding.MuAssert.stopAndCheck(server);
@@ -1,12 +1,15 @@
 package io.muserver.rest;
 
 import io.muserver.MuServer;
+import io.muserver.MuServerBuilder;
 import io.muserver.Mutils;
 import okhttp3.MediaType;
+import okhttp3.Protocol;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import org.hamcrest.Matchers;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Test;
 import scaffolding.MuAssert;
 import scaffolding.ServerUtils;
@@ -15,6 +18,8 @@ import scaffolding.StringUtils;
 import javax.ws.rs.*;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.concurrent.CountDownLatch;
 
 import static io.muserver.rest.RestHandlerBuilder.restHandler;
@@ -22,6 +27,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.isHttp2;
 import static scaffolding.ClientUtils.request;
 
 public class BinaryEntityProvidersTest {
@@ -76,6 +82,48 @@ public class BinaryEntityProvidersTest {
         check(new byte[0], "image/jpeg");
     }
 
+    @Test
+    public void pathsCanBeReturnedOverHttp1() throws Exception {
+        java.nio.file.Path sample = Paths.get("src/test/resources/sample-static/images/friends.jpg");
+        this.server = pathServer(MuServerBuilder.httpServer(), sample);
+        try (Response resp = call(request(server.uri().resolve("/samples")))) {
+            assertThat(resp.protocol(), equalTo(Protocol.HTTP_1_1));
+            assertPathWasSent(resp, sample);
+        }
+    }
+
+    @Test
+    public void pathsCanBeReturnedOverHttp2() throws Exception {
+        java.nio.file.Path sample = Paths.get("src/test/resources/sample-static/images/friends.jpg");
+        this.server = pathServer(ServerUtils.httpsServerForTest(), sample);
+        try (Response resp = call(request(server.uri().resolve("/samples")))) {
+            Assume.assumeTrue("HTTP2 is not available on this JVM", isHttp2(resp));
+            assertPathWasSent(resp, sample);
+        }
+    }
+
+    private static MuServer pathServer(MuServerBuilder builder, java.nio.file.Path sample) {
+        @Path("samples")
+        class Sample {
+            @GET
+            @Produces("image/jpeg")
+            public java.nio.file.Path get() {
+                return sample;
+            }
+        }
+        return builder
+            .addHandler(restHandler(new Sample()).build())
+            .start();
+    }
+
+    private static void assertPathWasSent(Response resp, java.nio.file.Path sample) throws IOException {
+        byte[] expected = Files.readAllBytes(sample);
+        assertThat(resp.code(), equalTo(200));
+        assertThat(resp.header("Content-Type"), equalTo("image/jpeg"));
+        assertThat(resp.header("Content-Length"), equalTo(String.valueOf(expected.length)));
+        assertThat(resp.body().bytes(), equalTo(expected));
+    }
+
     @Test
     public void streamingOutputSupported() throws IOException {
         @Path("samples")
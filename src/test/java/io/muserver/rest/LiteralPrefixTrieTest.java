@@ -0,0 +1,45 @@
+package io.muserver.rest;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class LiteralPrefixTrieTest {
+
+    @Test
+    public void literalPrefixesStopAtTheFirstTemplatedSegment() {
+        assertThat(LiteralPrefixTrie.literalPrefix("/api/fruits/{name}/eat"), contains("api", "fruits"));
+        assertThat(LiteralPrefixTrie.literalPrefix("api/v{version}/fruits"), contains("api"));
+        assertThat(LiteralPrefixTrie.literalPrefix("/api/{path : a/b}"), contains("api"));
+        assertThat(LiteralPrefixTrie.literalPrefix("/fruit bits/"), contains("fruit%20bits"));
+        assertThat(LiteralPrefixTrie.literalPrefix("/fruit%20bits"), is(empty()));
+        assertThat(LiteralPrefixTrie.literalPrefix("/"), is(empty()));
+        assertThat(LiteralPrefixTrie.literalPrefix("/{name}"), is(empty()));
+    }
+
+    @Test
+    public void candidatesIncludeEverythingAlongThePathInTheOrderAdded() {
+        LiteralPrefixTrie<String> trie = new LiteralPrefixTrie<>();
+        trie.add("/api/fruits/{name}", "fruit");
+        trie.add("/{anything}", "anything");
+        trie.add("/api/fruits/citrus", "citrus");
+        trie.add("/api", "api");
+        trie.add("/api/vegetables", "vegetables");
+        trie.compile();
+
+        assertThat(trie.candidates("/api/fruits/citrus/orange"), contains("fruit", "anything", "citrus", "api"));
+        assertThat(trie.candidates("api/fruits/apple"), contains("fruit", "anything", "api"));
+        assertThat(trie.candidates("/api/fruitsalad"), contains("anything", "api"));
+        assertThat(trie.candidates("/api/vegetables/"), contains("anything", "api", "vegetables"));
+        assertThat(trie.candidates("/"), contains("anything"));
+        assertThat(trie.candidates(""), contains("anything"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void itemsCannotBeAddedAfterCompiling() {
+        LiteralPrefixTrie<String> trie = new LiteralPrefixTrie<>();
+        trie.compile();
+        trie.add("/api", "api");
+    }
+}
@@ -0,0 +1,71 @@
+package io.muserver.rest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compiled {@link RequestMatcher} against the {@link LinearRequestMatcher}, which sorts the candidates on
+ * every request, using a generated model with 500 endpoints. Run the main method with the test classpath.
+ * <p>Each matcher is warmed up before being measured, and the measurements are repeated so that the variation
+ * between runs can be seen.</p>
+ * <p>Optional arguments: number of resource classes, each with 10 endpoints (default 50), then the number of
+ * measured iterations (default 5).</p>
+ */
+public class RequestMatcherBenchmark {
+
+    private interface Matcher {
+        Object match(SyntheticResourceModel.Request request) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        SyntheticResourceModel model = new SyntheticResourceModel(classes);
+        System.out.println("Java " + System.getProperty("java.version") + ": " + model.endpoints() + " endpoints in "
+            + model.roots.size() + " classes, " + model.requests.size() + " distinct requests");
+
+        long start = System.nanoTime();
+        RequestMatcher compiled = new RequestMatcher(model.roots);
+        System.out.println("Compiling the matcher took " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        LinearRequestMatcher linear = new LinearRequestMatcher(model.roots);
+
+        Matcher compiledMatcher = r -> compiled.findResourceMethod(r.method, r.path, r.accept, r.contentType);
+        Matcher linearMatcher = r -> linear.findResourceMethod(r.method, r.path, r.accept, r.contentType);
+
+        // warm up both before measuring
+        measure(linearMatcher, model.requests, 2000);
+        measure(compiledMatcher, model.requests, 2000);
+
+        for (int i = 1; i <= iterations; i++) {
+            double linearNanos = measure(linearMatcher, model.requests, 1000);
+            double compiledNanos = measure(compiledMatcher, model.requests, 1000);
+            System.out.printf("Iteration %d: linear %.0fns/op, compiled %.0fns/op (%.1fx)%n",
+                i, linearNanos, compiledNanos, linearNanos / compiledNanos);
+        }
+    }
+
+    /**
+     * @return The mean time in nanoseconds to match a request
+     */
+    private static double measure(Matcher matcher, List<SyntheticResourceModel.Request> requests, int rounds) {
+        int found = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (SyntheticResourceModel.Request request : requests) {
+                try {
+                    if (matcher.match(request) != null) {
+                        found++;
+                    }
+                } catch (Exception e) {
+                    // unmatched requests are part of the workload
+                }
+            }
+        }
+        long duration = System.nanoTime() - start;
+        if (found == 0) {
+            // use the result so that the matching cannot be optimised away
+            throw new IllegalStateException("No requests matched");
+        }
+        return (double) duration / ((long) rounds * requests.size());
+    }
+}
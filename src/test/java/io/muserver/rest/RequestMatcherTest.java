@@ -10,6 +10,8 @@ import javax.ws.rs.ext.ParamConverterProvider;
 import java.net.URI;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -336,6 +338,49 @@ public class RequestMatcherTest {
         }
     }
 
+    @Test
+    public void compiledMatchingGivesTheSameResultsAsSortingOnEachRequest() {
+        SyntheticResourceModel model = new SyntheticResourceModel(50);
+        assertThat(model.endpoints(), greaterThanOrEqualTo(500));
+        RequestMatcher compiled = new RequestMatcher(model.roots);
+        LinearRequestMatcher linear = new LinearRequestMatcher(model.roots);
+        int found = 0;
+        for (SyntheticResourceModel.Request request : model.requests) {
+            String expected = outcome(() -> describe(linear.findResourceMethod(request.method, request.path, request.accept, request.contentType)));
+            String actual = outcome(() -> describe(compiled.findResourceMethod(request.method, request.path, request.accept, request.contentType)));
+            assertThat(request.toString(), actual, equalTo(expected));
+            assertThat(request.toString(), outcome(() -> describe(compiled.getMatchedMethodsForPath(request.path))),
+                equalTo(outcome(() -> describe(linear.getMatchedMethodsForPath(request.path)))));
+            if (!actual.startsWith("exception")) {
+                found++;
+            }
+        }
+        assertThat(found, greaterThan(model.requests.size() / 2));
+    }
+
+    private interface Outcome {
+        String get() throws Exception;
+    }
+
+    private static String outcome(Outcome outcome) {
+        try {
+            return outcome.get();
+        } catch (NotAllowedException e) {
+            return "exception NotAllowed " + new TreeSet<>(asList(e.getResponse().getHeaderString("Allow").split(",\\s*")));
+        } catch (Exception e) {
+            return "exception " + e.getClass().getSimpleName();
+        }
+    }
+
+    private static String describe(RequestMatcher.MatchedMethod mm) {
+        return mm.resourceMethod.resourceClass.pathTemplate + " " + mm.resourceMethod.pathTemplate + " " + mm.resourceMethod.httpMethod
+            + " " + mm.resourceMethod.effectiveProduces + " " + new TreeMap<>(mm.pathParams);
+    }
+
+    private static String describe(Set<RequestMatcher.MatchedMethod> methods) {
+        return methods.stream().map(RequestMatcherTest::describe).sorted().collect(Collectors.joining("\n"));
+    }
+
 
     private static Set<ResourceClass> set(ResourceClass... restResources) {
         return Stream.of(restResources).collect(Collectors.toSet());
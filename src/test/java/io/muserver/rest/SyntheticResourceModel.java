@@ -0,0 +1,149 @@
+package io.muserver.rest;
+
+import io.muserver.Method;
+
+import javax.ws.rs.core.MediaType;
+import java.util.*;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+/**
+ * A generated REST model for comparing request matchers, with a mixture of literal, templated and regex paths at both
+ * the class and method level, so that many classes share prefixes and many requests need sub-resource matching.
+ */
+class SyntheticResourceModel {
+
+    private static final List<MediaType> JSON = singletonList(MediaType.APPLICATION_JSON_TYPE);
+    private static final List<MediaType> TEXT = singletonList(MediaType.TEXT_PLAIN_TYPE);
+    private static final java.lang.reflect.Method HANDLE;
+    static {
+        try {
+            HANDLE = Object.class.getMethod("toString");
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    final Set<ResourceClass> roots = new HashSet<>();
+    final List<Request> requests = new ArrayList<>();
+    private int endpoints = 0;
+
+    static class Request {
+        final Method method;
+        final String path;
+        final List<MediaType> accept;
+        final String contentType;
+
+        Request(Method method, String path, List<MediaType> accept, String contentType) {
+            this.method = method;
+            this.path = path;
+            this.accept = accept;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public String toString() {
+            return method + " " + path + " accept=" + accept + " content-type=" + contentType;
+        }
+    }
+
+    /**
+     * @param classes The number of resource classes to create, each of which has 10 endpoints
+     */
+    SyntheticResourceModel(int classes) {
+        for (int i = 0; i < classes; i++) {
+            String template;
+            switch (i % 5) {
+                case 0:
+                    template = "/api/v1/resource" + i;
+                    break;
+                case 1:
+                    template = "/api/v1/parents/{parentId}/resource" + i;
+                    break;
+                case 2:
+                    template = "/api/v2/{tenant}/things" + i;
+                    break;
+                case 3:
+                    template = "/api/v2/items" + i + "/{id : [0-9]+}";
+                    break;
+                default:
+                    template = "/api/v3/resource" + i;
+            }
+            ResourceClass rc = resourceClass(template);
+            rc.resourceMethods = new HashSet<>(asList(
+                method(rc, null, Method.GET, JSON),
+                method(rc, null, Method.POST, JSON),
+                method(rc, "{id}", Method.GET, JSON),
+                method(rc, "{id}", Method.PUT, JSON),
+                method(rc, "{id}", Method.DELETE, JSON),
+                method(rc, "{id}/children", Method.GET, JSON),
+                method(rc, "{id : [0-9]+}/history", Method.GET, JSON),
+                method(rc, "search", Method.GET, JSON),
+                method(rc, "search", Method.GET, TEXT),
+                method(rc, "export/{format : csv|xml}", Method.GET, TEXT)
+            ));
+            roots.add(rc);
+
+            String base = template.replace("{parentId}", "p" + i).replace("{tenant}", "t" + i).replace("{id : [0-9]+}", String.valueOf(i));
+            requests.add(new Request(Method.GET, base, emptyList(), null));
+            requests.add(new Request(Method.POST, base, emptyList(), "application/json"));
+            requests.add(new Request(Method.GET, base + "/abc", emptyList(), null));
+            requests.add(new Request(Method.DELETE, base + "/abc", emptyList(), null));
+            requests.add(new Request(Method.GET, base + "/abc/children", emptyList(), null));
+            requests.add(new Request(Method.GET, base + "/123/history", emptyList(), null));
+            requests.add(new Request(Method.GET, base + "/abc/history", emptyList(), null));
+            requests.add(new Request(Method.GET, base + "/search", TEXT, null));
+            requests.add(new Request(Method.GET, base + "/search", JSON, null));
+            requests.add(new Request(Method.GET, base + "/export/csv", emptyList(), null));
+            requests.add(new Request(Method.GET, base + "/export/pdf", emptyList(), null));
+            requests.add(new Request(Method.PATCH, base + "/abc", emptyList(), null));
+            requests.add(new Request(Method.GET, base + "/search", singletonList(MediaType.APPLICATION_XML_TYPE), null));
+            requests.add(new Request(Method.POST, base, emptyList(), "image/png"));
+            requests.add(new Request(Method.GET, base + "-nope", emptyList(), null));
+        }
+
+        // classes with the same template apart from variable names, which end up in C0 together
+        ResourceClass first = resourceClass("/api/shared/{a}");
+        first.resourceMethods = new HashSet<>(asList(method(first, null, Method.GET, JSON), method(first, "details", Method.GET, JSON)));
+        ResourceClass second = resourceClass("/api/shared/{b}");
+        second.resourceMethods = new HashSet<>(asList(method(second, null, Method.PUT, JSON), method(second, "extra", Method.GET, JSON)));
+        roots.add(first);
+        roots.add(second);
+        requests.add(new Request(Method.GET, "/api/shared/x", emptyList(), null));
+        requests.add(new Request(Method.PUT, "/api/shared/x", emptyList(), null));
+        requests.add(new Request(Method.GET, "/api/shared/x/details", emptyList(), null));
+        requests.add(new Request(Method.GET, "/api/shared/x/extra", emptyList(), null));
+        requests.add(new Request(Method.DELETE, "/api/shared/x", emptyList(), null));
+
+        // a class with no literal prefix, which is a candidate for every request
+        ResourceClass anything = resourceClass("/{section}/{page : [a-z]+}");
+        anything.resourceMethods = new HashSet<>(asList(method(anything, null, Method.GET, TEXT)));
+        roots.add(anything);
+        requests.add(new Request(Method.GET, "/docs/intro", emptyList(), null));
+        requests.add(new Request(Method.GET, "/api/v1", emptyList(), null));
+        requests.add(new Request(Method.GET, "/", emptyList(), null));
+        requests.add(new Request(Method.GET, "/docs/intro/more", emptyList(), null));
+    }
+
+    /**
+     * @return The number of resource methods in the model
+     */
+    int endpoints() {
+        return endpoints;
+    }
+
+    private static ResourceClass resourceClass(String template) {
+        return new ResourceClass(UriPattern.uriTemplateToRegex(template), template, new Object(), emptyList(), emptyList(), null, emptyList());
+    }
+
+    private ResourceMethod method(ResourceClass rc, String template, Method httpMethod, List<MediaType> produces) {
+        endpoints++;
+        UriPattern pattern = template == null ? null : UriPattern.uriTemplateToRegex(template);
+        return new ResourceMethod(rc, pattern, HANDLE, emptyList(), httpMethod, template, produces, emptyList(), null, false, emptyList());
+    }
+
+    private static List<ResourceMethod> asList(ResourceMethod... methods) {
+        return Arrays.asList(methods);
+    }
+}